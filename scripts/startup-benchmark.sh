@@ -0,0 +1,51 @@
+#!/usr/bin/env bash
+# 启动耗时基准：对比使用/不使用 AOT 缓存时的 time-to-ready 与 time-to-first-request
+# 先执行 ./mvnw -Paot-cache package，并确保 Redis 已启动（docker compose up -d）
+#
+# 用法: scripts/startup-benchmark.sh [次数]
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+JAR=${JAR:-target/aot/book-agent-0.0.1-SNAPSHOT.jar}
+AOT_CACHE=${AOT_CACHE:-target/aot/app.aot}
+BASE_URL="http://localhost:${PORT}"
+
+now_ms() {
+    date +%s%3N
+}
+
+run_once() {
+    local label=$1
+    shift
+    local start pid ready first
+    start=$(now_ms)
+    java "$@" -Dspring.profiles.active=stub -Dserver.port="${PORT}" -jar "${JAR}" >/dev/null 2>&1 &
+    pid=$!
+
+    until curl -sf "${BASE_URL}/actuator/health" >/dev/null 2>&1; do
+        if ! kill -0 "${pid}" 2>/dev/null; then
+            echo "${label}: application exited before becoming ready" >&2
+            return 1
+        fi
+        sleep 0.02
+    done
+    ready=$(now_ms)
+
+    curl -sf -N -o /dev/null -X POST "${BASE_URL}/api/book/ask" \
+        -H 'Content-Type: application/json' \
+        -d '{"question":"知彼知己，百战不殆。","threadId":"startup-benchmark","mode":"chat"}'
+    first=$(now_ms)
+    curl -sf -o /dev/null -X DELETE "${BASE_URL}/api/book/history/startup-benchmark" || true
+
+    kill "${pid}" && wait "${pid}" 2>/dev/null || true
+    printf '%-10s time-to-ready=%6dms  time-to-first-request=%6dms\n' \
+        "${label}" $((ready - start)) $((first - start))
+}
+
+for i in $(seq 1 "${RUNS}"); do
+    run_once "baseline"
+    if [[ -f "${AOT_CACHE}" ]]; then
+        run_once "aot-cache" "-XX:AOTCache=${AOT_CACHE}"
+    fi
+done
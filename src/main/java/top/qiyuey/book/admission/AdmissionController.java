@@ -0,0 +1,141 @@
+package top.qiyuey.book.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 问答请求准入控制（AIMD 自适应并发上限）
+ * <ul>
+ *     <li>在途请求数达到上限时立即拒绝，由调用方返回 503 和 Retry-After</li>
+ *     <li>每个请求收到模型的首个 token 时采样：TTFT 超过目标或事件循环延迟超限时乘性缩减上限，
+ *     否则在上限被充分使用时加性增长</li>
+ *     <li>模型调用失败（超时、上游错误）视为过载信号，同样乘性缩减；没有模型输出就结束的请求
+ *     （参数错误、取消、复用历史解读）不作为样本，避免故障期间快速失败把上限抬高</li>
+ * </ul>
+ * 指标：app.admission.limit、app.admission.in-flight、app.admission.event-loop-lag、app.admission.shed
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+    private final AdmissionProperties properties;
+    private final EventLoopLagMonitor lagMonitor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter shed;
+    private volatile double limit;
+    private long lastBackoff;
+
+    public AdmissionController(AdmissionProperties properties, EventLoopLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.lagMonitor = lagMonitor;
+        this.limit = properties.getInitialLimit();
+        Gauge.builder("app.admission.limit", this, c -> Math.floor(c.limit))
+                .description("问答接口当前的自适应并发上限")
+                .register(meterRegistry);
+        Gauge.builder("app.admission.in-flight", inFlight, AtomicInteger::get)
+                .description("问答接口在途请求数")
+                .register(meterRegistry);
+        TimeGauge.builder("app.admission.event-loop-lag", lagMonitor, TimeUnit.NANOSECONDS, EventLoopLagMonitor::getLagNanos)
+                .description("服务端事件循环延迟")
+                .register(meterRegistry);
+        this.shed = Counter.builder("app.admission.shed")
+                .description("因超过并发上限被拒绝的问答请求数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 尝试准入一个请求，超过并发上限时返回 null
+     */
+    public Permit tryAcquire() {
+        if (!properties.isEnabled()) {
+            return new Permit();
+        }
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                shed.increment();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit();
+            }
+        }
+    }
+
+    /**
+     * 拒绝时建议客户端等待的秒数
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(properties.getRetryAfter().toSeconds(), 1);
+    }
+
+    private synchronized void onSample(long latencyNanos, int inFlightAtSample) {
+        boolean overloaded = latencyNanos > properties.getTargetTtft().toNanos()
+                || lagMonitor.getLagNanos() > properties.getMaxEventLoopLag().toNanos();
+        if (overloaded) {
+            backOff("ttft=" + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + "ms");
+        } else if (inFlightAtSample * 2 >= limit) {
+            // 上限被充分使用时才增长（约每完成 limit 个请求 +1），空闲时不会无限抬高
+            limit = Math.min(properties.getMaxLimit(), limit + 1 / limit);
+        }
+    }
+
+    private synchronized void backOff(String reason) {
+        long now = System.nanoTime();
+        if (now - lastBackoff >= properties.getBackoffInterval().toNanos()) {
+            lastBackoff = now;
+            limit = Math.max(properties.getMinLimit(), limit * properties.getBackoffRatio());
+            log.info("Admission limit decreased to {} ({}, event loop lag={}ms)", (int) limit, reason,
+                    TimeUnit.NANOSECONDS.toMillis(lagMonitor.getLagNanos()));
+        }
+    }
+
+    /**
+     * 准入凭证，请求结束时必须调用 {@link #release()}
+     */
+    public final class Permit {
+
+        private final long start = System.nanoTime();
+        private final AtomicBoolean sampled = new AtomicBoolean();
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        /**
+         * 收到模型的首个增量文本时调用，以 TTFT 调整并发上限；不是模型输出的事件（如复用的历史解读）不应调用
+         */
+        public void onFirstToken() {
+            if (sampled.compareAndSet(false, true) && properties.isEnabled()) {
+                onSample(System.nanoTime() - start, inFlight.get());
+            }
+        }
+
+        /**
+         * 模型调用失败（超时、网络或上游错误）时调用，作为过载信号
+         */
+        public void onFailure(Throwable error) {
+            if (failed.compareAndSet(false, true) && properties.isEnabled()) {
+                backOff("failure=" + error.getClass().getSimpleName());
+            }
+        }
+
+        /**
+         * 释放并发名额；没有收到首 token 的请求不作为 TTFT 样本
+         */
+        public void release() {
+            if (released.compareAndSet(false, true) && properties.isEnabled()) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
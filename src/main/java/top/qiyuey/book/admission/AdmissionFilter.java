@@ -0,0 +1,49 @@
+package top.qiyuey.book.admission;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+/**
+ * 问答接口（POST /api/book/ask）的准入过滤器
+ * 超过并发上限的请求在建立 SSE 流之前直接返回 503 和 Retry-After；
+ * 准入的请求把凭证放入 Reactor Context，由 BookService 在首个增量文本时上报 TTFT，流结束时释放
+ * 路径按 PathPattern 匹配应用内路径（解码并去除 ;参数），与处理器映射保持一致，
+ * 避免 /api/book/ask;x 或 /api/book/%61sk 之类的写法绕过准入控制。
+ */
+@Component
+public class AdmissionFilter implements WebFilter {
+
+    private static final PathPattern ASK_PATH = PathPatternParser.defaultInstance.parse("/api/book/ask");
+
+    private final AdmissionController admissionController;
+
+    public AdmissionFilter(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (exchange.getRequest().getMethod() != HttpMethod.POST
+                || !ASK_PATH.matches(exchange.getRequest().getPath().pathWithinApplication())) {
+            return chain.filter(exchange);
+        }
+        AdmissionController.Permit permit = admissionController.tryAcquire();
+        if (permit == null) {
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER,
+                    String.valueOf(admissionController.getRetryAfterSeconds()));
+            return exchange.getResponse().setComplete();
+        }
+        return chain.filter(exchange)
+                .doFinally(_ -> permit.release())
+                .contextWrite(context -> context.put(AdmissionController.Permit.class, permit));
+    }
+}
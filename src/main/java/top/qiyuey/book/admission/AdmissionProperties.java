@@ -0,0 +1,66 @@
+package top.qiyuey.book.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 问答接口准入控制配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.admission")
+public class AdmissionProperties {
+
+    /**
+     * 是否启用准入控制
+     */
+    private boolean enabled = true;
+
+    /**
+     * 初始并发上限
+     */
+    private int initialLimit = 100;
+
+    /**
+     * 并发上限的下界，过载时不会降到该值以下
+     */
+    private int minLimit = 10;
+
+    /**
+     * 并发上限的上界
+     */
+    private int maxLimit = 1000;
+
+    /**
+     * 首 token 时延（TTFT）目标，超过视为过载信号
+     */
+    private Duration targetTtft = Duration.ofSeconds(5);
+
+    /**
+     * 事件循环延迟上限，超过视为过载信号
+     */
+    private Duration maxEventLoopLag = Duration.ofMillis(100);
+
+    /**
+     * 过载时并发上限的乘性缩减系数
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 两次缩减之间的最短间隔，避免同一波慢请求把上限连续压到底
+     */
+    private Duration backoffInterval = Duration.ofSeconds(1);
+
+    /**
+     * 事件循环延迟的探测间隔
+     */
+    private Duration probeInterval = Duration.ofMillis(200);
+
+    /**
+     * 拒绝请求时返回的 Retry-After
+     */
+    private Duration retryAfter = Duration.ofSeconds(5);
+}
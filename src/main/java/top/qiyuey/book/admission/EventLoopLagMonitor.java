@@ -0,0 +1,85 @@
+package top.qiyuey.book.admission;
+
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务端事件循环延迟探测
+ * 定期向每个 Netty 事件循环提交空任务，记录从提交到执行的延迟；
+ * 延迟升高说明事件循环被阻塞或积压，是比 TTFT 更早的过载信号。
+ * 上一个探测任务尚未执行时不再提交新任务，并以已等待的时长作为当前延迟，事件循环完全卡住时也能反映出来
+ */
+@Slf4j
+@Component
+public class EventLoopLagMonitor implements DisposableBean {
+
+    private final AdmissionProperties properties;
+    private final Map<EventExecutor, Probe> probes = new ConcurrentHashMap<>();
+    private Disposable probeTask;
+
+    public EventLoopLagMonitor(AdmissionProperties properties) {
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        probeTask = Flux.interval(properties.getProbeInterval(), Schedulers.parallel())
+                .subscribe(_ -> probe());
+    }
+
+    /**
+     * 所有事件循环中最近一次探测的最大延迟（纳秒）
+     */
+    public long getLagNanos() {
+        long now = System.nanoTime();
+        long max = 0;
+        for (Probe probe : probes.values()) {
+            long pendingSince = probe.pendingSince;
+            long lag = pendingSince != 0 ? Math.max(probe.lastLag, now - pendingSince) : probe.lastLag;
+            max = Math.max(max, lag);
+        }
+        return max;
+    }
+
+    private void probe() {
+        for (EventExecutor executor : HttpResources.get().onServer(LoopResources.DEFAULT_NATIVE)) {
+            Probe probe = probes.computeIfAbsent(executor, _ -> new Probe());
+            if (probe.pendingSince != 0) {
+                continue;
+            }
+            long submitted = System.nanoTime();
+            probe.pendingSince = submitted;
+            executor.execute(() -> {
+                probe.lastLag = System.nanoTime() - submitted;
+                probe.pendingSince = 0;
+            });
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (probeTask != null) {
+            probeTask.dispose();
+        }
+    }
+
+    private static final class Probe {
+        private volatile long pendingSince;
+        private volatile long lastLag;
+    }
+}
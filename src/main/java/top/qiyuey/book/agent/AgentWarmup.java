@@ -0,0 +1,72 @@
+package top.qiyuey.book.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import top.qiyuey.book.config.ModelConfig;
+import top.qiyuey.book.config.WarmupProperties;
+import top.qiyuey.book.config.provider.ChatModelRegistry;
+
+import java.util.List;
+
+/**
+ * 启动预热
+ * 并行为所有可用模型构建各模式的 Agent，并预先建立到各提供商的连接。
+ * ApplicationRunner 执行完毕前 Spring Boot 不会发布 ACCEPTING_TRAFFIC，
+ * 因此预热期间 /actuator/health/readiness 为 OUT_OF_SERVICE，流量只会进入已预热的实例。
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AgentWarmup implements ApplicationRunner {
+
+    private static final List<String> MODES = List.of("interpret", "chat");
+
+    private final BookAgentFactory agentFactory;
+    private final ChatModelRegistry chatModelRegistry;
+    private final ModelConfig modelConfig;
+    private final WarmupProperties properties;
+
+    public AgentWarmup(BookAgentFactory agentFactory, ChatModelRegistry chatModelRegistry,
+                       ModelConfig modelConfig, WarmupProperties properties) {
+        this.agentFactory = agentFactory;
+        this.chatModelRegistry = chatModelRegistry;
+        this.modelConfig = modelConfig;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isEnabled()) {
+            log.info("Warm-up disabled");
+            return;
+        }
+        List<String> modelIds = modelConfig.getAvailable().stream()
+                .map(ModelConfig.ModelInfo::getId)
+                .toList();
+        long start = System.currentTimeMillis();
+
+        Mono<Void> agents = Flux.fromIterable(modelIds)
+                .flatMap(modelId -> Mono.fromRunnable(() -> MODES.forEach(mode -> agentFactory.getAgent(modelId, mode)))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(e -> {
+                            log.warn("Failed to warm up agent for model {}: {}", modelId, e.getMessage());
+                            return Mono.empty();
+                        }))
+                .then();
+        Mono<Void> connections = chatModelRegistry.warmUpConnections(modelIds, properties.getConnectionsPerProvider());
+
+        try {
+            Mono.when(agents, connections).block(properties.getTimeout());
+            log.info("Warm-up completed for {} model(s) in {}ms", modelIds.size(), System.currentTimeMillis() - start);
+        } catch (IllegalStateException e) {
+            log.warn("Warm-up did not finish within {}, accepting traffic anyway", properties.getTimeout());
+        }
+    }
+}
@@ -1,10 +1,19 @@
 package top.qiyuey.book.agent;
 
+import com.alibaba.cloud.ai.graph.OverAllState;
 import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
 import com.alibaba.cloud.ai.graph.checkpoint.savers.redis.RedisSaver;
+import com.alibaba.cloud.ai.graph.serializer.plain_text.jackson.SpringAIJacksonStateSerializer;
+import io.micrometer.observation.ObservationRegistry;
 import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import top.qiyuey.book.passage.PassageBlobStore;
+import top.qiyuey.book.store.AppendOnlyLog;
+import top.qiyuey.book.store.EmbeddedCheckpointSaver;
+import top.qiyuey.book.store.StorageProperties;
 
 /**
  * 读书问答 Agent 基础配置
@@ -13,10 +22,29 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class BookAgentConfig {
 
+    /**
+     * Checkpoint 存储：内存热层 + 持久层（默认 Redis，嵌入式存储时为本地日志），观测记录在持久层读写上
+     * 写入持久层前长原文替换为 blob 引用；嵌入式存储使用图默认的状态序列化器，保留 Message 的类型信息
+     */
     @Bean
-    public BaseCheckpointSaver redisSaver(RedissonClient redissonClient) {
-        return RedisSaver.builder()
-                .redisson(redissonClient)
-                .build();
+    public TieredCheckpointSaver checkpointSaver(RedissonClient redissonClient, ObservationRegistry observationRegistry,
+                                                 CheckpointCacheProperties cacheProperties,
+                                                 PassageBlobStore blobStore, StorageProperties storageProperties,
+                                                 @Qualifier("checkpointLog") ObjectProvider<AppendOnlyLog> checkpointLog) {
+        AppendOnlyLog embeddedLog = checkpointLog.getIfAvailable();
+        BaseCheckpointSaver saver = embeddedLog != null
+                ? new EmbeddedCheckpointSaver(embeddedLog, new SpringAIJacksonStateSerializer(OverAllState::new),
+                        storageProperties.getEmbedded().getCheckpointRetention())
+                : RedisSaver.builder()
+                        .redisson(redissonClient)
+                        .build();
+        return new TieredCheckpointSaver(
+                new PassageRefCheckpointSaver(new ObservedCheckpointSaver(saver, observationRegistry), blobStore),
+                cacheProperties, redissonClient);
+    }
+
+    @Bean
+    public NodeObservationListener nodeObservationListener(ObservationRegistry observationRegistry) {
+        return new NodeObservationListener(observationRegistry);
     }
 }
@@ -1,100 +1,121 @@
 package top.qiyuey.book.agent;
 
+import com.alibaba.cloud.ai.graph.CompileConfig;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.config.SaverConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import top.qiyuey.book.config.ModelRegistryProperties;
+import top.qiyuey.book.config.ModelsChangedEvent;
 import top.qiyuey.book.config.provider.ChatModelRegistry;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * 读书问答 Agent 工厂
- * 支持动态创建使用不同模型的 Agent
+ * 按 (模型, 模式) 创建并缓存 Agent，各模式使用 {@link PromptProperties} 中配置的系统提示词：
+ * 问答模式使用简短的提示词，不再为一句话的提问附带解读模式的完整输出格式。
+ * <p>
+ * 模型须在可用列表中（由 {@link ChatModelRegistry} 校验），缓存有上限，模型从配置中移除后不再分配其 Agent。
+ * Agent 在锁外创建，冷启动的创建不阻塞其他请求；并发未命中时可能重复创建，只保留先放入缓存的实例。
  */
+@Slf4j
 @Component
 public class BookAgentFactory {
 
-    private static final String SYSTEM_PROMPT = """
-            # Role: 书籍原文深度解读专家
-
-            ## 核心定位
-            你是一位兼具学术深度与实践智慧的**原文解读专家**。你的核心能力是：
-            1. 精准拆解原文的逻辑结构和核心论点
-            2. 追溯概念的思想源流和历史背景
-            3. 将抽象理论映射到现代生活的具体场景
-
-            **你的格言**：理论必须落地，概念必须具象。
-
-            ## 刚性约束 (必须遵守)
-            1. **忠于原文**：解读必须紧扣用户提供的原文，不能脱离文本空谈
-            2. **拒绝学究气**：不堆砌术语，用大白话讲透深刻道理
-            3. **强制案例**：每个核心概念必须配一个现代生活/职场的具体例子
-            4. **语气专业**：保持冷峻、客观、有洞察力，像一位读透万卷书的智者
-
-            ## 输出结构 (Strict Output Format)
-            请严格按照以下板块输出：
-
-            ### 1. 原文拆解
-            > 逐句/逐层分析原文的逻辑结构：
-            > - 这段话的核心论点是什么？
-            > - 关键概念有哪些？各自含义是什么？
-            > - 论证逻辑是怎样展开的？
-
-            ### 2. 思想溯源
-            > 简要说明：
-            > - 这段话出自哪本书/哪篇文章？什么背景下写的？
-            > - 作者为什么要提出这个观点？要解决什么问题？
-            > - 与其他思想流派有何异同？（如适用）
-
-            ### 3. 现代映射
-            > **必须**用 1-2 个具体的现代场景来演绎这段话的智慧：
-            > - 在职场/生活/学习中，这个道理具体怎么体现？
-            > - 正面案例：掌握这个智慧的人会怎么做？
-            > - 反面案例：不懂这个道理的人常犯什么错？
-
-            ### 4. 一句话精华
-            > 用一句现代大白话，总结这段原文的核心智慧。要求：朗朗上口，便于记忆。
-            """;
-
     private final ChatModelRegistry chatModelRegistry;
     private final BaseCheckpointSaver checkpointSaver;
+    private final NodeObservationListener nodeObservationListener;
+    private final String interpretPrompt;
+    private final String chatPrompt;
 
-    private final Map<String, ReactAgent> agentCache = new ConcurrentHashMap<>();
+    private final Cache<AgentKey, ReactAgent> agentCache;
 
     public BookAgentFactory(ChatModelRegistry chatModelRegistry,
-                            BaseCheckpointSaver checkpointSaver) {
+                            BaseCheckpointSaver checkpointSaver,
+                            NodeObservationListener nodeObservationListener,
+                            ModelRegistryProperties properties,
+                            PromptProperties prompts) throws IOException {
         this.chatModelRegistry = chatModelRegistry;
         this.checkpointSaver = checkpointSaver;
+        this.nodeObservationListener = nodeObservationListener;
+        this.interpretPrompt = prompts.getInterpret().getContentAsString(StandardCharsets.UTF_8);
+        this.chatPrompt = prompts.getChat().getContentAsString(StandardCharsets.UTF_8);
+        this.agentCache = Caffeine.newBuilder()
+                .maximumSize(Math.max(properties.getMaxCachedModels(), 1))
+                .build();
+    }
+
+    /**
+     * 获取指定模型、指定模式的 Agent
+     */
+    public ReactAgent getAgent(String modelId, String mode) {
+        AgentKey key = new AgentKey(modelId, isChat(mode));
+        ReactAgent agent = agentCache.getIfPresent(key);
+        if (agent != null) {
+            return agent;
+        }
+        ReactAgent created = createAgent(key);
+        ReactAgent existing = agentCache.asMap().putIfAbsent(key, created);
+        return existing != null ? existing : created;
     }
 
     /**
-     * 获取指定模型的 Agent
+     * 移除的模型不再分配 Agent；正在进行的问答持有原 Agent，执行完后随之回收，不会被中断
      */
-    public ReactAgent getAgent(String modelId) {
-        return agentCache.computeIfAbsent(modelId, this::createAgent);
+    @EventListener
+    public void onModelsChanged(ModelsChangedEvent event) {
+        if (agentCache.asMap().keySet().removeIf(key -> event.removed().contains(key.modelId()))) {
+            log.info("Retired agents for removed models {}, in-flight asks will finish on them", event.removed());
+        }
     }
 
     /**
-     * 创建指定模型的 Agent
+     * 创建指定模型、指定模式的 Agent
      */
-    private ReactAgent createAgent(String modelId) {
-        ChatModel chatModel = chatModelRegistry.getChatModel(modelId);
+    private ReactAgent createAgent(AgentKey key) {
+        ChatModel chatModel = chatModelRegistry.getChatModel(key.modelId());
 
         return ReactAgent.builder()
-                .name("BookAgent-" + modelId)
+                .name("BookAgent-" + key.modelId() + (key.chat() ? "-chat" : ""))
                 .model(chatModel)
-                .systemPrompt(SYSTEM_PROMPT)
+                .systemPrompt(key.chat() ? chatPrompt : interpretPrompt)
                 .enableLogging(true)
                 .saver(checkpointSaver)
+                .compileConfig(CompileConfig.builder()
+                        .saverConfig(SaverConfig.builder().register(checkpointSaver).build())
+                        .withLifecycleListener(nodeObservationListener)
+                        .build())
                 .build();
     }
 
+    /**
+     * 获取指定模式的系统提示词（供直连流式模式使用）
+     */
+    public String getSystemPrompt(String mode) {
+        return isChat(mode) ? chatPrompt : interpretPrompt;
+    }
+
     /**
      * 获取 ChatModel（供其他组件使用）
      */
     public ChatModel createChatModel(String modelId) {
         return chatModelRegistry.getChatModel(modelId);
     }
+
+    private static boolean isChat(String mode) {
+        return "chat".equals(mode);
+    }
+
+    /**
+     * 解读模式之外只有问答模式，按是否问答模式区分即可
+     */
+    private record AgentKey(String modelId, boolean chat) {
+    }
 }
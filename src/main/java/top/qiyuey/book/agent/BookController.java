@@ -10,12 +10,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
-import org.springframework.util.StringUtils;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
-import java.util.UUID;
 
 /**
  * 读书问答 Agent 的 REST API 控制器 (WebFlux 版)
@@ -28,12 +28,9 @@ public class BookController {
     private static final Logger log = LoggerFactory.getLogger(BookController.class);
 
     /**
-     * 最大输入字符数限制
-     * qwen-max 阶梯计费：<=32K tokens 价格较低
-     * 中文约 1.5-2 字符/token，保守估计设为 20000 字符（约 10K-13K tokens）
-     * 加上 System Prompt（约 1K tokens），总输入控制在 32K 以内
+     * 通过 Accept 头协商紧凑格式时使用的媒体类型，响应的 Content-Type 仍为 text/event-stream
      */
-    private static final int MAX_QUESTION_LENGTH = 20000;
+    public static final String COMPACT_EVENT_STREAM_VALUE = "text/vnd.book-agent.compact-event-stream";
 
     private final BookService bookService;
     private final ModelConfig modelConfig;
@@ -60,6 +57,15 @@ public class BookController {
         return threadService.getAllThreads();
     }
 
+    @Operation(summary = "检索历史对话", description = "按标题、书名和消息内容全文检索，结果按相关度排序并分页")
+    @GetMapping("/history/search")
+    public ThreadService.SearchPage searchHistory(
+            @Parameter(description = "检索关键词", required = true) @RequestParam("q") String query,
+            @Parameter(description = "页码，从 0 开始") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "每页条数，最大 50") @RequestParam(defaultValue = "20") int size) {
+        return threadService.searchThreads(query, Math.max(page, 0), Math.clamp(size, 1, 50));
+    }
+
     @Operation(summary = "获取对话详情")
     @GetMapping("/history/{threadId}/messages")
     public List<ThreadService.ChatMessage> getThreadMessages(@PathVariable String threadId) {
@@ -91,26 +97,8 @@ public class BookController {
             @Parameter(description = "读书问答请求，包含问题和可选的会话ID", required = true)
             @RequestBody BookRequest request) {
 
-        // 预处理：提取并填充默认值
-        String question = request.getQuestion();
-        String bookName = request.getBookName();
-        String mode = StringUtils.hasText(request.getMode()) ? request.getMode() : "interpret";
-
-        // 验证并截断过长输入，确保输入 token 在 32K 以内
-        if (question != null && question.length() > MAX_QUESTION_LENGTH) {
-            log.warn("问题长度 {} 超过限制 {}，将被截断", question.length(), MAX_QUESTION_LENGTH);
-            question = question.substring(0, MAX_QUESTION_LENGTH) + "...(内容过长已截断)";
-        }
-
-        String threadId = StringUtils.hasText(request.getThreadId())
-                ? request.getThreadId()
-                : UUID.randomUUID().toString();
-        String modelId = StringUtils.hasText(request.getModelId())
-                ? request.getModelId()
-                : modelConfig.getDefaultModel();
-
         // 只在流式部分使用 Reactor
-        return bookService.executeBookQuery(question, bookName, threadId, modelId, mode)
+        return bookService.ask(request)
                 // 将业务对象包装为 SSE，增加事件类型以便前端区分
                 .map(data -> ServerSentEvent.<BookResponseEvent>builder()
                         .event(data.getStatus().name())
@@ -126,6 +114,39 @@ public class BookController {
                 });
     }
 
+    /**
+     * 读书问答（紧凑格式）- 通过 ?format=compact 选择
+     * PROGRESS 事件只携带 id 和原始文本，不经过 Jackson 编码，大幅减少传输字节和编码开销
+     */
+    @Operation(
+            summary = "读书问答（紧凑流式返回）",
+            description = "与 /ask 相同，但 PROGRESS 事件只包含 id 和原始文本（无事件名、无 JSON 包装），"
+                    + "其他事件以事件名 + 原始文本发送。也可通过 Accept: " + COMPACT_EVENT_STREAM_VALUE + " 选择。"
+    )
+    @PostMapping(value = "/ask", params = "format=compact")
+    public Mono<Void> askQuestionCompact(
+            @Parameter(description = "读书问答请求，包含问题和可选的会话ID", required = true)
+            @RequestBody BookRequest request,
+            ServerHttpResponse response) {
+        response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        Flux<BookResponseEvent> events = bookService.ask(request)
+                .onErrorResume(ex -> {
+                    log.error("流式处理发生异常", ex);
+                    return Flux.just(new BookResponseEvent("系统繁忙: " + ex.getMessage()));
+                });
+        return response.writeAndFlushWith(
+                CompactSseEncoder.encode(events, response.bufferFactory()).map(Mono::just));
+    }
+
+    /**
+     * 读书问答（紧凑格式）- 通过 Accept 头协商
+     */
+    @Operation(hidden = true)
+    @PostMapping(value = "/ask", produces = COMPACT_EVENT_STREAM_VALUE)
+    public Mono<Void> askQuestionCompactByAccept(@RequestBody BookRequest request, ServerHttpResponse response) {
+        return askQuestionCompact(request, response);
+    }
+
     /**
      * 读书问答请求对象
      */
@@ -147,12 +168,19 @@ public class BookController {
         @Schema(description = "模式：interpret=解读模式，chat=问答模式", example = "interpret", allowableValues = {"interpret", "chat"})
         private String mode;
 
-        public BookRequest(String question, String bookName, String threadId, String modelId, String mode) {
+        @Schema(description = "比较模式：同时调用的多个模型 ID（2-4 个，超过时拒绝），各模型增量交错推送、事件带 modelId；"
+                + "提供时忽略 modelId，只有一个时按单模型问答",
+                example = "[\"qwen-max\", \"qwen-plus\"]")
+        private List<String> modelIds;
+
+        public BookRequest(String question, String bookName, String threadId, String modelId, String mode,
+                           List<String> modelIds) {
             this.question = question;
             this.bookName = bookName;
             this.threadId = threadId;
             this.modelId = modelId;
             this.mode = mode;
+            this.modelIds = modelIds;
         }
     }
 
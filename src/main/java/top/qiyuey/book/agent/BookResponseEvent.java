@@ -1,5 +1,6 @@
 package top.qiyuey.book.agent;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,6 +18,17 @@ public class BookResponseEvent {
     private Status status;
     private String content;
 
+    /**
+     * 比较模式下产生该事件的模型，其他情况为空
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String modelId;
+
+    public BookResponseEvent(Status status, String content) {
+        this.status = status;
+        this.content = content;
+    }
+
     // 构造辅助方法
     public BookResponseEvent(String content) {
         this.status = Status.ERROR;
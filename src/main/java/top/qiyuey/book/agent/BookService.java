@@ -1,28 +1,247 @@
 package top.qiyuey.book.agent;
 
 import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.StateGraph;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
 import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.ContextView;
+import top.qiyuey.book.admission.AdmissionController;
+import top.qiyuey.book.config.ModelConfig;
+import top.qiyuey.book.passage.HotPassageTracker;
+import top.qiyuey.book.passage.PassageDedupIndex;
+import top.qiyuey.book.passage.PassageRecord;
+import top.qiyuey.book.profiling.AskTrace;
+import top.qiyuey.book.usage.TokenUsageLedger;
 
+import java.lang.reflect.Method;
 import java.net.SocketException;
 import java.net.UnknownHostException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 @Slf4j
 @Service
 public class BookService {
 
+    /**
+     * 最大输入字符数限制
+     * qwen-max 阶梯计费：<=32K tokens 价格较低
+     * 中文约 1.5-2 字符/token，保守估计设为 20000 字符（约 10K-13K tokens）
+     * 加上 System Prompt（约 1K tokens），总输入控制在 32K 以内
+     */
+    private static final int MAX_QUESTION_LENGTH = 20000;
+
+    /**
+     * 比较模式最多同时调用的模型数
+     */
+    private static final int MAX_COMPARE_MODELS = 4;
+
+    /**
+     * ReactAgent 状态中保存对话消息的键
+     */
+    private static final String AGENT_MESSAGES_KEY = "messages";
+
+    private static final ClassValue<Optional<Method>> USAGE_ACCESSOR = new ClassValue<>() {
+        @Override
+        protected Optional<Method> computeValue(Class<?> type) {
+            for (String name : new String[]{"chatResponse", "getChatResponse"}) {
+                try {
+                    return Optional.of(type.getMethod(name));
+                } catch (NoSuchMethodException ignore) {
+                }
+            }
+            return Optional.empty();
+        }
+    };
+
+    private static final Observation.Event FIRST_TOKEN = Observation.Event.of("book.ask.first-token", "first token");
+    private static final Observation.Event COMPLETION = Observation.Event.of("book.ask.completion", "completion");
+
     private final BookAgentFactory agentFactory;
     private final ThreadService threadService;
+    private final PassageDedupIndex passageDedupIndex;
+    private final ModelConfig modelConfig;
+    private final TokenUsageLedger usageLedger;
+    private final ObservationRegistry observationRegistry;
+    private final DirectStreamingProperties directStreaming;
+    private final TieredCheckpointSaver checkpointSaver;
+    private final HotPassageTracker hotPassageTracker;
+    private final AdmissionController admissionController;
+    private final NodeObservationListener nodeObservationListener;
 
-    public BookService(BookAgentFactory agentFactory, ThreadService threadService) {
+    public BookService(BookAgentFactory agentFactory, ThreadService threadService,
+                       PassageDedupIndex passageDedupIndex, ModelConfig modelConfig,
+                       TokenUsageLedger usageLedger, ObservationRegistry observationRegistry,
+                       DirectStreamingProperties directStreaming, TieredCheckpointSaver checkpointSaver,
+                       HotPassageTracker hotPassageTracker, AdmissionController admissionController,
+                       NodeObservationListener nodeObservationListener) {
         this.agentFactory = agentFactory;
         this.threadService = threadService;
+        this.passageDedupIndex = passageDedupIndex;
+        this.modelConfig = modelConfig;
+        this.usageLedger = usageLedger;
+        this.observationRegistry = observationRegistry;
+        this.directStreaming = directStreaming;
+        this.checkpointSaver = checkpointSaver;
+        this.hotPassageTracker = hotPassageTracker;
+        this.admissionController = admissionController;
+        this.nodeObservationListener = nodeObservationListener;
+    }
+
+    /**
+     * 预处理请求后执行读书问答：填充默认值，截断过长输入
+     * SSE 和 WebSocket 接口共用
+     */
+    public Flux<BookResponseEvent> ask(BookController.BookRequest request) {
+        String question = request.getQuestion();
+        String bookName = request.getBookName();
+        String mode = StringUtils.hasText(request.getMode()) ? request.getMode() : "interpret";
+
+        // 验证并截断过长输入，确保输入 token 在 32K 以内
+        if (question != null && question.length() > MAX_QUESTION_LENGTH) {
+            log.warn("问题长度 {} 超过限制 {}，将被截断", question.length(), MAX_QUESTION_LENGTH);
+            question = question.substring(0, MAX_QUESTION_LENGTH) + "...(内容过长已截断)";
+        }
+
+        String threadId = StringUtils.hasText(request.getThreadId())
+                ? request.getThreadId()
+                : UUID.randomUUID().toString();
+        String input = question;
+        List<String> compareModels = compareModels(request.getModelIds());
+        if (compareModels.size() > MAX_COMPARE_MODELS) {
+            return Flux.just(new BookResponseEvent("比较模式最多支持 " + MAX_COMPARE_MODELS + " 个模型"));
+        }
+        // 只给出一个模型时按单模型处理，以该模型为准
+        String modelId = compareModels.size() == 1
+                ? compareModels.getFirst()
+                : StringUtils.hasText(request.getModelId()) ? request.getModelId() : modelConfig.getDefaultModel();
+        // 只接受配置中的模型，避免为任意 modelId 创建并缓存模型实例
+        String unknown = (compareModels.size() > 1 ? compareModels : List.of(modelId)).stream()
+                .filter(id -> !modelConfig.isAvailable(id))
+                .findFirst()
+                .orElse(null);
+        if (unknown != null) {
+            return Flux.just(new BookResponseEvent("不支持的模型: " + unknown));
+        }
+        if (compareModels.size() > 1) {
+            return Flux.deferContextual(context -> {
+                // 入口的准入凭证只覆盖一次模型调用，比较模式为其余每个模型再各取一个
+                List<AdmissionController.Permit> permits = acquireComparePermits(context, compareModels.size());
+                if (permits == null) {
+                    return Flux.just(new BookResponseEvent("服务繁忙，比较模式需要 " + compareModels.size()
+                            + " 个并发名额，请 " + admissionController.getRetryAfterSeconds() + " 秒后重试"));
+                }
+                Runnable releaseExtra = () -> permits.stream().skip(1).forEach(AdmissionController.Permit::release);
+                try {
+                    return observe(threadId, "compare", mode,
+                            () -> executeCompareQuery(input, bookName, threadId, compareModels, mode, permits))
+                            .doFinally(_ -> releaseExtra.run());
+                } catch (RuntimeException e) {
+                    releaseExtra.run();
+                    throw e;
+                }
+            });
+        }
+        return observe(threadId, modelId, mode, () -> executeBookQuery(input, bookName, threadId, modelId, mode));
+    }
+
+    /**
+     * 比较模式的模型列表：去空、去重
+     */
+    private static List<String> compareModels(List<String> modelIds) {
+        if (modelIds == null) {
+            return List.of();
+        }
+        return modelIds.stream()
+                .filter(StringUtils::hasText)
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * 比较模式各模型的准入凭证：第一个为入口放入上下文的凭证，其余新取；任一取不到时释放已取的并返回 null。
+     * 上下文中没有凭证（不经过 HTTP/WebSocket 入口）时返回空列表，不做准入控制
+     */
+    private List<AdmissionController.Permit> acquireComparePermits(ContextView context, int count) {
+        Optional<AdmissionController.Permit> first = permit(context);
+        if (first.isEmpty()) {
+            return List.of();
+        }
+        List<AdmissionController.Permit> permits = new ArrayList<>(count);
+        permits.add(first.get());
+        while (permits.size() < count) {
+            AdmissionController.Permit permit = admissionController.tryAcquire();
+            if (permit == null) {
+                permits.stream().skip(1).forEach(AdmissionController.Permit::release);
+                return null;
+            }
+            permits.add(permit);
+        }
+        return permits;
+    }
+
+    /**
+     * 以一个 span 覆盖整次问答：同步阶段的对话存储操作和流式阶段的 Agent/模型调用都挂在该 span 下，
+     * 并在首个增量文本和完成时记录事件
+     */
+    private Flux<BookResponseEvent> observe(String threadId, String modelId, String mode,
+                                            Supplier<Flux<BookResponseEvent>> query) {
+        Observation observation = Observation.createNotStarted("book.ask", observationRegistry)
+                .contextualName("book ask")
+                .lowCardinalityKeyValue("mode", mode)
+                .lowCardinalityKeyValue("model", modelId)
+                .highCardinalityKeyValue("thread.id", threadId)
+                .start();
+
+        Flux<BookResponseEvent> events;
+        try (Observation.Scope _ = observation.openScope()) {
+            events = query.get();
+        } catch (RuntimeException e) {
+            observation.error(e);
+            observation.stop();
+            throw e;
+        }
+
+        AtomicBoolean firstToken = new AtomicBoolean();
+        return events
+                .doOnEach(signal -> {
+                    BookResponseEvent event = signal.get();
+                    if (signal.isOnNext() && event.getStatus() == BookResponseEvent.Status.PROGRESS
+                            && firstToken.compareAndSet(false, true)) {
+                        observation.event(FIRST_TOKEN);
+                    }
+                })
+                .doOnComplete(() -> observation.event(COMPLETION))
+                .doOnError(observation::error)
+                .doFinally(_ -> observation.stop())
+                .contextWrite(context -> context.put(ObservationThreadLocalAccessor.KEY, observation));
     }
 
     /**
@@ -36,21 +255,81 @@ public class BookService {
      * @return 响应事件流
      */
     public Flux<BookResponseEvent> executeBookQuery(String question, String bookName, String threadId, String modelId, String mode) {
-        RunnableConfig config = RunnableConfig.builder().threadId(threadId).build();
-
         // 记录用户消息并更新线程信息
-        threadService.addMessage(threadId, "user", question);
-        threadService.updateThread(threadId, null, modelId, bookName);
-        threadService.generateTitleAsync(threadId, question, modelId);
+        AskTrace.runStage("bookkeeping", threadId, modelId, () -> {
+            threadService.addMessage(threadId, "user", question);
+            threadService.updateThread(threadId, null, modelId, bookName);
+            threadService.generateTitleAsync(threadId, question, modelId);
+        });
 
-        // 获取指定模型的 Agent
-        ReactAgent agent = agentFactory.getAgent(modelId);
-        
-        // ... build user message
-        String userMessage = buildUserMessage(question, bookName, mode);
+        boolean interpret = !"chat".equals(mode);
+        String bookInfo = (bookName != null && !bookName.isBlank()) ? String.format(" [%s]", bookName) : "";
 
-        // 1. 起始事件
+        // 解读模式下命中相似原文时直接复用历史解读，不再调用模型
+        if (interpret) {
+            hotPassageTracker.record(question, bookName);
+            Optional<PassageRecord> similar = passageDedupIndex.findSimilar(question, bookName, modelId);
+            if (similar.isPresent()) {
+                return replayInterpretation(threadId, buildUserMessage(question, bookName, mode), similar.get(), bookInfo);
+            }
+        }
+
+        return answer(new Turn(question, bookName, threadId, mode, buildUserMessage(question, bookName, mode), false),
+                modelId, threadId);
+    }
+
+    /**
+     * 比较模式：同一问题并行发给多个模型，各模型的增量按到达顺序交错合并为一个流，事件带 modelId
+     * 总耗时取决于最慢的模型；某个模型失败只产生该模型的 ERROR 事件，不影响其他模型。
+     * <p>
+     * 每个模型使用独立的 Agent 会话（{threadId}:{modelId}），互不污染上下文；
+     * 回答各自记入对话，内容前加模型标识。比较模式不复用相似原文的历史解读。
+     *
+     * @param permits 各模型的准入凭证，与 modelIds 一一对应；为空时不上报准入样本
+     */
+    public Flux<BookResponseEvent> executeCompareQuery(String question, String bookName, String threadId,
+                                                       List<String> modelIds, String mode,
+                                                       List<AdmissionController.Permit> permits) {
+        AskTrace.runStage("bookkeeping", threadId, modelIds.getFirst(), () -> {
+            threadService.addMessage(threadId, "user", question);
+            threadService.registerCompareModels(threadId, modelIds);
+            threadService.updateThread(threadId, null, modelIds.getFirst(), bookName);
+            threadService.generateTitleAsync(threadId, question, modelIds.getFirst());
+        });
+
+        Turn turn = new Turn(question, bookName, threadId, mode, buildUserMessage(question, bookName, mode), true);
+        return Flux.merge(IntStream.range(0, modelIds.size())
+                .mapToObj(i -> {
+                    String modelId = modelIds.get(i);
+                    return Flux.defer(() -> answer(turn, modelId, ThreadService.compareSessionId(threadId, modelId)))
+                            .doOnNext(event -> event.setModelId(modelId))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            // 各模型以自己的凭证上报 TTFT 和失败
+                            .contextWrite(context -> permits.isEmpty()
+                                    ? context
+                                    : context.put(AdmissionController.Permit.class, permits.get(i)));
+                })
+                .toList());
+    }
+
+    /**
+     * 单个模型回答一轮问答
+     *
+     * @param agentThreadId Agent 会话（Checkpoint）ID，比较模式下每个模型各用一个
+     */
+    private Flux<BookResponseEvent> answer(Turn turn, String modelId, String agentThreadId) {
+        String threadId = turn.threadId();
+        String mode = turn.mode();
+        String bookName = turn.bookName();
+        String userMessage = turn.userMessage();
+        boolean interpret = !"chat".equals(mode);
         String bookInfo = (bookName != null && !bookName.isBlank()) ? String.format(" [%s]", bookName) : "";
+        RunnableConfig config = RunnableConfig.builder()
+                .threadId(agentThreadId)
+                .addMetadata(NodeObservationListener.EXECUTION_ID, UUID.randomUUID().toString())
+                .build();
+
+        // 1. 起始事件
         String modeLabel = "chat".equals(mode) ? "回答" : "解读";
         BookResponseEvent startEvent = BookResponseEvent.builder()
                 .status(BookResponseEvent.Status.START)
@@ -58,11 +337,23 @@ public class BookService {
                 .build();
         
         StringBuilder fullResponse = new StringBuilder();
+        // 各家模型在流中返回累计用量（或仅在最后一个 chunk 返回），取最大值即为本次请求的用量
+        AtomicLong promptTokens = new AtomicLong();
+        AtomicLong completionTokens = new AtomicLong();
+        AskTrace trace = AskTrace.start(threadId, modelId, mode);
 
-        // 2. Agent流转换
+        // 2. Agent流转换（直连模式下直接使用 ChatModel 流）
         Flux<BookResponseEvent> agentStream;
         try {
-             agentStream = agent.stream(userMessage, config)
+            if (directStreaming.isEnabledFor(mode)) {
+                agentStream = AskTrace.stage("agent-create", threadId, modelId,
+                        () -> directStream(threadId, agentThreadId, modelId, mode, userMessage,
+                                promptTokens, completionTokens));
+            } else {
+                // 获取指定模型的 Agent
+                ReactAgent agent = AskTrace.stage("agent-create", threadId, modelId,
+                        () -> agentFactory.getAgent(modelId, mode));
+                agentStream = agent.stream(userMessage, config)
                     .flatMap(output -> {
                         // ... existing logic ...
                         // 调试日志
@@ -78,6 +369,7 @@ public class BookService {
 
                         // 处理流式文本输出
                         if (output instanceof StreamingOutput<?> streamingOutput) {
+                            accumulateUsage(safeUsage(streamingOutput), promptTokens, completionTokens);
                             String text = safeStreamingText(streamingOutput);
                             if (text != null && !text.isEmpty()) {
                                 return Flux.just(BookResponseEvent.builder()
@@ -92,6 +384,7 @@ public class BookService {
                         
                         return Flux.empty();
                     });
+            }
         } catch (Exception e) {
              // ...
              log.error("创建 Agent 流失败", e);
@@ -105,28 +398,160 @@ public class BookService {
         }
 
         // 3. 组合流，添加超时和错误处理
+        AtomicBoolean firstToken = new AtomicBoolean();
         return Flux.concat(Flux.just(startEvent), agentStream)
                 .timeout(Duration.ofMinutes(3))
+                .doOnEach(signal -> {
+                    if (signal.isOnNext() && signal.get().getStatus() == BookResponseEvent.Status.PROGRESS
+                            && firstToken.compareAndSet(false, true)) {
+                        // 上报 TTFT 给准入控制（HTTP 和 WebSocket 入口会放入凭证），只统计模型的真实输出
+                        permit(signal.getContextView()).ifPresent(AdmissionController.Permit::onFirstToken);
+                    }
+                })
                 .doOnNext(event -> {
                     if (event.getStatus() == BookResponseEvent.Status.PROGRESS && event.getContent() != null) {
                         fullResponse.append(event.getContent());
+                        trace.onChunk(event.getContent());
                     }
                 })
                 .doOnComplete(() -> {
                      if (!fullResponse.isEmpty()) {
-                         threadService.addMessage(threadId, "assistant", fullResponse.toString());
+                         AskTrace.runStage("persist", threadId, modelId, () -> {
+                             threadService.addMessage(threadId, "assistant", turn.compare()
+                                     ? "【" + modelId + "】\n" + fullResponse
+                                     : fullResponse.toString());
+                             if (interpret) {
+                                 passageDedupIndex.record(turn.question(), bookName, modelId, fullResponse.toString());
+                             }
+                         });
                      }
                 })
-                .onErrorResume(ex -> {
+                .doFinally(signal -> {
+                    trace.complete(signal.toString(), promptTokens.get(), completionTokens.get());
+                    // 取消、超时或出错时节点的结束回调不会触发，关闭本次执行中未结束的节点观测
+                    nodeObservationListener.finish(config);
+                    // 本轮结束，写出 Agent 的 Checkpoint（TURN 模式）
+                    checkpointSaver.flushThread(agentThreadId);
+                    // 取消或出错时模型也已计费，同样记入台账
+                    if (promptTokens.get() > 0 || completionTokens.get() > 0) {
+                        usageLedger.record(threadId, modelId, mode, bookName, promptTokens.get(), completionTokens.get());
+                    }
+                })
+                .onErrorResume(ex -> Flux.deferContextual(context -> {
                     log.error("Agent 流处理异常", ex);
+                    // 模型调用失败（超时、上游错误）作为过载信号
+                    permit(context).ifPresent(permit -> permit.onFailure(ex));
                     String errorMessage = buildUserFriendlyErrorMessage(ex);
                     return Flux.just(BookResponseEvent.builder()
                             .status(BookResponseEvent.Status.ERROR)
                             .content(errorMessage)
                             .build());
+                }));
+    }
+
+    private static Optional<AdmissionController.Permit> permit(ContextView context) {
+        return context.getOrEmpty(AdmissionController.Permit.class);
+    }
+
+    /**
+     * 直连流式：系统提示词 + ThreadService 中的最近历史 + 本轮提问，直接调用 ChatModel.stream
+     * 不经过图执行；完成后将本轮问答追加到 Agent 的会话记忆，同一会话之后走 Agent 时不会丢失这几轮
+     */
+    private Flux<BookResponseEvent> directStream(String threadId, String agentThreadId, String modelId, String mode,
+                                                 String userMessage, AtomicLong promptTokens,
+                                                 AtomicLong completionTokens) {
+        List<ThreadService.ChatMessage> history = threadService.getMessages(threadId);
+        // 最后一条是刚记录的本轮提问，改用带书籍上下文的 userMessage
+        int end = Math.max(history.size() - 1, 0);
+        int start = Math.max(end - directStreaming.getHistoryMessages(), 0);
+
+        List<Message> messages = new ArrayList<>(end - start + 2);
+        messages.add(new SystemMessage(agentFactory.getSystemPrompt(mode)));
+        for (ThreadService.ChatMessage message : history.subList(start, end)) {
+            messages.add("assistant".equals(message.getRole())
+                    ? new AssistantMessage(message.getContent())
+                    : new UserMessage(message.getContent()));
+        }
+        messages.add(new UserMessage(userMessage));
+
+        StringBuilder answer = new StringBuilder();
+        return agentFactory.createChatModel(modelId).stream(new Prompt(messages))
+                .flatMap(response -> {
+                    if (response.getMetadata() != null) {
+                        accumulateUsage(response.getMetadata().getUsage(), promptTokens, completionTokens);
+                    }
+                    String text = response.getResult() != null && response.getResult().getOutput() != null
+                            ? response.getResult().getOutput().getText()
+                            : null;
+                    if (text == null || text.isEmpty()) {
+                        return Flux.empty();
+                    }
+                    answer.append(text);
+                    return Flux.just(BookResponseEvent.builder()
+                            .status(BookResponseEvent.Status.PROGRESS)
+                            .content(text)
+                            .build());
+                })
+                .doOnComplete(() -> {
+                    if (!answer.isEmpty()) {
+                        appendToAgentMemory(agentThreadId, userMessage, answer.toString());
+                    }
+                });
+    }
+
+    private static void accumulateUsage(Usage usage, AtomicLong promptTokens, AtomicLong completionTokens) {
+        if (usage != null) {
+            promptTokens.accumulateAndGet(tokens(usage.getPromptTokens()), Math::max);
+            completionTokens.accumulateAndGet(tokens(usage.getCompletionTokens()), Math::max);
+        }
+    }
+
+    /**
+     * 回放相似原文的历史解读
+     * 回放的解读不经过 Agent，完成后将本轮问答追加到 Agent 的会话记忆，后续追问时模型能看到这段解读
+     */
+    private Flux<BookResponseEvent> replayInterpretation(String threadId, String userMessage, PassageRecord record,
+                                                         String bookInfo) {
+        BookResponseEvent startEvent = BookResponseEvent.builder()
+                .status(BookResponseEvent.Status.START)
+                .content(String.format("已找到相似原文的解读%s (模型: %s)", bookInfo, record.getModelId()))
+                .build();
+        BookResponseEvent resultEvent = BookResponseEvent.builder()
+                .status(BookResponseEvent.Status.PROGRESS)
+                .content(record.getInterpretation())
+                .build();
+        return Flux.just(startEvent, resultEvent)
+                .doOnComplete(() -> {
+                    threadService.addMessage(threadId, "assistant", record.getInterpretation());
+                    appendToAgentMemory(threadId, userMessage, record.getInterpretation());
                 });
     }
 
+    /**
+     * 在会话最新 Checkpoint 的消息列表后追加一轮问答，作为新的 Checkpoint 写入
+     */
+    private void appendToAgentMemory(String agentThreadId, String userMessage, String answer) {
+        RunnableConfig config = RunnableConfig.builder().threadId(agentThreadId).build();
+        try {
+            Optional<Checkpoint> latest = checkpointSaver.get(config);
+            Map<String, Object> state = new LinkedHashMap<>(latest.map(Checkpoint::getState).orElseGet(Map::of));
+            List<Object> messages = new ArrayList<>(
+                    state.get(AGENT_MESSAGES_KEY) instanceof List<?> list ? list : List.of());
+            messages.add(new UserMessage(userMessage));
+            messages.add(new AssistantMessage(answer));
+            state.put(AGENT_MESSAGES_KEY, messages);
+            checkpointSaver.put(config, Checkpoint.builder()
+                    .id(UUID.randomUUID().toString())
+                    .state(state)
+                    .nodeId(latest.map(Checkpoint::getNodeId).orElse(StateGraph.END))
+                    .nextNodeId(latest.map(Checkpoint::getNextNodeId).orElse(StateGraph.END))
+                    .build());
+            checkpointSaver.flushThread(agentThreadId);
+        } catch (Exception e) {
+            log.warn("Failed to append turn to agent memory of {}", agentThreadId, e);
+        }
+    }
+
     /**
      * 将异常转换为用户友好的错误消息
      */
@@ -221,11 +646,41 @@ public class BookService {
         return null;
     }
 
+    /**
+     * 提取 StreamingOutput 携带的 token 用量，兼容新旧 API。
+     * 依次尝试 chatResponse()/getChatResponse()，取不到时返回 null；访问方法按类解析一次后缓存。
+     */
+    private Usage safeUsage(StreamingOutput<?> so) {
+        Optional<Method> accessor = USAGE_ACCESSOR.get(so.getClass());
+        if (accessor.isEmpty()) {
+            return null;
+        }
+        try {
+            if (accessor.get().invoke(so) instanceof ChatResponse response && response.getMetadata() != null) {
+                return response.getMetadata().getUsage();
+            }
+        } catch (Exception e) {
+            log.debug("提取 StreamingOutput 用量失败: {}", e.toString());
+        }
+        return null;
+    }
+
+    /**
+     * 一轮问答的输入，比较模式下由各模型共用
+     */
+    private record Turn(String question, String bookName, String threadId, String mode, String userMessage,
+                        boolean compare) {
+    }
+
+    private static long tokens(Integer value) {
+        return value != null ? value : 0;
+    }
+
     /**
      * 构建用户消息
      * 根据模式和书籍名称构建不同的消息格式
      */
-    private String buildUserMessage(String question, String bookName, String mode) {
+    static String buildUserMessage(String question, String bookName, String mode) {
         boolean hasBookName = bookName != null && !bookName.isBlank();
 
         if ("chat".equals(mode)) {
@@ -0,0 +1,21 @@
+package top.qiyuey.book.agent;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+
+import java.util.Map;
+
+/**
+ * WebSocket 路由配置
+ */
+@Configuration
+public class BookWebSocketConfig {
+
+    @Bean
+    public HandlerMapping bookWebSocketHandlerMapping(BookWebSocketHandler handler) {
+        // 优先于注解控制器的映射
+        return new SimpleUrlHandlerMapping(Map.of("/ws/book", handler), -1);
+    }
+}
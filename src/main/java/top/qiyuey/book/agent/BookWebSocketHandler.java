@@ -0,0 +1,294 @@
+package top.qiyuey.book.agent;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscription;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+import top.qiyuey.book.admission.AdmissionController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 读书问答 WebSocket 接口（/ws/book）
+ * 一条连接上可并发多路问答，每路以客户端指定的 streamId 区分，并推送本连接问答过的对话的变更。
+ * <p>
+ * 客户端消息：
+ * <ul>
+ *     <li>{"type":"ask","streamId":"s1","question":"...","bookName":"...","threadId":"...","modelId":"...","mode":"chat","n":64}
+ *     —— 比较模式以 "modelIds":["qwen-max","qwen-plus"] 代替 modelId，event 消息带 modelId</li>
+ *     <li>{"type":"request","streamId":"s1","n":32} —— 为该路追加 n 个事件的额度</li>
+ *     <li>{"type":"cancel","streamId":"s1"}</li>
+ * </ul>
+ * 服务端消息：event（问答事件）、complete、cancelled、error、thread（对话更新）、thread-deleted。
+ * <p>
+ * 每路按额度（credit）向上游请求事件，额度用完即暂停读取模型响应，单路消费慢不会拖累同一连接上的其他路。
+ * 待发送的消息最多缓存 {@link #MAX_PENDING_FRAMES} 条，客户端读取过慢导致缓存溢出时以 1013（服务过载）关闭连接。
+ */
+@Slf4j
+@Component
+public class BookWebSocketHandler implements WebSocketHandler {
+
+    private static final long DEFAULT_CREDIT = 256;
+    private static final int MAX_STREAMS_PER_CONNECTION = 32;
+    private static final int MAX_PENDING_FRAMES = 4096;
+
+    private final BookService bookService;
+    private final ObjectMapper objectMapper;
+    private final AdmissionController admissionController;
+    /**
+     * 对话 ID -> 在该对话上问答过的连接
+     */
+    private final Map<String, Set<Connection>> watchers = new ConcurrentHashMap<>();
+
+    public BookWebSocketHandler(BookService bookService, ObjectMapper objectMapper,
+                                AdmissionController admissionController) {
+        this.bookService = bookService;
+        this.objectMapper = objectMapper;
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        Connection connection = new Connection(session);
+
+        Mono<Void> input = session.receive()
+                .map(WebSocketMessage::getPayloadAsText)
+                .doOnNext(connection::onFrame)
+                .doFinally(_ -> connection.close())
+                .then();
+        Mono<Void> output = session.send(connection.outbound.asFlux().map(session::textMessage));
+        return Mono.zip(input, output).then();
+    }
+
+    /**
+     * 将对话变更推送给在该对话上问答过的连接
+     */
+    @EventListener
+    public void onThreadEvent(ThreadEvent event) {
+        Set<Connection> targets = event.type() == ThreadEvent.Type.DELETED
+                ? watchers.remove(event.threadId())
+                : watchers.get(event.threadId());
+        if (targets == null) {
+            return;
+        }
+        ServerFrame frame = switch (event.type()) {
+            case UPDATED -> new ServerFrame("thread", null, event.threadId(), null, null, event.thread());
+            case DELETED -> new ServerFrame("thread-deleted", null, event.threadId(), null, null, null);
+        };
+        targets.forEach(connection -> connection.send(frame));
+    }
+
+    private void watch(String threadId, Connection connection) {
+        watchers.compute(threadId, (_, connections) -> {
+            Set<Connection> result = connections != null ? connections : ConcurrentHashMap.newKeySet();
+            result.add(connection);
+            return result;
+        });
+        connection.threadIds.add(threadId);
+    }
+
+    private void unwatch(Connection connection) {
+        for (String threadId : connection.threadIds) {
+            watchers.computeIfPresent(threadId, (_, connections) -> {
+                connections.remove(connection);
+                return connections.isEmpty() ? null : connections;
+            });
+        }
+    }
+
+    /**
+     * 单条 WebSocket 连接的状态
+     */
+    private final class Connection {
+
+        private final WebSocketSession session;
+        private final Sinks.Many<String> outbound = Sinks.many().unicast()
+                .onBackpressureBuffer(Queues.<String>get(MAX_PENDING_FRAMES).get());
+        private final Map<String, StreamSubscriber> streams = new ConcurrentHashMap<>();
+        private final Set<String> threadIds = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Connection(WebSocketSession session) {
+            this.session = session;
+        }
+
+        void onFrame(String text) {
+            ClientFrame frame;
+            try {
+                frame = objectMapper.readValue(text, ClientFrame.class);
+            } catch (JsonProcessingException e) {
+                send(ServerFrame.error(null, "无法解析消息: " + e.getOriginalMessage()));
+                return;
+            }
+            if (!StringUtils.hasText(frame.streamId())) {
+                send(ServerFrame.error(null, "缺少 streamId"));
+                return;
+            }
+            switch (String.valueOf(frame.type())) {
+                case "ask" -> ask(frame);
+                case "request" -> {
+                    StreamSubscriber stream = streams.get(frame.streamId());
+                    if (stream != null && frame.n() != null && frame.n() > 0) {
+                        stream.request(frame.n());
+                    }
+                }
+                case "cancel" -> {
+                    StreamSubscriber stream = streams.remove(frame.streamId());
+                    if (stream != null) {
+                        stream.dispose();
+                        send(new ServerFrame("cancelled", frame.streamId(), stream.threadId, null, null, null));
+                    }
+                }
+                default -> send(ServerFrame.error(frame.streamId(), "未知消息类型: " + frame.type()));
+            }
+        }
+
+        private void ask(ClientFrame frame) {
+            if (streams.containsKey(frame.streamId())) {
+                send(ServerFrame.error(frame.streamId(), "streamId 已存在"));
+                return;
+            }
+            if (streams.size() >= MAX_STREAMS_PER_CONNECTION) {
+                send(ServerFrame.error(frame.streamId(), "并发问答数超过上限 " + MAX_STREAMS_PER_CONNECTION));
+                return;
+            }
+            // 与 HTTP 接口共用并发上限，过载时拒绝本路问答
+            AdmissionController.Permit permit = admissionController.tryAcquire();
+            if (permit == null) {
+                send(ServerFrame.error(frame.streamId(),
+                        "服务繁忙，请 " + admissionController.getRetryAfterSeconds() + " 秒后重试"));
+                return;
+            }
+            String threadId = StringUtils.hasText(frame.threadId()) ? frame.threadId() : UUID.randomUUID().toString();
+            BookController.BookRequest request = new BookController.BookRequest(
+                    frame.question(), frame.bookName(), threadId, frame.modelId(), frame.mode(), frame.modelIds());
+            long credit = frame.n() != null && frame.n() > 0 ? frame.n() : DEFAULT_CREDIT;
+
+            StreamSubscriber subscriber = new StreamSubscriber(this, frame.streamId(), threadId, credit);
+            streams.put(frame.streamId(), subscriber);
+            watch(threadId, this);
+            // BookService 在组装流时会同步读写 Redis，避免占用 WebSocket 的 I/O 线程
+            Flux.defer(() -> bookService.ask(request))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doFinally(_ -> permit.release())
+                    .contextWrite(context -> context.put(AdmissionController.Permit.class, permit))
+                    .subscribe(subscriber);
+        }
+
+        void send(ServerFrame frame) {
+            String json;
+            try {
+                json = objectMapper.writeValueAsString(frame);
+            } catch (JsonProcessingException e) {
+                log.error("Failed to serialize WebSocket frame", e);
+                return;
+            }
+            Sinks.EmitResult result;
+            synchronized (outbound) {
+                result = outbound.tryEmitNext(json);
+            }
+            if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+                log.warn("WebSocket client is not reading, closing connection {} with {} pending frames",
+                        session.getId(), MAX_PENDING_FRAMES);
+                close();
+                session.close(CloseStatus.SERVICE_OVERLOAD).subscribe();
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            unwatch(this);
+            streams.values().forEach(BaseSubscriber::dispose);
+            streams.clear();
+            synchronized (outbound) {
+                outbound.tryEmitComplete();
+            }
+        }
+    }
+
+    /**
+     * 单路问答的订阅者，按客户端授予的额度向上游请求事件
+     */
+    private static final class StreamSubscriber extends BaseSubscriber<BookResponseEvent> {
+
+        private final Connection connection;
+        private final String streamId;
+        private final String threadId;
+        private final long initialCredit;
+
+        StreamSubscriber(Connection connection, String streamId, String threadId, long initialCredit) {
+            this.connection = connection;
+            this.streamId = streamId;
+            this.threadId = threadId;
+            this.initialCredit = initialCredit;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(initialCredit);
+        }
+
+        @Override
+        protected void hookOnNext(BookResponseEvent event) {
+            connection.send(new ServerFrame("event", streamId, threadId,
+                    event.getStatus().name(), event.getContent(), null, event.getModelId()));
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            connection.streams.remove(streamId);
+            connection.send(new ServerFrame("complete", streamId, threadId, null, null, null));
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            log.error("WebSocket 流式处理发生异常", throwable);
+            connection.streams.remove(streamId);
+            connection.send(ServerFrame.error(streamId, "系统繁忙: " + throwable.getMessage()));
+        }
+    }
+
+    /**
+     * 客户端消息
+     */
+    record ClientFrame(String type, String streamId, String question, String bookName,
+                       String threadId, String modelId, String mode, List<String> modelIds, Long n) {
+    }
+
+    /**
+     * 服务端消息
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record ServerFrame(String type, String streamId, String threadId, String status, String content, ThreadInfo thread,
+                       String modelId) {
+
+        ServerFrame(String type, String streamId, String threadId, String status, String content, ThreadInfo thread) {
+            this(type, streamId, threadId, status, content, thread, null);
+        }
+
+        static ServerFrame error(String streamId, String message) {
+            return new ServerFrame("error", streamId, null, BookResponseEvent.Status.ERROR.name(), message, null);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package top.qiyuey.book.agent;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Checkpoint 分层存储配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.checkpoint-cache")
+public class CheckpointCacheProperties {
+
+    /**
+     * 内存热层容量（按 Checkpoint 状态估算的字节数），超出后淘汰最久未使用且已落盘的会话
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 写入 Redis 的时机；STEP、TURN 模式下写入前其他节点读不到最新一轮，多节点部署时需要按 threadId 粘性路由
+     */
+    private Durability durability = Durability.SYNC;
+
+    /**
+     * TURN 模式下未落盘数据的最长保留时间，超过后由后台任务写入 Redis
+     */
+    private Duration maxFlushDelay = Duration.ofSeconds(5);
+
+    public enum Durability {
+        /**
+         * 每次保存同步写入 Redis（与不加热层时一致）
+         */
+        SYNC,
+        /**
+         * 每个节点步骤后异步写入，写入期间的多次保存合并为一次；需要粘性路由
+         */
+        STEP,
+        /**
+         * 每轮问答结束后异步写入一次，崩溃时丢失未写入的一轮；需要粘性路由
+         */
+        TURN
+    }
+}
@@ -0,0 +1,72 @@
+package top.qiyuey.book.agent;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑 SSE 编码
+ * 不经过 Jackson，直接把事件写成预编码的 DataBuffer：
+ * <pre>
+ * id: 1
+ * data: 增量文本
+ *
+ * event: RESULT
+ * data: 原始文本
+ * </pre>
+ * PROGRESS 事件只带 id 和原始文本（SSE 默认事件类型），其他状态带事件名；多行文本按 SSE 规范拆成多个 data 行。
+ * 比较模式下所有事件都带事件名 {状态}:{modelId}，如 PROGRESS:qwen-max。
+ */
+public final class CompactSseEncoder {
+
+    private static final byte[] ID = "id: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EVENT = "event: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA = "data: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte NEWLINE = '\n';
+
+    private CompactSseEncoder() {
+    }
+
+    /**
+     * 将事件流编码为 SSE 字节流，每个事件一个 DataBuffer
+     */
+    public static Flux<DataBuffer> encode(Flux<BookResponseEvent> events, DataBufferFactory bufferFactory) {
+        return events.index()
+                .map(indexed -> encode(indexed.getT1() + 1, indexed.getT2(), bufferFactory));
+    }
+
+    static DataBuffer encode(long id, BookResponseEvent event, DataBufferFactory bufferFactory) {
+        String content = event.getContent() != null ? event.getContent() : "";
+        byte[] text = content.getBytes(StandardCharsets.UTF_8);
+        DataBuffer buffer = bufferFactory.allocateBuffer(text.length + 48);
+
+        boolean progress = event.getStatus() == BookResponseEvent.Status.PROGRESS;
+        if (progress) {
+            buffer.write(ID).write(Long.toString(id).getBytes(StandardCharsets.ISO_8859_1)).write(NEWLINE);
+        }
+        if (event.getModelId() != null) {
+            buffer.write(EVENT).write((event.getStatus().name() + ":" + event.getModelId()).getBytes(StandardCharsets.UTF_8))
+                    .write(NEWLINE);
+        } else if (!progress) {
+            buffer.write(EVENT).write(event.getStatus().name().getBytes(StandardCharsets.ISO_8859_1)).write(NEWLINE);
+        }
+
+        // 按 \n、\r\n、\r 拆分为多个 data 行
+        buffer.write(DATA);
+        int start = 0;
+        for (int i = 0; i < text.length; i++) {
+            byte b = text[i];
+            if (b == '\n' || b == '\r') {
+                buffer.write(text, start, i - start).write(NEWLINE).write(DATA);
+                if (b == '\r' && i + 1 < text.length && text[i + 1] == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        buffer.write(text, start, text.length - start).write(NEWLINE).write(NEWLINE);
+        return buffer;
+    }
+}
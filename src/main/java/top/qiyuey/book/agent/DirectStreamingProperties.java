@@ -0,0 +1,32 @@
+package top.qiyuey.book.agent;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 直连流式模式配置
+ * 列出的模式不经过 ReactAgent 图执行，直接由 ChatModel 流式输出；每轮问答结束后追加到 Agent 的会话记忆
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.direct-streaming")
+public class DirectStreamingProperties {
+
+    /**
+     * 启用直连的模式（interpret、chat），默认都走 Agent
+     */
+    private Set<String> modes = new HashSet<>();
+
+    /**
+     * 拼入提示词的最近历史消息条数（不含本轮提问）
+     */
+    private int historyMessages = 20;
+
+    public boolean isEnabledFor(String mode) {
+        return modes.contains(mode);
+    }
+}
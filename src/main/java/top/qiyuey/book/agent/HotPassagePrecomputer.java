@@ -0,0 +1,228 @@
+package top.qiyuey.book.agent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import top.qiyuey.book.config.ModelConfig;
+import top.qiyuey.book.passage.HotPassageProperties;
+import top.qiyuey.book.passage.HotPassageTracker;
+import top.qiyuey.book.passage.PassageDedupIndex;
+import top.qiyuey.book.passage.PassageDedupProperties;
+import top.qiyuey.book.usage.TokenUsageLedger;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热门原文解读预生成
+ * 低峰时段内定期取 {@link HotPassageTracker} 的 Top-K 原文，为尚无解读的原文调用模型生成解读并写入
+ * {@link PassageDedupIndex}，高峰时段的请求直接复用，不再实时调用模型。
+ * <p>
+ * 模型调用并发数受 {@link HotPassageProperties.Precompute#getConcurrency()} 限制，单次调用以流式请求发出，
+ * 超过 {@link HotPassageProperties.Precompute#getCallTimeout()} 即取消；多节点部署时由 Redis 锁保证同一时间只有一个节点在生成。
+ * 同一时段内生成失败的原文不再重试。用量以 precompute 模式记入台账。
+ */
+@Slf4j
+@Component
+public class HotPassagePrecomputer implements DisposableBean {
+
+    private static final String LOCK_KEY = "book-agent:hot-passages:precompute-lock";
+    private static final String MODE = "precompute";
+
+    private final HotPassageTracker tracker;
+    private final PassageDedupIndex dedupIndex;
+    private final PassageDedupProperties dedupProperties;
+    private final HotPassageProperties properties;
+    private final BookAgentFactory agentFactory;
+    private final ModelConfig modelConfig;
+    private final TokenUsageLedger usageLedger;
+    private final RedissonClient redissonClient;
+    private final Counter generatedCounter;
+    private final Counter failedCounter;
+
+    private final Set<String> attempted = ConcurrentHashMap.newKeySet();
+    private Disposable task;
+
+    public HotPassagePrecomputer(HotPassageTracker tracker, PassageDedupIndex dedupIndex,
+                                 PassageDedupProperties dedupProperties, HotPassageProperties properties,
+                                 BookAgentFactory agentFactory, ModelConfig modelConfig,
+                                 TokenUsageLedger usageLedger, RedissonClient redissonClient,
+                                 MeterRegistry meterRegistry) {
+        this.tracker = tracker;
+        this.dedupIndex = dedupIndex;
+        this.dedupProperties = dedupProperties;
+        this.properties = properties;
+        this.agentFactory = agentFactory;
+        this.modelConfig = modelConfig;
+        this.usageLedger = usageLedger;
+        this.redissonClient = redissonClient;
+        this.generatedCounter = Counter.builder("app.passage.hot.precomputed")
+                .description("Interpretations pre-generated for hot passages")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("app.passage.hot.precomputed")
+                .description("Interpretations pre-generated for hot passages")
+                .tag("result", "failure")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // 预生成的解读通过相似原文去重复用，去重关闭时没有意义
+        if (!properties.isEnabled() || !dedupProperties.isEnabled()) {
+            return;
+        }
+        task = Flux.interval(properties.getPrecompute().getCheckInterval(), Schedulers.boundedElastic())
+                .subscribe(_ -> {
+                    try {
+                        if (inWindow(LocalTime.now())) {
+                            precompute();
+                        } else {
+                            attempted.clear();
+                        }
+                    } catch (Exception e) {
+                        log.error("Failed to precompute hot passages", e);
+                    }
+                });
+    }
+
+    @Override
+    public void destroy() {
+        if (task != null) {
+            task.dispose();
+        }
+    }
+
+    private void precompute() {
+        List<Job> jobs = pendingJobs();
+        if (jobs.isEmpty()) {
+            return;
+        }
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        if (!lock.tryLock()) {
+            log.debug("Hot passage precompute is running on another node");
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Long generated = Flux.fromIterable(jobs)
+                    // 已由其他节点生成的跳过
+                    .filter(job -> dedupIndex.findSimilar(job.passage().passage(), job.passage().bookName(),
+                            job.modelId()).isEmpty())
+                    .flatMap(job -> generate(job)
+                                    .onErrorResume(error -> {
+                                        failedCounter.increment();
+                                        log.warn("Failed to precompute interpretation for hot passage in {} with {}",
+                                                job.passage().bookName(), job.modelId(), error);
+                                        return Mono.empty();
+                                    }),
+                            Math.max(properties.getPrecompute().getConcurrency(), 1))
+                    .count()
+                    .block();
+            log.info("Precomputed {} of {} hot passage interpretations in {}ms",
+                    generated, jobs.size(), System.currentTimeMillis() - start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Top-K 原文中本时段尚未尝试、也没有可复用解读的 (原文, 模型) 组合
+     */
+    private List<Job> pendingJobs() {
+        List<String> modelIds = properties.getPrecompute().getModelIds().isEmpty()
+                ? List.of(modelConfig.getDefaultModel())
+                : properties.getPrecompute().getModelIds();
+        return tracker.topK().stream()
+                .flatMap(passage -> modelIds.stream()
+                        .filter(modelConfig::isAvailable)
+                        .map(modelId -> new Job(passage, modelId)))
+                .filter(job -> !attempted.contains(job.id()))
+                .filter(job -> dedupIndex.findSimilar(job.passage().passage(), job.passage().bookName(),
+                        job.modelId()).isEmpty())
+                .toList();
+    }
+
+    /**
+     * 流式调用模型生成解读，超时后取消请求；用量取流中各 chunk 的最大值
+     */
+    private Mono<Boolean> generate(Job job) {
+        return Mono.defer(() -> {
+            attempted.add(job.id());
+            String passage = job.passage().passage();
+            String bookName = job.passage().bookName();
+            Prompt prompt = new Prompt(List.of(
+                    new SystemMessage(agentFactory.getSystemPrompt("interpret")),
+                    new UserMessage(BookService.buildUserMessage(passage, bookName, "interpret"))));
+            StringBuilder interpretation = new StringBuilder();
+            AtomicLong promptTokens = new AtomicLong();
+            AtomicLong completionTokens = new AtomicLong();
+            return agentFactory.createChatModel(job.modelId()).stream(prompt)
+                    .doOnNext(response -> {
+                        if (response.getMetadata() != null && response.getMetadata().getUsage() != null) {
+                            var usage = response.getMetadata().getUsage();
+                            promptTokens.accumulateAndGet(tokens(usage.getPromptTokens()), Math::max);
+                            completionTokens.accumulateAndGet(tokens(usage.getCompletionTokens()), Math::max);
+                        }
+                        if (response.getResult() != null && response.getResult().getOutput() != null
+                                && response.getResult().getOutput().getText() != null) {
+                            interpretation.append(response.getResult().getOutput().getText());
+                        }
+                    })
+                    .timeout(properties.getPrecompute().getCallTimeout())
+                    .doFinally(_ -> {
+                        // 超时或失败时模型也可能已计费，同样记入台账
+                        if (promptTokens.get() > 0 || completionTokens.get() > 0) {
+                            usageLedger.record(null, job.modelId(), MODE, bookName,
+                                    promptTokens.get(), completionTokens.get());
+                        }
+                    })
+                    .then(Mono.fromCallable(() -> {
+                        if (interpretation.isEmpty() || interpretation.toString().isBlank()) {
+                            throw new IllegalStateException("Empty interpretation");
+                        }
+                        dedupIndex.record(passage, bookName, job.modelId(), interpretation.toString());
+                        generatedCounter.increment();
+                        return true;
+                    }));
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static long tokens(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    /**
+     * 当前时间是否在低峰时段内，结束时间早于开始时间表示跨零点
+     */
+    private boolean inWindow(LocalTime now) {
+        LocalTime start = properties.getPrecompute().getWindowStart();
+        LocalTime end = properties.getPrecompute().getWindowEnd();
+        return start.isBefore(end)
+                ? !now.isBefore(start) && now.isBefore(end)
+                : !now.isBefore(start) || now.isBefore(end);
+    }
+
+    private record Job(HotPassageTracker.HotPassage passage, String modelId) {
+
+        String id() {
+            return Long.toHexString(passage.key()) + ":" + modelId;
+        }
+    }
+}
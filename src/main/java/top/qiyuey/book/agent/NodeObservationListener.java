@@ -0,0 +1,127 @@
+package top.qiyuey.book.agent;
+
+import com.alibaba.cloud.ai.graph.GraphLifecycleListener;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 为 Agent 图的每个节点执行记录观测（链路追踪 span）
+ * 节点开始时创建，结束或出错时关闭，按 threadId + 执行 ID + nodeId 关联前后两次回调。
+ * 执行 ID 由调用方放入 RunnableConfig 的 metadata（{@link #EXECUTION_ID}），同一会话上并发的多次执行互不干扰。
+ * <p>
+ * 执行被取消、超时或客户端断开时节点的结束回调不会触发：调用方在流结束时调用 {@link #finish} 关闭该执行中未结束的观测；
+ * 兜底按执行在 {@link #ABANDONED_AFTER} 内无任何回调后自动关闭，避免观测一直留在内存中。
+ */
+public class NodeObservationListener implements GraphLifecycleListener {
+
+    /**
+     * RunnableConfig metadata 中标识一次图执行的键
+     */
+    public static final String EXECUTION_ID = "book.execution-id";
+
+    /**
+     * 执行无任何节点回调超过该时长即视为已放弃（问答流 3 分钟超时）
+     */
+    static final Duration ABANDONED_AFTER = Duration.ofMinutes(10);
+
+    private static final Observation.Event UNFINISHED =
+            Observation.Event.of("book.agent.node.unfinished", "execution ended before node finished");
+
+    private final ObservationRegistry observationRegistry;
+
+    /**
+     * 执行 → 节点 → 进行中的观测
+     */
+    private final Cache<String, Map<String, Observation>> running;
+
+    public NodeObservationListener(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+        this.running = Caffeine.newBuilder()
+                .expireAfterAccess(ABANDONED_AFTER)
+                .scheduler(Scheduler.systemScheduler())
+                .<String, Map<String, Observation>>removalListener((_, nodes, cause) -> {
+                    if (cause.wasEvicted() && nodes != null) {
+                        stopAll(nodes);
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public void before(String nodeId, Map<String, Object> state, RunnableConfig config, Long curTime) {
+        String threadId = config.threadId().orElse("");
+        Observation observation = Observation.createNotStarted("book.agent.node", observationRegistry)
+                .contextualName("agent node " + nodeId)
+                .lowCardinalityKeyValue("node", nodeId)
+                .highCardinalityKeyValue("thread.id", threadId)
+                .start();
+        Observation previous = running.get(executionKey(config), _ -> new ConcurrentHashMap<>())
+                .put(nodeId, observation);
+        if (previous != null) {
+            previous.stop();
+        }
+    }
+
+    @Override
+    public void after(String nodeId, Map<String, Object> state, RunnableConfig config, Long curTime) {
+        Observation observation = remove(config, nodeId);
+        if (observation != null) {
+            observation.stop();
+        }
+    }
+
+    @Override
+    public void onError(String nodeId, Map<String, Object> state, Throwable ex, RunnableConfig config) {
+        Observation observation = remove(config, nodeId);
+        if (observation != null) {
+            observation.error(ex);
+            observation.stop();
+        }
+    }
+
+    /**
+     * 一次执行的流结束（含取消和出错）后调用，关闭其中尚未结束的节点观测
+     */
+    public void finish(RunnableConfig config) {
+        Map<String, Observation> nodes = running.asMap().remove(executionKey(config));
+        if (nodes != null) {
+            stopAll(nodes);
+        }
+    }
+
+    /**
+     * 进行中的执行数
+     */
+    long runningExecutions() {
+        running.cleanUp();
+        return running.estimatedSize();
+    }
+
+    private Observation remove(RunnableConfig config, String nodeId) {
+        Map<String, Observation> nodes = running.getIfPresent(executionKey(config));
+        return nodes == null ? null : nodes.remove(nodeId);
+    }
+
+    private static void stopAll(Map<String, Observation> nodes) {
+        for (String nodeId : nodes.keySet()) {
+            Observation observation = nodes.remove(nodeId);
+            if (observation != null) {
+                observation.event(UNFINISHED);
+                observation.stop();
+            }
+        }
+    }
+
+    private static String executionKey(RunnableConfig config) {
+        String executionId = config.metadata(EXECUTION_ID).map(String::valueOf).orElse("");
+        return config.threadId().orElse("") + ":" + executionId;
+    }
+}
@@ -0,0 +1,64 @@
+package top.qiyuey.book.agent;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import top.qiyuey.book.profiling.CheckpointSaveEvent;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * 为 Checkpoint 读写记录观测（链路追踪 span）的装饰器
+ * Agent 每个节点执行后都会保存一次 Checkpoint，用于区分图执行开销和 Redis 读写耗时；保存同时记录 JFR 事件
+ */
+public class ObservedCheckpointSaver implements BaseCheckpointSaver {
+
+    private final BaseCheckpointSaver delegate;
+    private final ObservationRegistry observationRegistry;
+
+    public ObservedCheckpointSaver(BaseCheckpointSaver delegate, ObservationRegistry observationRegistry) {
+        this.delegate = delegate;
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        return observation("list", config).observe(() -> delegate.list(config));
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        return observation("get", config).observe(() -> delegate.get(config));
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        CheckpointSaveEvent event = new CheckpointSaveEvent(config.threadId().orElse(THREAD_ID_DEFAULT));
+        event.begin();
+        try {
+            return observation("put", config).observeChecked(() -> delegate.put(config, checkpoint));
+        } finally {
+            event.commit();
+        }
+    }
+
+    @Override
+    public boolean clear(RunnableConfig config) {
+        return observation("clear", config).observe(() -> delegate.clear(config));
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        return observation("release", config).observeChecked(() -> delegate.release(config));
+    }
+
+    private Observation observation(String operation, RunnableConfig config) {
+        return Observation.createNotStarted("book.checkpoint", observationRegistry)
+                .contextualName("checkpoint " + operation)
+                .lowCardinalityKeyValue("operation", operation)
+                .highCardinalityKeyValue("thread.id", config.threadId().orElse(THREAD_ID_DEFAULT));
+    }
+}
@@ -0,0 +1,122 @@
+package top.qiyuey.book.agent;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.springframework.ai.chat.messages.UserMessage;
+import top.qiyuey.book.passage.PassageBlobStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * 持久化前将 Checkpoint 状态中的长原文（用户消息和字符串值）替换为 {@link PassageBlobStore} 引用，读取时还原
+ * 同一原文在会话的各个 Checkpoint 和其他会话中只存一份；热层中仍是完整对象，只有持久层保存引用。
+ * 引用的 blob 缺失时读取失败，不以残缺的上下文继续对话。
+ */
+public class PassageRefCheckpointSaver implements BaseCheckpointSaver {
+
+    private final BaseCheckpointSaver delegate;
+    private final PassageBlobStore blobStore;
+
+    public PassageRefCheckpointSaver(BaseCheckpointSaver delegate, PassageBlobStore blobStore) {
+        this.delegate = delegate;
+        this.blobStore = blobStore;
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        Collection<Checkpoint> checkpoints = delegate.list(config);
+        List<Checkpoint> resolved = new ArrayList<>(checkpoints.size());
+        checkpoints.forEach(checkpoint -> resolved.add(resolve(checkpoint)));
+        return resolved;
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        return delegate.get(config).map(this::resolve);
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String holder = PassageBlobStore.checkpointsHolder(config.threadId().orElse(THREAD_ID_DEFAULT));
+        return delegate.put(config, transform(checkpoint, text -> blobStore.externalize(holder, text)));
+    }
+
+    @Override
+    public boolean clear(RunnableConfig config) {
+        boolean cleared = delegate.clear(config);
+        blobStore.release(PassageBlobStore.checkpointsHolder(config.threadId().orElse(THREAD_ID_DEFAULT)));
+        return cleared;
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        Tag tag = delegate.release(config);
+        return new Tag(tag.threadId(), tag.checkpoints().stream().map(this::resolve).toList());
+    }
+
+    private Checkpoint resolve(Checkpoint checkpoint) {
+        return transform(checkpoint, text -> {
+            String resolved = blobStore.resolve(text);
+            if (PassageBlobStore.isReference(text) && PassageBlobStore.isMissing(resolved)) {
+                throw new IllegalStateException("Checkpoint " + checkpoint.getId() + " references a missing blob");
+            }
+            return resolved;
+        });
+    }
+
+    /**
+     * 替换状态中的文本，没有变化时返回原对象
+     */
+    private static Checkpoint transform(Checkpoint checkpoint, UnaryOperator<String> mapper) {
+        Map<String, Object> state = new LinkedHashMap<>(checkpoint.getState());
+        boolean changed = false;
+        for (Map.Entry<String, Object> entry : state.entrySet()) {
+            Object value = transformValue(entry.getValue(), mapper);
+            if (value != entry.getValue()) {
+                entry.setValue(value);
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return checkpoint;
+        }
+        return Checkpoint.builder()
+                .id(checkpoint.getId())
+                .state(state)
+                .nodeId(checkpoint.getNodeId())
+                .nextNodeId(checkpoint.getNextNodeId())
+                .build();
+    }
+
+    private static Object transformValue(Object value, UnaryOperator<String> mapper) {
+        return switch (value) {
+            case String text -> mapper.apply(text);
+            case UserMessage message -> {
+                String text = mapper.apply(message.getText());
+                yield text == message.getText() ? message : UserMessage.builder()
+                        .text(text)
+                        .media(message.getMedia())
+                        .metadata(message.getMetadata())
+                        .build();
+            }
+            case List<?> list -> {
+                List<Object> mapped = new ArrayList<>(list.size());
+                boolean changed = false;
+                for (Object element : list) {
+                    Object transformed = transformValue(element, mapper);
+                    changed |= transformed != element;
+                    mapped.add(transformed);
+                }
+                yield changed ? mapped : list;
+            }
+            case null, default -> value;
+        };
+    }
+}
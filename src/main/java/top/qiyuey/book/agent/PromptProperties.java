@@ -0,0 +1,27 @@
+package top.qiyuey.book.agent;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+/**
+ * 各模式的系统提示词配置
+ * 值为资源位置（classpath: 或 file:），启动时读取
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.prompts")
+public class PromptProperties {
+
+    /**
+     * 解读模式：深度解读原文，固定四个板块输出
+     */
+    private Resource interpret = new ClassPathResource("prompts/interpret.md");
+
+    /**
+     * 问答模式：简短直接的回答，提示词只有解读模式的几分之一，减少每轮的输入和输出 token
+     */
+    private Resource chat = new ClassPathResource("prompts/chat.md");
+}
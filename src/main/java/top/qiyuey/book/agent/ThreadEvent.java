@@ -0,0 +1,16 @@
+package top.qiyuey.book.agent;
+
+/**
+ * 对话元数据变更事件，由 ThreadService 发布，WebSocket 连接据此向客户端推送侧边栏更新
+ *
+ * @param type     变更类型
+ * @param threadId 会话 ID
+ * @param thread   变更后的对话信息，删除时为 null
+ */
+public record ThreadEvent(Type type, String threadId, ThreadInfo thread) {
+
+    public enum Type {
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,425 @@
+package top.qiyuey.book.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 分片存储的对话元数据
+ * 按 threadId 哈希分到 N 个 Hash，键名带 hash tag（如 book-agent:threads:v3:{7/16}），在 Redis Cluster 中分布到不同槽位，
+ * 避免所有写入集中在同一个热点键上。列表查询用一次 pipeline 读取所有分片后合并。
+ * <p>
+ * 布局（分片数）记录在 book-agent:threads:layout，迁移目标记录在 book-agent:threads:layout:target。
+ * 所有节点的读写都以 Redis 中记录的布局为准（定期刷新），而不是本地配置，因此配置不同的新旧节点并存时写入不会落到已删除的键上。
+ * 启动时若配置与布局不一致（包括从单键 book-agent:threads:v2 升级），由获得锁的节点在后台在线迁移：
+ * <ol>
+ *     <li>记录迁移目标，等待所有节点刷新布局，此后新写入只进入新分片，删除同时删除新旧布局；</li>
+ *     <li>逐条以 putIfAbsent 复制到新分片，再以比较删除（值未变才删除）移除旧数据；比较失败说明迁移期间被修改或删除，
+ *     撤销复制并在下一轮重新处理，已删除的对话不会被迁移回来；</li>
+ *     <li>记录新布局，再等待一个刷新周期后删除旧布局的键。</li>
+ * </ol>
+ * 迁移完成前读取未命中时回查旧布局，列表查询合并新旧布局。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.storage", name = "type", havingValue = "redis", matchIfMissing = true)
+public class ThreadIndex {
+
+    private static final String LEGACY_KEY = "book-agent:threads:v2";
+    private static final String SHARD_KEY_PREFIX = "book-agent:threads:v3:";
+    private static final String LAYOUT_KEY = "book-agent:threads:layout";
+    private static final String TARGET_KEY = "book-agent:threads:layout:target";
+    private static final String MIGRATION_LOCK_KEY = "book-agent:threads:migration";
+
+    private final RedissonClient redissonClient;
+    private final ThreadIndexProperties properties;
+    private final int configuredShards;
+
+    private volatile Layout layout;
+    private volatile long layoutCheckedAt;
+
+    public ThreadIndex(RedissonClient redissonClient, ThreadIndexProperties properties) {
+        this.redissonClient = redissonClient;
+        this.properties = properties;
+        this.configuredShards = Math.max(properties.getShards(), 1);
+        this.layout = refreshLayout();
+    }
+
+    public ThreadInfo get(String threadId) {
+        Layout current = layout();
+        ThreadInfo info = current.shard(threadId, this).get(threadId);
+        if (info == null) {
+            for (String source : current.sources()) {
+                info = this.<ThreadInfo>map(source).get(threadId);
+                if (info != null) {
+                    break;
+                }
+            }
+        }
+        return info;
+    }
+
+    public void put(ThreadInfo info) {
+        layout().shard(info.getId(), this).fastPut(info.getId(), info);
+    }
+
+    /**
+     * 将写入加入批处理，供批量导入使用
+     */
+    public void put(RBatch batch, ThreadInfo info) {
+        Layout current = layout();
+        batch.<String, ThreadInfo>getMap(shardKey(current.shardOf(info.getId()), current.shards()))
+                .fastPutAsync(info.getId(), info);
+    }
+
+    public void remove(String threadId) {
+        Layout current = layout();
+        current.shard(threadId, this).fastRemove(threadId);
+        // 迁移期间同时删除旧布局中的数据，避免被迁移回来
+        for (String source : current.sources()) {
+            this.<ThreadInfo>map(source).fastRemove(threadId);
+        }
+    }
+
+    /**
+     * 读取所有分片（迁移期间包括旧布局）的对话，同一对话以新分片中的为准
+     */
+    public List<ThreadInfo> all() {
+        Layout current = layout();
+        List<String> keys = new ArrayList<>(current.sources());
+        keys.addAll(current.shardKeys());
+
+        RBatch batch = redissonClient.createBatch();
+        List<RFuture<Collection<ThreadInfo>>> futures = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            futures.add(batch.<String, ThreadInfo>getMap(key).readAllValuesAsync());
+        }
+        batch.execute();
+
+        Map<String, ThreadInfo> merged = new LinkedHashMap<>();
+        for (RFuture<Collection<ThreadInfo>> future : futures) {
+            for (ThreadInfo info : future.toCompletableFuture().join()) {
+                if (info != null) {
+                    merged.put(info.getId(), info);
+                }
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * 逐个分片以 HSCAN 分批遍历对话，不一次性加载全部数据，用于导出等全量遍历。
+     * 迁移期间先遍历旧布局（跳过新分片中已有的对话）再遍历新分片，迁移只会从旧布局移入新分片，因此不会漏掉对话。
+     */
+    public Flux<ThreadInfo> scan(int batchSize) {
+        return Flux.defer(() -> {
+            Layout current = layout();
+            Flux<ThreadInfo> legacy = Flux.fromIterable(current.sources())
+                    .concatMap(key -> scan(key, batchSize))
+                    .filter(info -> !current.shard(info.getId(), this).containsKey(info.getId()));
+            Flux<ThreadInfo> latest = Flux.fromIterable(current.shardKeys())
+                    .concatMap(key -> scan(key, batchSize));
+            return legacy.concatWith(latest);
+        });
+    }
+
+    /**
+     * 按分片分组批量读取
+     */
+    public Map<String, ThreadInfo> getAll(Set<String> threadIds) {
+        Layout current = layout();
+        Map<Integer, Set<String>> byShard = new HashMap<>();
+        for (String threadId : threadIds) {
+            byShard.computeIfAbsent(current.shardOf(threadId), _ -> new HashSet<>()).add(threadId);
+        }
+        RBatch batch = redissonClient.createBatch();
+        List<RFuture<Map<String, ThreadInfo>>> futures = new ArrayList<>(byShard.size());
+        byShard.forEach((shard, ids) -> futures.add(
+                batch.<String, ThreadInfo>getMap(shardKey(shard, current.shards())).getAllAsync(ids)));
+        batch.execute();
+
+        Map<String, ThreadInfo> result = new HashMap<>();
+        futures.forEach(future -> result.putAll(future.toCompletableFuture().join()));
+        if (result.size() < threadIds.size() && !current.sources().isEmpty()) {
+            for (String threadId : threadIds) {
+                if (!result.containsKey(threadId)) {
+                    ThreadInfo info = get(threadId);
+                    if (info != null) {
+                        result.put(threadId, info);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 对话总数（迁移期间为近似值）
+     */
+    public long size() {
+        Layout current = layout();
+        List<String> keys = new ArrayList<>(current.sources());
+        keys.addAll(current.shardKeys());
+        RBatch batch = redissonClient.createBatch();
+        List<RFuture<Integer>> futures = keys.stream().map(key -> batch.getMap(key).sizeAsync()).toList();
+        batch.execute();
+        return futures.stream().mapToLong(future -> future.toCompletableFuture().join()).sum();
+    }
+
+    /**
+     * 配置与布局不一致或上次迁移未完成时在后台迁移，只有获得锁的节点执行
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateIfNeeded() {
+        if (layout.sources().isEmpty() && layout.shards() == configuredShards) {
+            return;
+        }
+        Mono.fromRunnable(this::migrate)
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, error -> log.error("Thread index migration failed", error));
+    }
+
+    /**
+     * 迁移到配置的分片数；若已有未完成的迁移则继续该迁移
+     */
+    void migrate() {
+        RLock lock = redissonClient.getLock(MIGRATION_LOCK_KEY);
+        if (!lock.tryLock()) {
+            log.info("Thread index migration is running on another node");
+            return;
+        }
+        try {
+            String target = target().get();
+            if (target == null) {
+                String recorded = layoutBucket().get();
+                if (String.valueOf(configuredShards).equals(recorded)) {
+                    layout = refreshLayout();
+                    return;
+                }
+                target().set(String.valueOf(configuredShards));
+                layout = refreshLayout();
+                // 等所有节点都把写入切到新分片后再复制，之后旧布局只会被删除、不会再被写入
+                awaitLayoutRefresh();
+            } else {
+                layout = refreshLayout();
+            }
+
+            Layout current = layout;
+            long start = System.currentTimeMillis();
+            long moved = 0;
+            for (String source : current.sources()) {
+                moved += migrate(source, current.shards());
+            }
+            RBatch batch = redissonClient.createBatch();
+            batch.<String>getBucket(LAYOUT_KEY, StringCodec.INSTANCE).setAsync(String.valueOf(current.shards()));
+            batch.getBucket(TARGET_KEY, StringCodec.INSTANCE).deleteAsync();
+            batch.execute();
+            layout = refreshLayout();
+            // 其他节点可能仍在回查旧布局，等它们刷新后再删除
+            awaitLayoutRefresh();
+            if (!current.sources().isEmpty()) {
+                redissonClient.getKeys().delete(current.sources().toArray(String[]::new));
+            }
+            log.info("Migrated {} threads to {} shards in {}ms", moved, current.shards(), System.currentTimeMillis() - start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long migrate(String source, int targetShards) {
+        RMap<String, ThreadInfo> sourceMap = map(source);
+        long moved = 0;
+        while (true) {
+            Set<String> batchKeys = new HashSet<>();
+            for (String key : sourceMap.keySet(properties.getMigrationBatchSize())) {
+                batchKeys.add(key);
+                if (batchKeys.size() >= properties.getMigrationBatchSize()) {
+                    break;
+                }
+            }
+            if (batchKeys.isEmpty()) {
+                return moved;
+            }
+            moved += move(source, sourceMap.getAll(batchKeys), targetShards);
+        }
+    }
+
+    /**
+     * 把读出的一批对话移到新分片，返回移走的条数。
+     * 先 putIfAbsent 复制（不覆盖新写入），再仅在旧值未变时删除旧数据；删除失败说明读出后对话被删除或修改，
+     * 撤销本次复制（同样仅在值未变时），被删除的不会复活，被修改的留在旧布局等下一轮按新值处理。
+     */
+    long move(String source, Map<String, ThreadInfo> entries, int targetShards) {
+        Map<String, ThreadInfo> present = new LinkedHashMap<>();
+        entries.forEach((threadId, info) -> {
+            if (info != null) {
+                present.put(threadId, info);
+            }
+        });
+        if (present.isEmpty()) {
+            return 0;
+        }
+
+        RBatch copyBatch = redissonClient.createBatch();
+        Map<String, RFuture<Boolean>> copied = new HashMap<>();
+        present.forEach((threadId, info) -> copied.put(threadId, targetShard(copyBatch, threadId, targetShards)
+                .fastPutIfAbsentAsync(threadId, info)));
+        copyBatch.execute();
+
+        RBatch removeBatch = redissonClient.createBatch();
+        Map<String, RFuture<Boolean>> removed = new HashMap<>();
+        present.forEach((threadId, info) -> removed.put(threadId,
+                removeBatch.<String, ThreadInfo>getMap(source).removeAsync(threadId, info)));
+        removeBatch.execute();
+
+        RBatch undoBatch = redissonClient.createBatch();
+        long moved = 0;
+        boolean undo = false;
+        for (Map.Entry<String, ThreadInfo> entry : present.entrySet()) {
+            String threadId = entry.getKey();
+            if (removed.get(threadId).toCompletableFuture().join()) {
+                moved++;
+            } else if (copied.get(threadId).toCompletableFuture().join()) {
+                targetShard(undoBatch, threadId, targetShards).removeAsync(threadId, entry.getValue());
+                undo = true;
+            }
+        }
+        if (undo) {
+            undoBatch.execute();
+        }
+        return moved;
+    }
+
+    private RMapAsync<String, ThreadInfo> targetShard(RBatch batch, String threadId, int targetShards) {
+        return batch.getMap(shardKey(Math.floorMod(threadId.hashCode(), targetShards), targetShards));
+    }
+
+    /**
+     * 当前布局，超过刷新间隔时从 Redis 重新读取，以便跟随其他节点发起或完成的迁移
+     */
+    private Layout layout() {
+        if (System.currentTimeMillis() - layoutCheckedAt > properties.getLayoutCheckInterval().toMillis()) {
+            layout = refreshLayout();
+        }
+        return layout;
+    }
+
+    /**
+     * 根据 Redis 中记录的布局和迁移目标计算读写使用的布局
+     */
+    private Layout refreshLayout() {
+        RBatch batch = redissonClient.createBatch();
+        RFuture<String> recordedFuture = batch.<String>getBucket(LAYOUT_KEY, StringCodec.INSTANCE).getAsync();
+        RFuture<String> targetFuture = batch.<String>getBucket(TARGET_KEY, StringCodec.INSTANCE).getAsync();
+        RFuture<Long> legacyFuture = batch.getKeys().countExistsAsync(LEGACY_KEY);
+        batch.execute();
+        String recorded = recordedFuture.toCompletableFuture().join();
+        String target = targetFuture.toCompletableFuture().join();
+        boolean legacy = legacyFuture.toCompletableFuture().join() > 0;
+        layoutCheckedAt = System.currentTimeMillis();
+
+        if (target != null) {
+            // 迁移中：写入新分片，回查旧布局
+            List<String> sources = recorded != null ? shardKeys(Integer.parseInt(recorded)) : legacy ? List.of(LEGACY_KEY) : List.of();
+            return new Layout(Integer.parseInt(target), sources);
+        }
+        if (recorded != null) {
+            int shards = Integer.parseInt(recorded);
+            if (shards != configuredShards) {
+                log.debug("Thread index layout has {} shards while {} are configured, following the layout", shards, configuredShards);
+            }
+            return new Layout(shards, List.of());
+        }
+        if (legacy) {
+            // 从单键升级：新写入进入配置的分片，回查旧键
+            return new Layout(configuredShards, List.of(LEGACY_KEY));
+        }
+        // 全新部署，直接记录布局
+        layoutBucket().setIfAbsent(String.valueOf(configuredShards));
+        return new Layout(Integer.parseInt(layoutBucket().get()), List.of());
+    }
+
+    private void awaitLayoutRefresh() {
+        try {
+            Thread.sleep(properties.getLayoutCheckInterval().toMillis() * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for nodes to refresh the thread index layout", e);
+        }
+    }
+
+    private Flux<ThreadInfo> scan(String key, int batchSize) {
+        return Flux.fromIterable(this.<ThreadInfo>map(key).values(batchSize)).filter(Objects::nonNull);
+    }
+
+    private static List<String> shardKeys(int shardCount) {
+        List<String> keys = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            keys.add(shardKey(i, shardCount));
+        }
+        return keys;
+    }
+
+    /**
+     * 分片数不同的布局使用不同的键，{@code {n/N}} 为 hash tag
+     */
+    private static String shardKey(int shard, int shardCount) {
+        return SHARD_KEY_PREFIX + "{" + shard + "/" + shardCount + "}";
+    }
+
+    private RBucket<String> layoutBucket() {
+        return redissonClient.getBucket(LAYOUT_KEY, StringCodec.INSTANCE);
+    }
+
+    private RBucket<String> target() {
+        return redissonClient.getBucket(TARGET_KEY, StringCodec.INSTANCE);
+    }
+
+    private <V> RMap<String, V> map(String key) {
+        return redissonClient.getMap(key);
+    }
+
+    /**
+     * 读写使用的布局
+     *
+     * @param shards  写入使用的分片数
+     * @param sources 迁移期间需要回查的旧布局键，为空表示不在迁移中
+     */
+    private record Layout(int shards, List<String> sources) {
+
+        int shardOf(String threadId) {
+            return Math.floorMod(threadId.hashCode(), shards);
+        }
+
+        RMap<String, ThreadInfo> shard(String threadId, ThreadIndex index) {
+            return index.map(shardKey(shardOf(threadId), shards));
+        }
+
+        List<String> shardKeys() {
+            return ThreadIndex.shardKeys(shards);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package top.qiyuey.book.agent;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 对话元数据分片配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.thread-index")
+public class ThreadIndexProperties {
+
+    /**
+     * 分片数；修改后启动时会在线迁移到新的分片布局。
+     * 各节点按 Redis 中记录的布局读写，但仍使用旧配置的节点重启时会再次发起迁移，滚动发布期间不要重启旧版本节点
+     */
+    private int shards = 16;
+
+    /**
+     * 迁移时每批搬移的对话数
+     */
+    private int migrationBatchSize = 500;
+
+    /**
+     * 各节点重新读取 Redis 中布局的间隔；迁移开始复制前和删除旧布局前各等待两个间隔，让所有节点切换布局
+     */
+    private Duration layoutCheckInterval = Duration.ofSeconds(5);
+}
@@ -3,72 +3,210 @@ package top.qiyuey.book.agent;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RMap;
+import org.redisson.api.RSet;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import top.qiyuey.book.config.ModelConfig;
+import top.qiyuey.book.passage.PassageBlobStore;
+import top.qiyuey.book.profiling.TitleGenerationEvent;
+import top.qiyuey.book.search.HistorySearchIndex;
+import top.qiyuey.book.store.ThreadStore;
+import top.qiyuey.book.usage.TokenUsageLedger;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class ThreadService {
 
-    private static final String THREAD_MAP_KEY = "book-agent:threads:v2";
+    /**
+     * 检索结果最多参与排序和分页的条数
+     */
+    private static final int MAX_SEARCH_RESULTS = 200;
+
+    /**
+     * 对话在比较模式下用过的模型（SET），删除对话时据此清理各模型的 Agent 会话
+     */
+    private static final String COMPARE_SESSIONS_KEY_PREFIX = "book-agent:threads:compare-models:";
+
+    private final ThreadStore threadStore;
+    private final PassageBlobStore blobStore;
+    private final HistorySearchIndex searchIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TokenUsageLedger usageLedger;
+    private final ModelConfig modelConfig;
+    private final ObservationRegistry observationRegistry;
+    private final BookAgentFactory agentFactory;
+    private final TieredCheckpointSaver checkpointSaver;
     private final RedissonClient redissonClient;
-    private final ChatClient chatClient;
 
-    public ThreadService(RedissonClient redissonClient, BookAgentFactory agentFactory, ModelConfig modelConfig) {
+    public ThreadService(ThreadStore threadStore, BookAgentFactory agentFactory, ModelConfig modelConfig,
+                         HistorySearchIndex searchIndex, ApplicationEventPublisher eventPublisher,
+                         TokenUsageLedger usageLedger, ObservationRegistry observationRegistry,
+                         PassageBlobStore blobStore, TieredCheckpointSaver checkpointSaver,
+                         RedissonClient redissonClient) {
+        this.threadStore = threadStore;
+        this.blobStore = blobStore;
+        this.observationRegistry = observationRegistry;
+        this.searchIndex = searchIndex;
+        this.eventPublisher = eventPublisher;
+        this.usageLedger = usageLedger;
+        this.modelConfig = modelConfig;
+        this.agentFactory = agentFactory;
+        this.checkpointSaver = checkpointSaver;
         this.redissonClient = redissonClient;
-        ChatModel chatModel = agentFactory.createChatModel(modelConfig.getDefaultModel());
-        this.chatClient = ChatClient.create(chatModel);
     }
 
     public List<ThreadInfo> getAllThreads() {
-        RMap<String, ThreadInfo> map = redissonClient.getMap(THREAD_MAP_KEY);
-        List<ThreadInfo> list = new ArrayList<>(map.values());
-        list.sort(Comparator.comparingLong(ThreadInfo::getUpdatedAt).reversed());
-        log.info("Loaded {} threads from history", list.size());
-        return list;
+        return observation("list", null).observe(() -> {
+            List<ThreadInfo> list = threadStore.all();
+            list.sort(Comparator.comparingLong(ThreadInfo::getUpdatedAt).reversed());
+            log.info("Loaded {} threads from history", list.size());
+            return list;
+        });
     }
 
     public void updateThread(String threadId, String title, String modelId, String bookName) {
-        RMap<String, ThreadInfo> map = redissonClient.getMap(THREAD_MAP_KEY);
-        ThreadInfo info = map.get(threadId);
+        observation("update", threadId).observe(() -> doUpdateThread(threadId, title, modelId, bookName));
+    }
+
+    private void doUpdateThread(String threadId, String title, String modelId, String bookName) {
+        ThreadInfo info = threadStore.get(threadId);
+        boolean metadataChanged;
         if (info == null) {
             info = new ThreadInfo(threadId, title != null ? title : "New Chat", System.currentTimeMillis(), modelId, bookName);
+            metadataChanged = true;
             log.info("Created new thread: {}", threadId);
         } else {
+             metadataChanged = (title != null && !title.equals(info.getTitle()))
+                     || (bookName != null && !bookName.equals(info.getBookName()));
              if (title != null) info.setTitle(title);
              info.setUpdatedAt(System.currentTimeMillis());
              if (modelId != null) info.setModelId(modelId);
              if (bookName != null) info.setBookName(bookName);
              log.info("Updated thread: {}", threadId);
         }
-        map.put(threadId, info);
+        threadStore.put(info);
+        if (metadataChanged) {
+            searchIndex.indexMetadata(threadId, info.getTitle(), info.getBookName());
+        }
+        eventPublisher.publishEvent(new ThreadEvent(ThreadEvent.Type.UPDATED, threadId, info));
     }
     
+    /**
+     * 删除对话：元数据、消息、Agent 会话的 Checkpoint（含比较模式下各模型的会话）及其引用的 blob、会话累计用量
+     */
     public void deleteThread(String threadId) {
-        redissonClient.getMap(THREAD_MAP_KEY).remove(threadId);
-        log.info("Deleted thread: {}", threadId);
+        observation("delete", threadId).observe(() -> {
+            threadStore.remove(threadId);
+            blobStore.release(PassageBlobStore.messagesHolder(threadId));
+            RSet<String> compareModels = compareModels(threadId);
+            checkpointSaver.clear(RunnableConfig.builder().threadId(threadId).build());
+            for (String modelId : compareModels.readAll()) {
+                checkpointSaver.clear(RunnableConfig.builder().threadId(compareSessionId(threadId, modelId)).build());
+            }
+            compareModels.delete();
+            usageLedger.deleteThread(threadId);
+            searchIndex.remove(threadId);
+            eventPublisher.publishEvent(new ThreadEvent(ThreadEvent.Type.DELETED, threadId, null));
+            log.info("Deleted thread: {}", threadId);
+        });
+    }
+
+    /**
+     * 全文检索对话历史（标题、书名、消息内容），按相关度排序并分页
+     */
+    public SearchPage searchThreads(String query, int page, int size) {
+        return observation("search", null).observe(() -> doSearchThreads(query, page, size));
+    }
+
+    private SearchPage doSearchThreads(String query, int page, int size) {
+        List<HistorySearchIndex.Hit> hits = searchIndex.search(query, threadStore.size(), MAX_SEARCH_RESULTS);
+
+        // 先过滤掉已删除的对话（索引删除是异步的，可能残留），总数和分页都基于仍存在的对话
+        Map<String, ThreadInfo> threads = threadStore.getAll(hits.stream()
+                .map(HistorySearchIndex.Hit::threadId)
+                .collect(Collectors.toSet()));
+        List<SearchResult> existing = new ArrayList<>(threads.size());
+        for (HistorySearchIndex.Hit hit : hits) {
+            ThreadInfo info = threads.get(hit.threadId());
+            if (info != null) {
+                existing.add(new SearchResult(info, hit.score()));
+            } else {
+                searchIndex.remove(hit.threadId());
+            }
+        }
+
+        int from = Math.min(page * size, existing.size());
+        int to = Math.min(from + size, existing.size());
+        return new SearchPage(page, size, existing.size(), List.copyOf(existing.subList(from, to)));
+    }
+
+    /**
+     * 索引尚未完整构建（首次启用或上次重建失败）时，在后台为已有历史回填索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildSearchIndexIfMissing() {
+        if (searchIndex.isBuilt()) {
+            return;
+        }
+        log.info("Search index not found, rebuilding for existing threads");
+        searchIndex.rebuild(() -> threadStore.all().stream()
+                .filter(Objects::nonNull)
+                .map(info -> new HistorySearchIndex.Document(info.getId(), info.getTitle(), info.getBookName(),
+                        () -> getMessages(info.getId()).stream().map(ChatMessage::getContent).toList()))
+                .iterator());
     }
 
     public void generateTitleAsync(String threadId, String question, String modelId) {
-        RMap<String, ThreadInfo> map = redissonClient.getMap(THREAD_MAP_KEY);
-        ThreadInfo info = map.get(threadId);
+        ThreadInfo info = observation("get", threadId).observe(() -> threadStore.get(threadId));
         
         if (info == null || info.getTitle() == null || "New Chat".equals(info.getTitle())) {
-             Mono.fromCallable(() -> {
+             // 在后台线程执行，需显式关联到当前问答的 span
+             Observation titleObservation = observation("generate-title", threadId)
+                     .parentObservation(observationRegistry.getCurrentObservation());
+             Mono.fromCallable(() -> titleObservation.observe(() -> {
                  String prompt = "请为以下内容生成一个极简标题（10字以内），只返回标题文字：\n" + question;
-                 return chatClient.prompt(prompt).call().content();
-             })
+                 TitleGenerationEvent event = new TitleGenerationEvent(threadId);
+                 event.begin();
+                 ChatResponse response;
+                 try {
+                     // 每次按当前默认模型创建，默认模型热更新后立即生效
+                     response = ChatClient.create(agentFactory.createChatModel(modelConfig.getDefaultModel()),
+                             observationRegistry).prompt(prompt).call().chatResponse();
+                 } finally {
+                     event.commit();
+                 }
+                 if (response == null || response.getResult() == null) {
+                     return null;
+                 }
+                 Usage usage = response.getMetadata().getUsage();
+                 if (usage != null) {
+                     usageLedger.record(threadId, modelConfig.getDefaultModel(), "title", null,
+                             usage.getPromptTokens() != null ? usage.getPromptTokens() : 0,
+                             usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0);
+                 }
+                 return response.getResult().getOutput().getText();
+             }))
              .subscribeOn(Schedulers.boundedElastic())
              .subscribe(title -> {
                  if (title != null && !title.isBlank()) {
@@ -78,17 +216,57 @@ public class ThreadService {
         }
     }
 
+    /**
+     * 比较模式下每个模型使用的 Agent 会话 ID
+     */
+    public static String compareSessionId(String threadId, String modelId) {
+        return threadId + ":" + modelId;
+    }
+
+    /**
+     * 记录对话在比较模式下用过的模型，删除对话时清理对应的 Agent 会话
+     */
+    public void registerCompareModels(String threadId, Collection<String> modelIds) {
+        compareModels(threadId).addAll(modelIds);
+    }
+
+    private RSet<String> compareModels(String threadId) {
+        return redissonClient.getSet(COMPARE_SESSIONS_KEY_PREFIX + threadId, StringCodec.INSTANCE);
+    }
+
     public void addMessage(String threadId, String role, String content) {
-        String key = "book-agent:messages:" + threadId;
-        List<ChatMessage> messages = redissonClient.getList(key);
-        messages.add(new ChatMessage(role, content, System.currentTimeMillis()));
-        // Also update thread timestamp
-        updateThread(threadId, null, null, null);
+        observation("add-message", threadId).observe(() -> {
+            // 长原文只保存引用，同一原文在所有对话中只存一份
+            String stored = blobStore.externalize(PassageBlobStore.messagesHolder(threadId), content);
+            threadStore.addMessage(threadId, new ChatMessage(role, stored, System.currentTimeMillis()));
+            searchIndex.indexContent(threadId, content);
+            // Also update thread timestamp
+            updateThread(threadId, null, null, null);
+        });
     }
 
     public List<ChatMessage> getMessages(String threadId) {
-        String key = "book-agent:messages:" + threadId;
-        return new ArrayList<>(redissonClient.getList(key));
+        return observation("get-messages", threadId).observe(() -> {
+            List<ChatMessage> messages = threadStore.getMessages(threadId);
+            List<String> contents = blobStore.resolveAll(messages.stream().map(ChatMessage::getContent).toList());
+            for (int i = 0; i < messages.size(); i++) {
+                messages.get(i).setContent(contents.get(i));
+            }
+            return messages;
+        });
+    }
+
+    /**
+     * 对话存储操作的观测（链路追踪 span），耗时主要来自存储调用
+     */
+    private Observation observation(String operation, String threadId) {
+        Observation observation = Observation.createNotStarted("book.thread", observationRegistry)
+                .contextualName("thread " + operation)
+                .lowCardinalityKeyValue("operation", operation);
+        if (threadId != null) {
+            observation.highCardinalityKeyValue("thread.id", threadId);
+        }
+        return observation;
     }
 
     @Data
@@ -99,4 +277,10 @@ public class ThreadService {
         private String content;
         private long timestamp;
     }
+
+    public record SearchResult(ThreadInfo thread, double score) {
+    }
+
+    public record SearchPage(int page, int size, int total, List<SearchResult> results) {
+    }
 }
@@ -0,0 +1,430 @@
+package top.qiyuey.book.agent;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 分层 Checkpoint 存储
+ * 内存热层按会话缓存 Checkpoint 列表（LRU，按估算字节数限制容量），Redis 作为持久层。
+ * <ul>
+ *     <li>读取优先命中热层，未命中时从 Redis 加载整个会话的列表</li>
+ *     <li>写入先更新热层，再按 {@link CheckpointCacheProperties.Durability} 同步或异步写入 Redis；
+ *     异步写入按时间顺序写出上次写入后新增的所有 Checkpoint，同一会话写入期间的多次保存合并为一次</li>
+ *     <li>按 id 替换已有 Checkpoint 的保存总是同步写入：先写出之前的新增，再替换 Redis 中的对应项</li>
+ *     <li>写入 Redis 后通过 Topic 通知其他节点淘汰该会话的热层数据</li>
+ * </ul>
+ * 未落盘的会话不会被淘汰；停机时同步写出所有未落盘数据。
+ * 异步模式（STEP、TURN）下，写入 Redis 前其他节点和崩溃重启后只能读到上一次写入的状态，需要按 threadId 粘性路由。
+ */
+@Slf4j
+public class TieredCheckpointSaver implements BaseCheckpointSaver, DisposableBean {
+
+    private static final String TOPIC_KEY = "book-agent:checkpoints:invalidate";
+    private static final String SEPARATOR = "|";
+
+    private final BaseCheckpointSaver delegate;
+    private final CheckpointCacheProperties properties;
+    private final RTopic topic;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 按访问顺序排列的热层，所有访问都在 this 上同步
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalWeight;
+    private final Disposable flushTask;
+
+    public TieredCheckpointSaver(BaseCheckpointSaver delegate, CheckpointCacheProperties properties,
+                                 RedissonClient redissonClient) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.topic = redissonClient.getTopic(TOPIC_KEY, StringCodec.INSTANCE);
+        topic.addListener(String.class, (_, message) -> {
+            int separator = message.indexOf(SEPARATOR);
+            if (separator > 0 && !message.substring(0, separator).equals(nodeId)) {
+                invalidate(message.substring(separator + 1));
+            }
+        });
+        this.flushTask = properties.getDurability() == CheckpointCacheProperties.Durability.TURN
+                ? Flux.interval(properties.getMaxFlushDelay(), Schedulers.boundedElastic())
+                        .subscribe(_ -> flushStale())
+                : null;
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        Entry entry = load(config);
+        synchronized (entry) {
+            return List.copyOf(entry.checkpoints);
+        }
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        Entry entry = load(config);
+        synchronized (entry) {
+            if (config.checkPointId().isPresent()) {
+                String id = config.checkPointId().get();
+                return entry.checkpoints.stream().filter(c -> c.getId().equals(id)).findFirst();
+            }
+            return Optional.ofNullable(entry.checkpoints.peekFirst());
+        }
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        if (config.checkPointId().isPresent()) {
+            replace(load(config), config.checkPointId().get(), checkpoint);
+            return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+        }
+
+        long weightDelta = weigh(List.of(checkpoint));
+        Entry entry;
+        while (true) {
+            entry = load(config);
+            synchronized (this) {
+                // 加载后该会话可能已被淘汰或失效，写入不在热层的对象会丢失，重新加载；
+                // 在热层锁内标记为未落盘，之后不会再被淘汰
+                if (entries.get(entry.threadId) != entry) {
+                    continue;
+                }
+                synchronized (entry) {
+                    entry.checkpoints.addFirst(checkpoint);
+                    entry.pending++;
+                    entry.weight += weightDelta;
+                    if (entry.dirtySince == 0) {
+                        entry.dirtySince = System.currentTimeMillis();
+                    }
+                }
+                totalWeight += weightDelta;
+                break;
+            }
+        }
+        evictIfNeeded(entry);
+
+        switch (properties.getDurability()) {
+            case SYNC -> flush(entry);
+            case STEP -> flushAsync(entry);
+            case TURN -> { }
+        }
+        return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+    }
+
+    /**
+     * 按 id 替换：持有写入锁先写出之前的新增，保证被替换项已在 Redis 中，再同步替换
+     */
+    private void replace(Entry entry, String id, Checkpoint checkpoint) throws Exception {
+        synchronized (entry.flushLock) {
+            flushPending(entry);
+            long weightDelta;
+            boolean persisted;
+            synchronized (entry) {
+                int index = indexOf(entry.checkpoints, id);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Checkpoint with id " + id + " not found");
+                }
+                long before = entry.weight;
+                entry.checkpoints.set(index, checkpoint);
+                entry.weight = weigh(entry.checkpoints);
+                weightDelta = entry.weight - before;
+                // 刚刚并发新增、尚未写出的项随下次写入追加即可
+                persisted = index >= entry.pending;
+            }
+            addWeight(entry, weightDelta);
+            if (persisted) {
+                delegate.put(RunnableConfig.builder().threadId(entry.threadId).checkPointId(id).build(), checkpoint);
+                publishInvalidation(entry.threadId);
+            }
+        }
+    }
+
+    @Override
+    public boolean clear(RunnableConfig config) {
+        String threadId = threadId(config);
+        remove(threadId);
+        boolean cleared = delegate.clear(config);
+        publishInvalidation(threadId);
+        return cleared;
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        Entry entry = entry(threadId(config));
+        if (entry != null) {
+            flush(entry);
+        }
+        remove(threadId(config));
+        return delegate.release(config);
+    }
+
+    /**
+     * 一轮问答结束后调用：TURN 模式下异步写出该会话的未落盘数据
+     */
+    public void flushThread(String threadId) {
+        Entry entry = entry(threadId);
+        if (entry != null) {
+            flushAsync(entry);
+        }
+    }
+
+    /**
+     * 同步写出该会话的未落盘数据，用于导出等需要读取 Redis 中最新状态的场景
+     */
+    public void flushThreadNow(String threadId) {
+        Entry entry = entry(threadId);
+        if (entry != null) {
+            flush(entry);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (flushTask != null) {
+            flushTask.dispose();
+        }
+        List<Entry> dirty;
+        synchronized (this) {
+            dirty = entries.values().stream().filter(Entry::isDirty).toList();
+        }
+        for (Entry entry : dirty) {
+            try {
+                flush(entry);
+            } catch (Exception e) {
+                log.error("Failed to flush checkpoints of thread {} on shutdown", entry.threadId, e);
+            }
+        }
+    }
+
+    /**
+     * 取热层中的会话，未命中时从 Redis 加载
+     */
+    private Entry load(RunnableConfig config) {
+        String threadId = threadId(config);
+        Entry entry = entry(threadId);
+        if (entry != null) {
+            return entry;
+        }
+        Entry loaded = new Entry(threadId);
+        loaded.checkpoints.addAll(delegate.list(RunnableConfig.builder().threadId(threadId).build()));
+        loaded.weight = weigh(loaded.checkpoints);
+        synchronized (this) {
+            Entry existing = entries.putIfAbsent(threadId, loaded);
+            if (existing != null) {
+                return existing;
+            }
+            totalWeight += loaded.weight;
+        }
+        evictIfNeeded(loaded);
+        return loaded;
+    }
+
+    private void flushAsync(Entry entry) {
+        Mono.fromRunnable(() -> flush(entry))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, error -> log.error("Failed to flush checkpoints of thread {}", entry.threadId, error));
+    }
+
+    /**
+     * 将会话上次写入后新增的 Checkpoint 按时间顺序写入 Redis；同一会话同时只有一个写入，写入期间的新保存在结束后合并写出
+     */
+    private void flush(Entry entry) {
+        synchronized (entry.flushLock) {
+            flushPending(entry);
+        }
+    }
+
+    /**
+     * 调用方需持有 entry.flushLock
+     */
+    private void flushPending(Entry entry) {
+        List<Checkpoint> unpersisted;
+        synchronized (entry) {
+            if (entry.pending == 0) {
+                return;
+            }
+            unpersisted = new ArrayList<>(entry.checkpoints.subList(0, entry.pending));
+        }
+
+        RunnableConfig config = RunnableConfig.builder().threadId(entry.threadId).build();
+        int persisted = 0;
+        try {
+            for (Checkpoint checkpoint : unpersisted.reversed()) {
+                delegate.put(config, checkpoint);
+                persisted++;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to persist checkpoints of thread " + entry.threadId, e);
+        } finally {
+            if (persisted > 0) {
+                synchronized (entry) {
+                    entry.pending -= persisted;
+                    entry.dirtySince = entry.pending > 0 ? System.currentTimeMillis() : 0;
+                }
+                publishInvalidation(entry.threadId);
+            }
+        }
+    }
+
+    private void flushStale() {
+        long deadline = System.currentTimeMillis() - properties.getMaxFlushDelay().toMillis();
+        List<Entry> stale;
+        synchronized (this) {
+            stale = entries.values().stream()
+                    .filter(e -> e.isDirty() && e.dirtySince <= deadline)
+                    .toList();
+        }
+        stale.forEach(this::flushAsync);
+    }
+
+    /**
+     * 外部直接改写了 Redis 中的会话数据（如批量导入），淘汰所有节点上该会话的热层副本
+     */
+    public void evict(String threadId) {
+        invalidate(threadId);
+        publishInvalidation(threadId);
+    }
+
+    private void publishInvalidation(String threadId) {
+        topic.publishAsync(nodeId + SEPARATOR + threadId);
+    }
+
+    /**
+     * 其他节点写入了该会话，淘汰本地副本（有未落盘数据时保留，以本节点的写入为准）
+     */
+    private void invalidate(String threadId) {
+        synchronized (this) {
+            Entry entry = entries.get(threadId);
+            if (entry != null && !entry.isDirty()) {
+                entries.remove(threadId);
+                totalWeight -= entry.weight;
+            }
+        }
+    }
+
+    private synchronized Entry entry(String threadId) {
+        return entries.get(threadId);
+    }
+
+    private synchronized void remove(String threadId) {
+        Entry removed = entries.remove(threadId);
+        if (removed != null) {
+            totalWeight -= removed.weight;
+        }
+    }
+
+    private void addWeight(Entry entry, long delta) {
+        synchronized (this) {
+            totalWeight += delta;
+        }
+        evictIfNeeded(entry);
+    }
+
+    /**
+     * 淘汰最久未使用且已落盘的会话，不淘汰正在使用的会话（否则随后的写入落在已不在热层的对象上）
+     */
+    private synchronized void evictIfNeeded(Entry inUse) {
+        long maxWeight = properties.getMaxSize().toBytes();
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalWeight > maxWeight && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest != inUse && !eldest.isDirty()) {
+                it.remove();
+                totalWeight -= eldest.weight;
+            }
+        }
+    }
+
+    private static int indexOf(List<Checkpoint> checkpoints, String id) {
+        int index = 0;
+        for (Checkpoint checkpoint : checkpoints) {
+            if (checkpoint.getId().equals(id)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+
+    private static String threadId(RunnableConfig config) {
+        return config.threadId().orElse(THREAD_ID_DEFAULT);
+    }
+
+    /**
+     * 估算 Checkpoint 列表占用的内存，只用于热层容量控制
+     */
+    static long weigh(Collection<Checkpoint> checkpoints) {
+        long weight = 0;
+        for (Checkpoint checkpoint : checkpoints) {
+            weight += 64 + estimate(checkpoint.getState(), 0);
+        }
+        return weight;
+    }
+
+    private static long estimate(Object value, int depth) {
+        return switch (value) {
+            case null -> 8;
+            case CharSequence s -> 40 + 2L * s.length();
+            case Message m -> 64 + (m.getText() != null ? 2L * m.getText().length() : 0);
+            case Map<?, ?> map when depth < 3 -> {
+                long size = 48;
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    size += 32 + estimate(e.getKey(), depth + 1) + estimate(e.getValue(), depth + 1);
+                }
+                yield size;
+            }
+            case Collection<?> collection when depth < 3 -> {
+                long size = 32;
+                for (Object element : collection) {
+                    size += 8 + estimate(element, depth + 1);
+                }
+                yield size;
+            }
+            default -> 64;
+        };
+    }
+
+    /**
+     * 热层中的单个会话
+     */
+    private static final class Entry {
+
+        private final String threadId;
+        private final LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+        private final Object flushLock = new Object();
+        private long weight;
+        /**
+         * 列表头部尚未写入 Redis 的 Checkpoint 数
+         */
+        private int pending;
+        private long dirtySince;
+
+        Entry(String threadId) {
+            this.threadId = threadId;
+        }
+
+        synchronized boolean isDirty() {
+            return pending > 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package top.qiyuey.book.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * AOT 缓存训练运行
+ * 配合 {@code -XX:AOTCacheOutput} 使用：应用就绪后对自身发起一轮完整的请求（模型列表、问答、历史记录），
+ * 让请求链路上的类都被加载并记录进缓存，然后退出进程。
+ * 需与 stub profile 一起启用，避免训练时调用真实模型。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.aot-training", name = "enabled", havingValue = "true")
+public class AotTrainingRunner implements ApplicationRunner {
+
+    private static final String TRAINING_THREAD_ID = "aot-training";
+    private static final Duration TIMEOUT = Duration.ofMinutes(1);
+
+    private final ConfigurableApplicationContext context;
+    private final ModelConfig modelConfig;
+
+    public AotTrainingRunner(ConfigurableApplicationContext context, ModelConfig modelConfig) {
+        this.context = context;
+        this.modelConfig = modelConfig;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        String port = context.getEnvironment().getProperty("local.server.port", "8080");
+        WebClient client = WebClient.create("http://localhost:" + port);
+        int exitCode = 0;
+        try {
+            client.get().uri("/api/book/models").retrieve().bodyToMono(String.class).block(TIMEOUT);
+            for (ModelConfig.ModelInfo model : modelConfig.getAvailable()) {
+                for (String mode : new String[]{"interpret", "chat"}) {
+                    client.post().uri("/api/book/ask")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .accept(MediaType.TEXT_EVENT_STREAM)
+                            .bodyValue(Map.of(
+                                    "question", "知彼知己，百战不殆。",
+                                    "bookName", "孙子兵法",
+                                    "threadId", TRAINING_THREAD_ID,
+                                    "modelId", model.getId(),
+                                    "mode", mode))
+                            .retrieve()
+                            .bodyToFlux(String.class)
+                            .blockLast(TIMEOUT);
+                }
+            }
+            client.get().uri("/api/book/history").retrieve().bodyToMono(String.class).block(TIMEOUT);
+            client.get().uri("/api/book/history/{id}/messages", TRAINING_THREAD_ID)
+                    .retrieve().bodyToMono(String.class).block(TIMEOUT);
+            client.delete().uri("/api/book/history/{id}", TRAINING_THREAD_ID)
+                    .retrieve().toBodilessEntity().block(TIMEOUT);
+            log.info("AOT training run completed");
+        } catch (Exception e) {
+            log.error("AOT training run failed", e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+}
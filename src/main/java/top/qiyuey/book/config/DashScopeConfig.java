@@ -4,10 +4,14 @@ import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import top.qiyuey.book.config.provider.DashScopeChatModelProvider;
+import top.qiyuey.book.config.provider.ProviderHttpClientFactory;
 
 /**
  * Provides DashScopeApi bean for injection.
  * BookAgentFactory requires DashScopeApi; without this bean, Spring cannot autowire it.
+ * The bean is bootstrapped in the background so it does not block the main startup thread.
+ * Streaming calls go through the "dashscope" connection pool from {@link ProviderHttpClientFactory}.
  */
 @Configuration
 public class DashScopeConfig {
@@ -16,11 +20,13 @@ public class DashScopeConfig {
      * Reads an API key from a Spring configuration or environment.
      * Priority: spring.ai.dashscope.api-key -> env AI_DASHSCOPE_API_KEY -> env DASHSCOPE_API_KEY
      */
-    @Bean
+    @Bean(bootstrap = Bean.Bootstrap.BACKGROUND)
     public DashScopeApi dashScopeApi(
             @Value("${spring.ai.dashscope.api-key:#{null}}") String springConfigApiKey,
             @Value("${AI_DASHSCOPE_API_KEY:#{null}}") String aiEnvApiKey,
-            @Value("${DASHSCOPE_API_KEY:#{null}}") String dashscopeEnvApiKey) {
+            @Value("${DASHSCOPE_API_KEY:#{null}}") String dashscopeEnvApiKey,
+            @Value("${spring.ai.dashscope.base-url:https://dashscope.aliyuncs.com}") String baseUrl,
+            ProviderHttpClientFactory httpClientFactory) {
 
         String apiKey = springConfigApiKey != null ? springConfigApiKey
                 : (aiEnvApiKey != null ? aiEnvApiKey : dashscopeEnvApiKey);
@@ -32,6 +38,8 @@ public class DashScopeConfig {
 
         return DashScopeApi.builder()
                 .apiKey(apiKey)
+                .baseUrl(baseUrl)
+                .webClientBuilder(httpClientFactory.createWebClientBuilder(DashScopeChatModelProvider.PROVIDER_NAME))
                 .build();
     }
 }
@@ -8,7 +8,7 @@ import java.util.List;
 
 /**
  * 模型配置类
- * 管理可用的 LLM 模型列表
+ * 管理可用的 LLM 模型列表，只有列表中的模型可以使用；运行中可由 {@link ModelConfigReloader} 热更新
  */
 @Data
 @Configuration
@@ -18,12 +18,20 @@ public class ModelConfig {
     /**
      * 可用模型列表
      */
-    private List<ModelInfo> available;
+    private volatile List<ModelInfo> available;
 
     /**
      * 默认模型 ID
      */
-    private String defaultModel;
+    private volatile String defaultModel;
+
+    /**
+     * 模型是否在可用列表中
+     */
+    public boolean isAvailable(String modelId) {
+        List<ModelInfo> models = available;
+        return modelId != null && models != null && models.stream().anyMatch(model -> modelId.equals(model.getId()));
+    }
 
     @Data
     public static class ModelInfo {
@@ -0,0 +1,145 @@
+package top.qiyuey.book.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 模型配置热更新
+ * 定期检查 {@link ModelRegistryProperties#getReloadFile()}，修改后重新绑定其中的 app.models 并替换 {@link ModelConfig}，
+ * 然后发布 {@link ModelsChangedEvent}，由 ChatModel 和 Agent 缓存释放被移除的模型。
+ * <p>
+ * 新配置须至少包含一个模型、ID 不重复且默认模型在列表中（未配置默认模型时沿用原值），否则忽略本次修改。
+ */
+@Slf4j
+@Component
+public class ModelConfigReloader implements DisposableBean {
+
+    private final ModelConfig modelConfig;
+    private final ModelRegistryProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private long lastModified;
+    private Disposable task;
+
+    public ModelConfigReloader(ModelConfig modelConfig, ModelRegistryProperties properties,
+                               ApplicationEventPublisher eventPublisher) {
+        this.modelConfig = modelConfig;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!StringUtils.hasText(properties.getReloadFile())) {
+            return;
+        }
+        // 启动时的内容已由 spring.config.import 导入
+        lastModified = lastModified(Path.of(properties.getReloadFile()));
+        task = Flux.interval(properties.getReloadInterval(), Schedulers.boundedElastic())
+                .subscribe(_ -> {
+                    try {
+                        reloadIfModified();
+                    } catch (Exception e) {
+                        log.error("Failed to reload model config", e);
+                    }
+                });
+    }
+
+    @Override
+    public void destroy() {
+        if (task != null) {
+            task.dispose();
+        }
+    }
+
+    private void reloadIfModified() throws IOException {
+        Path file = Path.of(properties.getReloadFile());
+        long modified = lastModified(file);
+        if (modified == lastModified || modified == 0) {
+            return;
+        }
+        lastModified = modified;
+
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader()
+                .load(file.toString(), new FileSystemResource(file));
+        Binder binder = new Binder(ConfigurationPropertySources.from(sources));
+        List<ModelConfig.ModelInfo> available = binder
+                .bind("app.models.available", Bindable.listOf(ModelConfig.ModelInfo.class))
+                .orElse(List.of());
+        String defaultModel = binder.bind("app.models.default-model", String.class)
+                .orElse(modelConfig.getDefaultModel());
+
+        String error = validate(available, defaultModel);
+        if (error != null) {
+            log.warn("Ignoring invalid model config in {}: {}", file, error);
+            return;
+        }
+        apply(available, defaultModel);
+    }
+
+    private synchronized void apply(List<ModelConfig.ModelInfo> available, String defaultModel) {
+        Set<String> previous = ids(modelConfig.getAvailable());
+        Set<String> current = ids(available);
+        modelConfig.setAvailable(List.copyOf(available));
+        modelConfig.setDefaultModel(defaultModel);
+
+        Set<String> added = new HashSet<>(current);
+        added.removeAll(previous);
+        Set<String> removed = new HashSet<>(previous);
+        removed.removeAll(current);
+        log.info("Reloaded model config: {} model(s), default={}, added={}, removed={}",
+                current.size(), defaultModel, added, removed);
+        eventPublisher.publishEvent(new ModelsChangedEvent(Set.copyOf(added), Set.copyOf(removed)));
+    }
+
+    private static String validate(List<ModelConfig.ModelInfo> available, String defaultModel) {
+        if (available.isEmpty()) {
+            return "no models available";
+        }
+        if (available.stream().anyMatch(model -> !StringUtils.hasText(model.getId()))) {
+            return "model id is empty";
+        }
+        if (ids(available).size() != available.size()) {
+            return "duplicate model id";
+        }
+        if (!ids(available).contains(defaultModel)) {
+            return "default model " + defaultModel + " is not available";
+        }
+        return null;
+    }
+
+    private static Set<String> ids(List<ModelConfig.ModelInfo> models) {
+        return models == null ? Set.of() : models.stream()
+                .map(ModelConfig.ModelInfo::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.isRegularFile(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
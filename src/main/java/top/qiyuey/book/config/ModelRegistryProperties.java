@@ -0,0 +1,31 @@
+package top.qiyuey.book.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 模型注册配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.model-registry")
+public class ModelRegistryProperties {
+
+    /**
+     * ChatModel 和 Agent 各自最多缓存的实例数，超出后淘汰近期最少使用的
+     */
+    private int maxCachedModels = 32;
+
+    /**
+     * 可热更新的模型配置文件（内容为 app.models），启动时经 spring.config.import 导入，运行中修改后自动重新加载
+     */
+    private String reloadFile = "./config/models.yaml";
+
+    /**
+     * 检查配置文件是否修改的间隔
+     */
+    private Duration reloadInterval = Duration.ofSeconds(10);
+}
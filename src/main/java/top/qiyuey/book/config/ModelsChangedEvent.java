@@ -0,0 +1,12 @@
+package top.qiyuey.book.config;
+
+import java.util.Set;
+
+/**
+ * 可用模型列表热更新后发布
+ *
+ * @param added   新增的模型 ID
+ * @param removed 移除的模型 ID，缓存的 ChatModel 和 Agent 应释放
+ */
+public record ModelsChangedEvent(Set<String> added, Set<String> removed) {
+}
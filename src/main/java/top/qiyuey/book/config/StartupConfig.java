@@ -0,0 +1,24 @@
+package top.qiyuey.book.config;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 启动加速配置
+ * 为 {@code @Bean(bootstrap = BACKGROUND)} 标注的 Bean 提供后台初始化线程池，
+ * 使 DashScopeApi 等较重的 Provider 组件与主线程上的其他 Bean 并行创建
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean(name = ConfigurableApplicationContext.BOOTSTRAP_EXECUTOR_BEAN_NAME)
+    public Executor bootstrapExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("bootstrap-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+}
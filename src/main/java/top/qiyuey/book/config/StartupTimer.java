@@ -0,0 +1,60 @@
+package top.qiyuey.book.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 启动耗时统计
+ * 以 JVM 启动时刻为起点，记录 time-to-ready（ApplicationReadyEvent）和
+ * time-to-first-request（首个 /api 请求开始响应），用于评估 AOT 缓存和并行初始化的效果
+ */
+@Slf4j
+@Component
+public class StartupTimer implements WebFilter {
+
+    private final long jvmStartTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final AtomicLong timeToReady = new AtomicLong(-1);
+    private final AtomicLong timeToFirstRequest = new AtomicLong(-1);
+
+    public StartupTimer(MeterRegistry meterRegistry) {
+        TimeGauge.builder("app.startup.time-to-ready", timeToReady, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("JVM 启动到应用就绪的耗时")
+                .register(meterRegistry);
+        TimeGauge.builder("app.startup.time-to-first-request", timeToFirstRequest, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("JVM 启动到首个 API 请求开始响应的耗时")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        long elapsed = System.currentTimeMillis() - jvmStartTime;
+        timeToReady.set(elapsed);
+        log.info("Startup: time-to-ready={}ms", elapsed);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (timeToFirstRequest.get() < 0 && exchange.getRequest().getPath().value().startsWith("/api/")) {
+            exchange.getResponse().beforeCommit(() -> {
+                long elapsed = System.currentTimeMillis() - jvmStartTime;
+                if (timeToFirstRequest.compareAndSet(-1, elapsed)) {
+                    log.info("Startup: time-to-first-request={}ms ({})", elapsed, exchange.getRequest().getPath());
+                }
+                return Mono.empty();
+            });
+        }
+        return chain.filter(exchange);
+    }
+}
@@ -0,0 +1,22 @@
+package top.qiyuey.book.config;
+
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 链路追踪导出配置
+ * 设置 management.otlp.tracing.endpoint 后由 Spring Boot 自动启用 OTLP 导出；
+ * 本地排查时可开启 app.tracing.logging-exporter，将每个 span 打印到日志
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "app.tracing", name = "logging-exporter", havingValue = "true")
+    public SpanExporter loggingSpanExporter() {
+        return LoggingSpanExporter.create();
+    }
+}
@@ -0,0 +1,31 @@
+package top.qiyuey.book.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 启动预热配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.warmup")
+public class WarmupProperties {
+
+    /**
+     * 是否在启动时预热 Agent 和提供商连接
+     */
+    private boolean enabled = true;
+
+    /**
+     * 预热最长等待时间，超时后不再等待，直接对外提供服务
+     */
+    private Duration timeout = Duration.ofSeconds(30);
+
+    /**
+     * 每个提供商预先建立的连接数
+     */
+    private int connectionsPerProvider = 2;
+}
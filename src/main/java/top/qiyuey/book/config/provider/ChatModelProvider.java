@@ -1,6 +1,7 @@
 package top.qiyuey.book.config.provider;
 
 import org.springframework.ai.chat.model.ChatModel;
+import reactor.core.publisher.Mono;
 
 /**
  * ChatModel 提供商接口
@@ -18,6 +19,15 @@ public interface ChatModelProvider {
      */
     ChatModel createChatModel(String modelId);
 
+    /**
+     * 预先建立到提供商服务端的连接，默认不做任何事
+     *
+     * @param connections 预建立的连接数
+     */
+    default Mono<Void> warmUpConnections(int connections) {
+        return Mono.empty();
+    }
+
     /**
      * 提供商优先级，数值越小优先级越高
      */
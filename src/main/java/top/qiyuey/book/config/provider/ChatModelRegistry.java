@@ -1,46 +1,103 @@
 package top.qiyuey.book.config.provider;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import top.qiyuey.book.config.ModelConfig;
+import top.qiyuey.book.config.ModelRegistryProperties;
+import top.qiyuey.book.config.ModelsChangedEvent;
 
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
 
 /**
  * ChatModel 注册中心
  * 统一管理所有 ChatModelProvider，根据 modelId 自动路由到对应的提供商
+ * <p>
+ * 只接受 {@link ModelConfig} 可用列表中的模型；缓存有上限，模型从配置中移除后释放缓存的实例。
+ * ChatModel 在锁外创建，并发未命中时可能重复创建，只保留先放入缓存的实例。
  */
+@Slf4j
 @Component
 public class ChatModelRegistry {
 
     private final List<ChatModelProvider> providers;
-    private final Map<String, ChatModel> modelCache = new ConcurrentHashMap<>();
+    private final ModelConfig modelConfig;
+    private final Cache<String, ChatModel> modelCache;
 
-    public ChatModelRegistry(List<ChatModelProvider> providers) {
+    public ChatModelRegistry(List<ChatModelProvider> providers, ModelConfig modelConfig,
+                             ModelRegistryProperties properties) {
         // 按优先级排序
         this.providers = providers.stream()
                 .sorted(Comparator.comparingInt(ChatModelProvider::getOrder))
                 .toList();
+        this.modelConfig = modelConfig;
+        this.modelCache = Caffeine.newBuilder()
+                .maximumSize(Math.max(properties.getMaxCachedModels(), 1))
+                .build();
     }
 
     /**
      * 获取指定模型的 ChatModel，带缓存
+     *
+     * @throws IllegalArgumentException 模型不在可用列表中
      */
     public ChatModel getChatModel(String modelId) {
-        return modelCache.computeIfAbsent(modelId, this::createChatModel);
+        if (!modelConfig.isAvailable(modelId)) {
+            throw new IllegalArgumentException("Unknown model: " + modelId);
+        }
+        ChatModel chatModel = modelCache.getIfPresent(modelId);
+        if (chatModel != null) {
+            return chatModel;
+        }
+        ChatModel created = createChatModel(modelId);
+        ChatModel existing = modelCache.asMap().putIfAbsent(modelId, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * 释放已从配置中移除的模型，正在进行的请求仍持有原实例，结束后即可回收
+     */
+    @EventListener
+    public void onModelsChanged(ModelsChangedEvent event) {
+        event.removed().forEach(modelId -> {
+            if (modelCache.asMap().remove(modelId) != null) {
+                log.info("Released ChatModel for removed model {}", modelId);
+            }
+        });
+    }
+
+    /**
+     * 预热指定模型所属提供商的连接，每个提供商只预热一次
+     */
+    public Mono<Void> warmUpConnections(Collection<String> modelIds, int connections) {
+        return Flux.fromIterable(modelIds)
+                .flatMap(modelId -> Mono.justOrEmpty(findProvider(modelId)))
+                .distinct()
+                .flatMap(p -> p.warmUpConnections(connections))
+                .then();
     }
 
     /**
      * 创建 ChatModel，遍历所有 Provider 找到第一个支持的
      */
     private ChatModel createChatModel(String modelId) {
-        return providers.stream()
-                .filter(p -> p.supports(modelId))
-                .findFirst()
+        return findProvider(modelId)
                 .map(p -> p.createChatModel(modelId))
                 .orElseThrow(() -> new IllegalArgumentException(
                         "No ChatModelProvider found for model: " + modelId));
     }
+
+    private Optional<ChatModelProvider> findProvider(String modelId) {
+        return providers.stream()
+                .filter(p -> p.supports(modelId))
+                .findFirst();
+    }
 }
@@ -3,19 +3,46 @@ package top.qiyuey.book.config.provider;
 import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import io.micrometer.observation.ObservationRegistry;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DashScope (阿里云百炼) ChatModel 提供商
+ * DashScopeApi 在后台初始化，这里延迟到创建模型时才获取
+ * 默认 Key 与 spring.ai.endpoint-pool.providers.dashscope 中的额外 Key 组成 Key 池，按负载分发请求
  */
 @Component
 public class DashScopeChatModelProvider implements ChatModelProvider {
 
-    private final DashScopeApi dashScopeApi;
+    public static final String PROVIDER_NAME = "dashscope";
+
+    private final ObjectProvider<DashScopeApi> dashScopeApi;
+    private final ProviderHttpClientFactory httpClientFactory;
+    private final ProviderEndpointPools endpointPools;
+    private final ObservationRegistry observationRegistry;
+    private final String baseUrl;
+    private final Map<EndpointPool.Member, DashScopeApi> pooledApis = new ConcurrentHashMap<>();
 
-    public DashScopeChatModelProvider(DashScopeApi dashScopeApi) {
+    public DashScopeChatModelProvider(
+            ObjectProvider<DashScopeApi> dashScopeApi,
+            ProviderHttpClientFactory httpClientFactory,
+            ProviderEndpointPools endpointPools,
+            ObservationRegistry observationRegistry,
+            @Value("${spring.ai.dashscope.base-url:https://dashscope.aliyuncs.com}") String baseUrl) {
         this.dashScopeApi = dashScopeApi;
+        this.httpClientFactory = httpClientFactory;
+        this.endpointPools = endpointPools;
+        this.observationRegistry = observationRegistry;
+        this.baseUrl = baseUrl;
     }
 
     @Override
@@ -27,15 +54,52 @@ public class DashScopeChatModelProvider implements ChatModelProvider {
 
     @Override
     public ChatModel createChatModel(String modelId) {
-        DashScopeChatOptions options = DashScopeChatOptions.builder()
-                .model(modelId)
-                .temperature(0.7)
-                .build();
-
-        return DashScopeChatModel.builder()
-                .dashScopeApi(dashScopeApi)
-                .defaultOptions(options)
-                .build();
+        EndpointPool pool = endpointPools.getPool(PROVIDER_NAME, true);
+        return new LoadBalancedChatModel(pool, modelId, member -> {
+            DashScopeChatOptions options = DashScopeChatOptions.builder()
+                    .model(modelId)
+                    .temperature(0.7)
+                    .build();
+
+            return DashScopeChatModel.builder()
+                    .dashScopeApi(getApi(member))
+                    .defaultOptions(options)
+                    .observationRegistry(observationRegistry)
+                    .build();
+        });
+    }
+
+    /**
+     * 使用与 DashScopeApi 相同的 dashscope 连接池预热，Key 池中的每个服务地址各预热一次
+     */
+    @Override
+    public Mono<Void> warmUpConnections(int connections) {
+        return Flux.fromIterable(endpointPools.getPool(PROVIDER_NAME, true).members())
+                .map(this::baseUrlOf)
+                .distinct()
+                .flatMap(url -> {
+                    WebClient webClient = httpClientFactory.createWebClientBuilder(PROVIDER_NAME).baseUrl(url).build();
+                    return ProviderConnections.warmUp("DashScope", webClient, connections);
+                })
+                .then();
+    }
+
+    /**
+     * 默认 Key 使用后台初始化的 DashScopeApi，额外的 Key 各自构建并缓存，共享 dashscope 连接池
+     */
+    private DashScopeApi getApi(EndpointPool.Member member) {
+        if (member.config() == null) {
+            return dashScopeApi.getObject();
+        }
+        return pooledApis.computeIfAbsent(member, m -> DashScopeApi.builder()
+                .apiKey(m.config().getApiKey())
+                .baseUrl(baseUrlOf(m))
+                .webClientBuilder(httpClientFactory.createWebClientBuilder(PROVIDER_NAME))
+                .build());
+    }
+
+    private String baseUrlOf(EndpointPool.Member member) {
+        return member.config() != null && member.config().getBaseUrl() != null ? member.config().getBaseUrl() : baseUrl;
     }
 
     @Override
@@ -0,0 +1,170 @@
+package top.qiyuey.book.config.provider;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个提供商的 Key 池
+ * 按未完成请求数最少选择 Key（并列时轮转），收到 429 的 Key 在 ejectionDuration 内不参与分发；
+ * 所有 Key 都被摘除时仍选择最早恢复的 Key，避免整体不可用。
+ * <p>
+ * 每个 Key 导出指标（标签 provider、endpoint）：
+ * <ul>
+ *     <li>app.provider.endpoint.outstanding —— 未完成请求数</li>
+ *     <li>app.provider.endpoint.ejected —— 是否处于摘除状态（0/1）</li>
+ *     <li>app.provider.endpoint.requests —— 请求数，按 outcome=success|error|rate_limited 区分</li>
+ * </ul>
+ */
+@Slf4j
+final class EndpointPool {
+
+    private final String provider;
+    private final List<Member> members;
+    private final Duration ejectionDuration;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    EndpointPool(String provider, List<Member> members, Duration ejectionDuration) {
+        this.provider = provider;
+        this.members = List.copyOf(members);
+        this.ejectionDuration = ejectionDuration;
+    }
+
+    List<Member> members() {
+        return members;
+    }
+
+    boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * 为模型选择一个 Key，exclude 中的 Key 不参与选择；没有可服务该模型的 Key 时返回 null
+     */
+    Member select(String modelId, Set<Member> exclude) {
+        long now = System.currentTimeMillis();
+        int size = members.size();
+        int offset = Math.floorMod(cursor.getAndIncrement(), Math.max(size, 1));
+        Member best = null;
+        Member earliestRecovery = null;
+        for (int i = 0; i < size; i++) {
+            Member member = members.get((offset + i) % size);
+            if (exclude.contains(member) || !member.serves(modelId)) {
+                continue;
+            }
+            if (member.ejectedUntil > now) {
+                if (earliestRecovery == null || member.ejectedUntil < earliestRecovery.ejectedUntil) {
+                    earliestRecovery = member;
+                }
+            } else if (best == null || member.outstanding.get() < best.outstanding.get()) {
+                best = member;
+            }
+        }
+        return best != null ? best : earliestRecovery;
+    }
+
+    /**
+     * 记录 429 并暂时摘除该 Key
+     */
+    void eject(Member member) {
+        member.rateLimited.increment();
+        member.ejectedUntil = System.currentTimeMillis() + ejectionDuration.toMillis();
+        log.warn("{} endpoint {} is rate limited, ejected for {}s", provider, member.name, ejectionDuration.toSeconds());
+    }
+
+    /**
+     * 判断异常是否由提供商限流（HTTP 429）引起
+     */
+    static boolean isRateLimited(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof WebClientResponseException e && e.getStatusCode().value() == 429) {
+                return true;
+            }
+            if (t instanceof HttpStatusCodeException e && e.getStatusCode().value() == 429) {
+                return true;
+            }
+            // Spring AI 将 HTTP 错误包装为 "状态码 - 响应体" 格式的 AiException
+            if (t.getMessage() != null && t.getMessage().startsWith("429")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 池中的单个 Key 及其运行状态
+     */
+    static final class Member {
+
+        private final String name;
+        private final ProviderEndpointProperties.Endpoint config;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final Counter success;
+        private final Counter errors;
+        private final Counter rateLimited;
+        private volatile long ejectedUntil;
+
+        /**
+         * @param config 为 null 表示提供商的默认 Key
+         */
+        Member(String provider, String name, ProviderEndpointProperties.Endpoint config, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.config = config;
+            Gauge.builder("app.provider.endpoint.outstanding", outstanding, AtomicInteger::get)
+                    .tags("provider", provider, "endpoint", name)
+                    .register(meterRegistry);
+            Gauge.builder("app.provider.endpoint.ejected", this,
+                            m -> m.ejectedUntil > System.currentTimeMillis() ? 1 : 0)
+                    .tags("provider", provider, "endpoint", name)
+                    .register(meterRegistry);
+            this.success = requestCounter(meterRegistry, provider, name, "success");
+            this.errors = requestCounter(meterRegistry, provider, name, "error");
+            this.rateLimited = requestCounter(meterRegistry, provider, name, "rate_limited");
+        }
+
+        String name() {
+            return name;
+        }
+
+        /**
+         * 额外配置的 Key；默认 Key 返回 null
+         */
+        ProviderEndpointProperties.Endpoint config() {
+            return config;
+        }
+
+        boolean serves(String modelId) {
+            return config == null || config.getModels().isEmpty() || config.getModels().contains(modelId);
+        }
+
+        void acquire() {
+            outstanding.incrementAndGet();
+        }
+
+        void release() {
+            outstanding.decrementAndGet();
+        }
+
+        void recordSuccess() {
+            success.increment();
+        }
+
+        void recordError() {
+            errors.increment();
+        }
+
+        private static Counter requestCounter(MeterRegistry meterRegistry, String provider, String name, String outcome) {
+            return Counter.builder("app.provider.endpoint.requests")
+                    .tags("provider", provider, "endpoint", name, "outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
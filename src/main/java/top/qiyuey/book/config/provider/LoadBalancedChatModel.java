@@ -0,0 +1,107 @@
+package top.qiyuey.book.config.provider;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 在 Key 池上做负载均衡的 ChatModel
+ * 每次调用选择未完成请求数最少的 Key；遇到 429 时摘除该 Key，
+ * 若尚未向下游输出任何内容，则换下一个 Key 重试，直到池中的 Key 都试过为止。
+ * 各 Key 对应的 ChatModel 在首次选中时才创建。
+ */
+final class LoadBalancedChatModel implements ChatModel {
+
+    private final EndpointPool pool;
+    private final String modelId;
+    private final Function<EndpointPool.Member, ChatModel> modelFactory;
+    private final Map<EndpointPool.Member, ChatModel> delegates = new ConcurrentHashMap<>();
+
+    LoadBalancedChatModel(EndpointPool pool, String modelId, Function<EndpointPool.Member, ChatModel> modelFactory) {
+        this.pool = pool;
+        this.modelId = modelId;
+        this.modelFactory = modelFactory;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        Set<EndpointPool.Member> tried = new HashSet<>();
+        while (true) {
+            EndpointPool.Member member = select(tried);
+            member.acquire();
+            try {
+                ChatResponse response = delegate(member).call(prompt);
+                member.recordSuccess();
+                return response;
+            } catch (RuntimeException e) {
+                if (!EndpointPool.isRateLimited(e)) {
+                    member.recordError();
+                    throw e;
+                }
+                pool.eject(member);
+                if (pool.select(modelId, tried) == null) {
+                    throw e;
+                }
+            } finally {
+                member.release();
+            }
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return stream(prompt, new HashSet<>());
+    }
+
+    private Flux<ChatResponse> stream(Prompt prompt, Set<EndpointPool.Member> tried) {
+        return Flux.defer(() -> {
+            EndpointPool.Member member = select(tried);
+            member.acquire();
+            AtomicBoolean emitted = new AtomicBoolean();
+            return delegate(member).stream(prompt)
+                    .doOnNext(_ -> emitted.set(true))
+                    .doOnComplete(member::recordSuccess)
+                    // 在错误继续传播（可能触发重试）之前释放计数
+                    .doOnTerminate(member::release)
+                    .doOnCancel(member::release)
+                    .onErrorResume(error -> {
+                        if (!EndpointPool.isRateLimited(error)) {
+                            member.recordError();
+                            return Flux.error(error);
+                        }
+                        pool.eject(member);
+                        if (!emitted.get() && pool.select(modelId, tried) != null) {
+                            return stream(prompt, tried);
+                        }
+                        return Flux.error(error);
+                    });
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate(select(new HashSet<>())).getDefaultOptions();
+    }
+
+    private EndpointPool.Member select(Set<EndpointPool.Member> tried) {
+        EndpointPool.Member member = pool.select(modelId, tried);
+        if (member == null) {
+            throw new IllegalStateException("No API key available for model: " + modelId);
+        }
+        tried.add(member);
+        return member;
+    }
+
+    private ChatModel delegate(EndpointPool.Member member) {
+        return delegates.computeIfAbsent(member, modelFactory);
+    }
+}
@@ -1,5 +1,6 @@
 package top.qiyuey.book.config.provider;
 
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
@@ -7,12 +8,20 @@ import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * OpenAI ChatModel 提供商
  * 支持 HTTP 和 SOCKS5 代理配置
+ * OpenAiApi 在首次使用时才构建，避免拖慢启动
+ * 默认 Key 与 spring.ai.endpoint-pool.providers.openai 中的额外 Key 组成 Key 池，按负载分发请求
  */
 @Slf4j
 @Component
@@ -20,29 +29,45 @@ public class OpenAiChatModelProvider implements ChatModelProvider {
 
     private static final Set<String> MODEL_PREFIXES = Set.of("gpt-", "o1", "o3", "o4");
 
-    private final OpenAiApi openAiApi;
+    private final boolean defaultKeyConfigured;
+    private final boolean configured;
+    private final String baseUrl;
+    private final ProviderEndpointPools endpointPools;
+    private final ObservationRegistry observationRegistry;
+    private final SingletonSupplier<WebClient.Builder> webClientBuilder;
+    private final SingletonSupplier<OpenAiApi> openAiApi;
+    private final Map<EndpointPool.Member, OpenAiApi> pooledApis = new ConcurrentHashMap<>();
 
     public OpenAiChatModelProvider(
             @Value("${spring.ai.openai.api-key:}") String apiKey,
             @Value("${spring.ai.openai.base-url:https://api.openai.com}") String baseUrl,
-            OpenAiRestClientFactory restClientFactory) {
+            OpenAiRestClientFactory restClientFactory,
+            ProviderEndpointPools endpointPools,
+            ObservationRegistry observationRegistry) {
 
-        if (apiKey != null && !apiKey.isBlank()) {
-            this.openAiApi = OpenAiApi.builder()
+        this.defaultKeyConfigured = apiKey != null && !apiKey.isBlank();
+        this.configured = defaultKeyConfigured || endpointPools.hasEndpoints(OpenAiRestClientFactory.PROVIDER_NAME);
+        this.baseUrl = baseUrl;
+        this.endpointPools = endpointPools;
+        this.observationRegistry = observationRegistry;
+        this.webClientBuilder = SingletonSupplier.of(restClientFactory::createWebClientBuilder);
+        this.openAiApi = SingletonSupplier.of(() -> {
+            OpenAiApi api = OpenAiApi.builder()
                     .apiKey(apiKey)
                     .baseUrl(baseUrl)
-                    .webClientBuilder(restClientFactory.createWebClientBuilder())
+                    .webClientBuilder(webClientBuilder.obtain().clone())
                     .build();
             log.info("OpenAI API initialized with base URL: {}", baseUrl);
-        } else {
-            this.openAiApi = null;
+            return api;
+        });
+        if (!configured) {
             log.warn("OpenAI API key not configured, OpenAI models will be unavailable");
         }
     }
 
     @Override
     public boolean supports(String modelId) {
-        if (modelId == null || openAiApi == null) {
+        if (modelId == null || !configured) {
             return false;
         }
         String lower = modelId.toLowerCase();
@@ -51,20 +76,65 @@ public class OpenAiChatModelProvider implements ChatModelProvider {
 
     @Override
     public ChatModel createChatModel(String modelId) {
-        if (openAiApi == null) {
+        if (!configured) {
             throw new IllegalStateException(
                     "OpenAI API is not configured. Please set OPENAI_API_KEY environment variable.");
         }
 
-        OpenAiChatOptions options = OpenAiChatOptions.builder()
-                .model(modelId)
-                .temperature(0.7)
-                .build();
+        return new LoadBalancedChatModel(pool(), modelId, member -> {
+            OpenAiChatOptions options = OpenAiChatOptions.builder()
+                    .model(modelId)
+                    .temperature(0.7)
+                    // 流式响应默认不返回用量，需显式开启（最后一个 chunk 携带 usage）
+                    .streamUsage(true)
+                    .build();
+
+            return OpenAiChatModel.builder()
+                    .openAiApi(getApi(member))
+                    .defaultOptions(options)
+                    .observationRegistry(observationRegistry)
+                    .build();
+        });
+    }
+
+    /**
+     * 复用与 OpenAiApi 相同的连接器预热连接（含代理），Key 池中的每个服务地址各预热一次
+     */
+    @Override
+    public Mono<Void> warmUpConnections(int connections) {
+        if (!configured) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(pool().members())
+                .map(this::baseUrlOf)
+                .distinct()
+                .flatMap(url -> {
+                    WebClient webClient = webClientBuilder.obtain().clone().baseUrl(url).build();
+                    return ProviderConnections.warmUp("OpenAI", webClient, connections);
+                })
+                .then();
+    }
+
+    private EndpointPool pool() {
+        return endpointPools.getPool(OpenAiRestClientFactory.PROVIDER_NAME, defaultKeyConfigured);
+    }
+
+    /**
+     * 默认 Key 使用共享的 OpenAiApi，额外的 Key 各自构建并缓存，共享 openai 连接池和代理
+     */
+    private OpenAiApi getApi(EndpointPool.Member member) {
+        if (member.config() == null) {
+            return openAiApi.obtain();
+        }
+        return pooledApis.computeIfAbsent(member, m -> OpenAiApi.builder()
+                .apiKey(m.config().getApiKey())
+                .baseUrl(baseUrlOf(m))
+                .webClientBuilder(webClientBuilder.obtain().clone())
+                .build());
+    }
 
-        return OpenAiChatModel.builder()
-                .openAiApi(openAiApi)
-                .defaultOptions(options)
-                .build();
+    private String baseUrlOf(EndpointPool.Member member) {
+        return member.config() != null && member.config().getBaseUrl() != null ? member.config().getBaseUrl() : baseUrl;
     }
 
 }
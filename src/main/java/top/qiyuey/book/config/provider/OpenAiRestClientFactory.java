@@ -1,9 +1,7 @@
 package top.qiyuey.book.config.provider;
 
-import io.netty.channel.ChannelOption;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
@@ -11,41 +9,41 @@ import reactor.netty.transport.ProxyProvider;
 
 /**
  * OpenAI WebClient 工厂
- * 支持 HTTP 和 SOCKS5 代理
+ * 使用 openai 连接池，支持 HTTP 和 SOCKS5 代理
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class OpenAiRestClientFactory {
 
+    static final String PROVIDER_NAME = "openai";
+
     private final OpenAiProxyProperties proxyProperties;
+    private final ProviderHttpClientFactory httpClientFactory;
 
     /**
-     * 创建带代理的 WebClient.Builder（用于流式调用）
+     * 创建带连接池（及代理）的 WebClient.Builder（用于流式调用）
      */
     public WebClient.Builder createWebClientBuilder() {
-        WebClient.Builder builder = WebClient.builder();
+        HttpClient httpClient = httpClientFactory.createHttpClient(PROVIDER_NAME);
 
         if (proxyProperties.isNotConfigured()) {
             log.debug("OpenAI proxy not configured, using direct connection");
-            return builder;
+        } else {
+            httpClient = applyProxy(httpClient);
+            log.info("OpenAI proxy configured: type={}, host={}, port={}",
+                    proxyProperties.getProxyType(),
+                    proxyProperties.getHost(),
+                    proxyProperties.getPort());
         }
 
-        HttpClient httpClient = createProxiedHttpClient();
-        ReactorClientHttpConnector connector = new ReactorClientHttpConnector(httpClient);
-
-        log.info("OpenAI proxy configured: type={}, host={}, port={}",
-                proxyProperties.getProxyType(),
-                proxyProperties.getHost(),
-                proxyProperties.getPort());
-
-        return builder.clientConnector(connector);
+        return httpClientFactory.createWebClientBuilder(httpClient);
     }
 
     /**
-     * 创建带代理的 Reactor Netty HttpClient
+     * 为 Reactor Netty HttpClient 配置代理
      */
-    private HttpClient createProxiedHttpClient() {
+    private HttpClient applyProxy(HttpClient httpClient) {
         String host = proxyProperties.getHost();
         int port = proxyProperties.getPort();
         String username = proxyProperties.getUsername();
@@ -57,15 +55,13 @@ public class OpenAiRestClientFactory {
             default -> throw new IllegalStateException("Unsupported proxy type: " + proxyProperties.getProxyType());
         };
 
-        return HttpClient.create()
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30000)
-                .proxy(proxy -> {
-                    var spec = proxy.type(nettyProxyType)
-                            .host(host)
-                            .port(port);
-                    if (username != null && password != null) {
-                        spec.username(username).password(_ -> password);
-                    }
-                });
+        return httpClient.proxy(proxy -> {
+            var spec = proxy.type(nettyProxyType)
+                    .host(host)
+                    .port(port);
+            if (username != null && password != null) {
+                spec.username(username).password(_ -> password);
+            }
+        });
     }
 }
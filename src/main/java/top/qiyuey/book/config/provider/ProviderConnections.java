@@ -0,0 +1,34 @@
+package top.qiyuey.book.config.provider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 提供商连接预热工具
+ * 通过并发的轻量 GET 请求完成 DNS 解析和 TLS 握手，请求结束后连接归还连接池，供后续流式调用复用
+ */
+@Slf4j
+final class ProviderConnections {
+
+    private ProviderConnections() {
+    }
+
+    /**
+     * 预先建立 connections 条到 webClient baseUrl 的连接，失败只记录日志
+     */
+    static Mono<Void> warmUp(String provider, WebClient webClient, int connections) {
+        long start = System.currentTimeMillis();
+        return Flux.range(0, connections)
+                .flatMap(_ -> webClient.get().uri("/").exchangeToMono(ClientResponse::releaseBody))
+                .then()
+                .doOnSuccess(_ -> log.info("Warmed up {} connection(s) to {} in {}ms",
+                        connections, provider, System.currentTimeMillis() - start))
+                .onErrorResume(e -> {
+                    log.warn("Failed to warm up connections to {}: {}", provider, e.toString());
+                    return Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,65 @@
+package top.qiyuey.book.config.provider;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按提供商创建并缓存 Key 池，同一提供商的所有模型共享 Key 的负载与摘除状态
+ */
+@Slf4j
+@Component
+public class ProviderEndpointPools {
+
+    static final String DEFAULT_ENDPOINT = "default";
+
+    private final ProviderEndpointProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, EndpointPool> pools = new ConcurrentHashMap<>();
+
+    public ProviderEndpointPools(ProviderEndpointProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 获取提供商的 Key 池
+     *
+     * @param includeDefault 是否包含提供商的默认 Key
+     */
+    EndpointPool getPool(String provider, boolean includeDefault) {
+        return pools.computeIfAbsent(provider, name -> createPool(name, includeDefault));
+    }
+
+    /**
+     * 提供商是否配置了额外的 Key
+     */
+    boolean hasEndpoints(String provider) {
+        return !properties.getPool(provider).getEndpoints().isEmpty();
+    }
+
+    private EndpointPool createPool(String provider, boolean includeDefault) {
+        ProviderEndpointProperties.Pool pool = properties.getPool(provider);
+        List<EndpointPool.Member> members = new ArrayList<>();
+        if (includeDefault) {
+            members.add(new EndpointPool.Member(provider, DEFAULT_ENDPOINT, null, meterRegistry));
+        }
+        List<ProviderEndpointProperties.Endpoint> endpoints = pool.getEndpoints();
+        for (int i = 0; i < endpoints.size(); i++) {
+            ProviderEndpointProperties.Endpoint endpoint = endpoints.get(i);
+            if (endpoint.getApiKey() == null || endpoint.getApiKey().isBlank()) {
+                throw new IllegalStateException("API key is missing for " + provider + " endpoint #" + i);
+            }
+            String name = endpoint.getName() != null && !endpoint.getName().isBlank() ? endpoint.getName() : "key-" + (i + 1);
+            members.add(new EndpointPool.Member(provider, name, endpoint, meterRegistry));
+        }
+        log.info("Created {} endpoint pool with {} key(s), ejection duration {}s",
+                provider, members.size(), pool.getEjectionDuration().toSeconds());
+        return new EndpointPool(provider, members, pool.getEjectionDuration());
+    }
+}
@@ -0,0 +1,76 @@
+package top.qiyuey.book.config.provider;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模型提供商的 API Key / 服务地址池配置
+ * 在提供商默认 Key 之外追加多个 Key（或不同的服务地址），请求按未完成请求数最少的 Key 分发:
+ * <pre>
+ * spring.ai.endpoint-pool.providers.dashscope.endpoints[0].name=team-b
+ * spring.ai.endpoint-pool.providers.dashscope.endpoints[0].api-key=sk-xxx
+ * spring.ai.endpoint-pool.providers.openai.endpoints[0].base-url=https://gateway.example.com
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "spring.ai.endpoint-pool")
+public class ProviderEndpointProperties {
+
+    /**
+     * 各提供商的 Key 池配置，key 为提供商名称
+     */
+    private Map<String, Pool> providers = new HashMap<>();
+
+    /**
+     * 获取指定提供商的 Key 池配置
+     */
+    public Pool getPool(String provider) {
+        return providers.getOrDefault(provider, new Pool());
+    }
+
+    @Data
+    public static class Pool {
+
+        /**
+         * 收到 429 后该 Key 暂停分发的时长
+         */
+        private Duration ejectionDuration = Duration.ofSeconds(30);
+
+        /**
+         * 额外的 Key 列表
+         */
+        private List<Endpoint> endpoints = new ArrayList<>();
+    }
+
+    @Data
+    public static class Endpoint {
+
+        /**
+         * 名称，用作指标标签，不要填写 Key 本身；为空时按序号命名
+         */
+        private String name;
+
+        /**
+         * API Key
+         */
+        private String apiKey;
+
+        /**
+         * 服务地址，为空时使用提供商默认地址
+         */
+        private String baseUrl;
+
+        /**
+         * 该 Key 可服务的模型，为空表示所有模型
+         */
+        private List<String> models = new ArrayList<>();
+    }
+}
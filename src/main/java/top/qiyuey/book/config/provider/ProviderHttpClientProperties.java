@@ -0,0 +1,89 @@
+package top.qiyuey.book.config.provider;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模型提供商 HTTP 连接池配置
+ * 按提供商名称（openai、dashscope）分别配置，未配置的提供商使用默认值:
+ * <pre>
+ * spring.ai.http-client.pools.dashscope.max-connections=1000
+ * spring.ai.http-client.pools.openai.http2=true
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "spring.ai.http-client")
+public class ProviderHttpClientProperties {
+
+    /**
+     * 各提供商的连接池配置，key 为提供商名称
+     */
+    private Map<String, Pool> pools = new HashMap<>();
+
+    /**
+     * 获取指定提供商的连接池配置
+     */
+    public Pool getPool(String provider) {
+        return pools.getOrDefault(provider, new Pool());
+    }
+
+    @Data
+    public static class Pool {
+
+        /**
+         * 最大连接数，流式响应期间每个请求独占一条连接（HTTP/1.1）
+         */
+        private int maxConnections = 500;
+
+        /**
+         * 等待获取连接的最大排队数，-1 表示不限制
+         */
+        private int pendingAcquireMaxCount = 1000;
+
+        /**
+         * 等待获取连接的超时时间
+         */
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+
+        /**
+         * 空闲连接最长保留时间
+         */
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        /**
+         * 连接最长存活时间
+         */
+        private Duration maxLifeTime = Duration.ofMinutes(10);
+
+        /**
+         * 后台清理空闲/过期连接的间隔
+         */
+        private Duration evictInBackground = Duration.ofSeconds(30);
+
+        /**
+         * 是否启用 TCP 与 HTTP keep-alive
+         */
+        private boolean keepAlive = true;
+
+        /**
+         * 是否优先使用 HTTP/2（通过 ALPN 协商，失败时回退到 HTTP/1.1）
+         */
+        private boolean http2 = false;
+
+        /**
+         * 建立连接的超时时间
+         */
+        private Duration connectTimeout = Duration.ofSeconds(30);
+
+        /**
+         * 两次读取响应数据之间的最长间隔，流式响应中相邻 chunk 超过该时间视为超时
+         */
+        private Duration responseTimeout = Duration.ofMinutes(2);
+    }
+}
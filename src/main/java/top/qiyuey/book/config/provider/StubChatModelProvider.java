@@ -0,0 +1,83 @@
+package top.qiyuey.book.config.provider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 桩 ChatModel 提供商
+ * 返回固定的流式文本，不访问任何外部服务，用于 AOT 训练运行、启动基准和本地调试。
+ * 仅在 app.stub.enabled=true 时注册，且优先级最高，会接管所有模型。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.stub", name = "enabled", havingValue = "true")
+public class StubChatModelProvider implements ChatModelProvider {
+
+    private final Duration chunkDelay;
+
+    public StubChatModelProvider(@Value("${app.stub.chunk-delay:20ms}") Duration chunkDelay) {
+        this.chunkDelay = chunkDelay;
+        log.warn("Stub ChatModel provider enabled, all models will return canned responses");
+    }
+
+    @Override
+    public boolean supports(String modelId) {
+        return true;
+    }
+
+    @Override
+    public ChatModel createChatModel(String modelId) {
+        return new StubChatModel(chunkDelay);
+    }
+
+    @Override
+    public int getOrder() {
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * 按标点切分固定回复并逐段流式输出
+     */
+    static class StubChatModel implements ChatModel {
+
+        private static final String REPLY = """
+                ### 1. 原文拆解
+                这是桩模型的固定回复，用于在不访问真实模型的情况下走通完整的问答链路。
+
+                ### 4. 一句话精华
+                先把路走通，再谈跑得快。""";
+
+        private final Duration chunkDelay;
+
+        StubChatModel(Duration chunkDelay) {
+            this.chunkDelay = chunkDelay;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return toResponse(REPLY);
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.fromArray(REPLY.split("(?<=[，。\\n])"))
+                    .delayElements(chunkDelay)
+                    .map(this::toResponse);
+        }
+
+        private ChatResponse toResponse(String text) {
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+        }
+    }
+}
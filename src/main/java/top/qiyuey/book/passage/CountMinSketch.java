@@ -0,0 +1,83 @@
+package top.qiyuey.book.passage;
+
+/**
+ * Count-Min Sketch 频率估计
+ * depth 行、每行 width 个计数器，每个键在每行映射到一个计数器，估计值取各行最小值，只会高估不会低估。
+ * 采用保守更新（只增加等于当前最小值的计数器），减少哈希冲突带来的高估；内存固定为 width × depth 个 int。
+ * <p>
+ * {@link #halve()} 将所有计数减半，用于让频率随时间衰减，反映近期热度。
+ */
+public final class CountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final int[] counters;
+
+    /**
+     * @param width 每行计数器数，向上取整为 2 的幂
+     * @param depth 行数（哈希函数个数）
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width and depth must be positive");
+        }
+        int size = Integer.highestOneBit(Math.clamp(width, 1, 1 << 24));
+        if (size < width) {
+            size <<= 1;
+        }
+        this.depth = depth;
+        this.mask = size - 1;
+        this.counters = new int[size * depth];
+    }
+
+    /**
+     * 计数加一，返回加一后的估计值
+     */
+    public synchronized int add(long key) {
+        int min = estimateUnsynchronized(key);
+        if (min == Integer.MAX_VALUE) {
+            return min;
+        }
+        for (int row = 0; row < depth; row++) {
+            int index = index(key, row);
+            if (counters[index] == min) {
+                counters[index] = min + 1;
+            }
+        }
+        return min + 1;
+    }
+
+    public synchronized int estimate(long key) {
+        return estimateUnsynchronized(key);
+    }
+
+    /**
+     * 所有计数减半
+     */
+    public synchronized void halve() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+    }
+
+    private int estimateUnsynchronized(long key) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[index(key, row)]);
+        }
+        return min;
+    }
+
+    private int index(long key, int row) {
+        return row * (mask + 1) + (int) (mix(key + row * 0x9e3779b97f4a7c15L) & mask);
+    }
+
+    /**
+     * SplitMix64 混淆，每行使用不同的种子偏移得到相互独立的哈希
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,85 @@
+package top.qiyuey.book.passage;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 热门原文统计与解读预生成配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.hot-passages")
+public class HotPassageProperties {
+
+    /**
+     * 是否统计原文热度并在低峰时段预生成热门原文的解读
+     */
+    private boolean enabled = true;
+
+    /**
+     * Count-Min Sketch 每行计数器数，内存占用为 width × depth × 4 字节
+     */
+    private int sketchWidth = 65536;
+
+    /**
+     * Count-Min Sketch 行数
+     */
+    private int sketchDepth = 4;
+
+    /**
+     * 热门原文数（Top-K）
+     */
+    private int topK = 100;
+
+    /**
+     * 进入 Top-K 的最低请求次数
+     */
+    private int minCount = 5;
+
+    /**
+     * 计数减半的间隔，使热度反映近期的请求
+     */
+    private Duration decayInterval = Duration.ofDays(1);
+
+    private Precompute precompute = new Precompute();
+
+    @Data
+    public static class Precompute {
+
+        /**
+         * 低峰时段开始时间（服务器时区），可跨零点
+         */
+        private LocalTime windowStart = LocalTime.of(2, 0);
+
+        /**
+         * 低峰时段结束时间
+         */
+        private LocalTime windowEnd = LocalTime.of(6, 0);
+
+        /**
+         * 低峰时段内检查热门原文的间隔
+         */
+        private Duration checkInterval = Duration.ofMinutes(10);
+
+        /**
+         * 同时进行的模型调用数
+         */
+        private int concurrency = 2;
+
+        /**
+         * 单次模型调用的超时时间，超时即取消请求，避免持锁的节点被挂起的调用卡住
+         */
+        private Duration callTimeout = Duration.ofMinutes(2);
+
+        /**
+         * 预生成解读使用的模型，为空时使用默认模型；解读按模型复用，应与用户常用的模型一致
+         */
+        private List<String> modelIds = new ArrayList<>();
+    }
+}
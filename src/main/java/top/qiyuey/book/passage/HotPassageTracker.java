@@ -0,0 +1,126 @@
+package top.qiyuey.book.passage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 原文热度统计
+ * 解读请求按 (书名, 原文 SimHash) 计入 Count-Min Sketch，内存固定，与不同原文的数量无关；
+ * 估计次数达到 {@link HotPassageProperties#getMinCount()} 的原文作为候选保留原文，只保留计数最高的 2K 个，
+ * 供 {@code HotPassagePrecomputer} 在低峰时段预生成解读。
+ * <p>
+ * 计数按 {@link HotPassageProperties#getDecayInterval()} 定期减半。各节点只统计自己收到的请求，
+ * 负载均衡下各节点的热门原文基本一致。
+ */
+@Slf4j
+@Component
+public class HotPassageTracker implements DisposableBean {
+
+    private static final long BOOK_HASH_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    private final HotPassageProperties properties;
+    private final PassageDedupProperties dedupProperties;
+    private final CountMinSketch sketch;
+    private final Map<Long, HotPassage> candidates = new HashMap<>();
+    private Disposable decayTask;
+
+    public HotPassageTracker(HotPassageProperties properties, PassageDedupProperties dedupProperties) {
+        this.properties = properties;
+        this.dedupProperties = dedupProperties;
+        this.sketch = new CountMinSketch(properties.getSketchWidth(), properties.getSketchDepth());
+    }
+
+    /**
+     * 记录一次解读请求
+     */
+    public void record(String passage, String bookName) {
+        if (!properties.isEnabled()
+                || PassageFingerprint.normalize(passage).length() < dedupProperties.getMinLength()) {
+            return;
+        }
+        long key = PassageFingerprint.simHash(passage) ^ Objects.hashCode(bookName) * BOOK_HASH_MULTIPLIER;
+        int count = sketch.add(key);
+        if (count < properties.getMinCount()) {
+            return;
+        }
+        synchronized (candidates) {
+            if (candidates.computeIfPresent(key, (_, existing) -> existing.withCount(count)) != null) {
+                return;
+            }
+            int capacity = Math.max(properties.getTopK(), 1) * 2;
+            if (candidates.size() >= capacity) {
+                HotPassage coldest = candidates.values().stream()
+                        .min(Comparator.comparingInt(HotPassage::count))
+                        .orElseThrow();
+                if (coldest.count() >= count) {
+                    return;
+                }
+                candidates.remove(coldest.key());
+            }
+            candidates.put(key, new HotPassage(key, passage, bookName, count));
+        }
+    }
+
+    /**
+     * 当前最热的 K 个原文，按估计次数降序
+     */
+    public List<HotPassage> topK() {
+        synchronized (candidates) {
+            return candidates.values().stream()
+                    .sorted(Comparator.comparingInt(HotPassage::count).reversed())
+                    .limit(properties.getTopK())
+                    .toList();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startDecay() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        decayTask = Flux.interval(properties.getDecayInterval(), Schedulers.boundedElastic())
+                .subscribe(_ -> decay());
+    }
+
+    @Override
+    public void destroy() {
+        if (decayTask != null) {
+            decayTask.dispose();
+        }
+    }
+
+    private void decay() {
+        sketch.halve();
+        int left;
+        synchronized (candidates) {
+            candidates.replaceAll((_, passage) -> passage.withCount(passage.count() >>> 1));
+            candidates.values().removeIf(passage -> passage.count() < properties.getMinCount());
+            left = candidates.size();
+        }
+        log.debug("Decayed passage frequencies, {} hot candidates left", left);
+    }
+
+    /**
+     * 热门原文
+     *
+     * @param count 估计的请求次数
+     */
+    public record HotPassage(long key, String passage, String bookName, int count) {
+
+        HotPassage withCount(int count) {
+            return new HotPassage(key, passage, bookName, count);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package top.qiyuey.book.passage;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 长文本内容寻址存储配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.passage-blob")
+public class PassageBlobProperties {
+
+    /**
+     * 是否将长文本存为共享的 blob，消息和 Checkpoint 中只保存引用（仅 Redis 存储后端生效）
+     */
+    private boolean enabled = true;
+
+    /**
+     * 存为 blob 的最短文本长度（字符数），短文本引用的开销不值得
+     */
+    private int minLength = 2048;
+
+    /**
+     * 本地缓存的 blob 数量，命中时读取不访问 Redis，写入不重复上传内容
+     */
+    private int cacheSize = 512;
+}
@@ -0,0 +1,272 @@
+package top.qiyuey.book.passage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+import top.qiyuey.book.store.StorageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 长文本的内容寻址存储
+ * 超过 {@link PassageBlobProperties#getMinLength()} 的文本按 SHA-256 存为一个 blob，消息和 Checkpoint 中只保存引用，
+ * 同一原文无论出现在多少条消息、多少个 Checkpoint 和会话中都只存一份。
+ * <p>
+ * Redis 结构（blob 与其引用集合用 hash tag 放在同一槽位，由 Lua 脚本原子地登记/撤销引用）：
+ * <ul>
+ *     <li>book-agent:blobs:{hash} —— blob 内容</li>
+ *     <li>book-agent:blobs:{hash}:refs —— SET，引用方（如 messages:{threadId}），为空时删除 blob</li>
+ *     <li>book-agent:blobs:held:{引用方} —— SET，引用方持有的 hash，撤销引用时使用</li>
+ * </ul>
+ * 写入时先只登记引用，blob 不存在时才上传内容；读取时批量解析引用，并缓存最近使用的 blob。
+ * 引用的 blob 缺失时解析为 {@link #MISSING}，调用方用 {@link #isMissing(String)} 判断，不会静默变成空文本。
+ */
+@Slf4j
+@Component
+public class PassageBlobStore {
+
+    private static final String REFERENCE_PREFIX = "\u0000blob:";
+    private static final String KEY_PREFIX = "book-agent:blobs:";
+    private static final String HELD_KEY_PREFIX = "book-agent:blobs:held:";
+
+    /**
+     * blob 缺失时的解析结果
+     */
+    public static final String MISSING = "[原文缺失]";
+
+    /**
+     * 登记引用；blob 已存在返回 1，写入内容返回 2，blob 不存在且未带内容返回 0
+     */
+    private static final String ACQUIRE_SCRIPT = """
+            redis.call('SADD', KEYS[2], ARGV[1])
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                return 1
+            end
+            if #ARGV > 1 then
+                redis.call('SET', KEYS[1], ARGV[2])
+                return 2
+            end
+            return 0
+            """;
+
+    /**
+     * 撤销引用，没有其他引用时删除 blob
+     */
+    private static final String RELEASE_SCRIPT = """
+            redis.call('SREM', KEYS[2], ARGV[1])
+            if redis.call('SCARD', KEYS[2]) == 0 then
+                redis.call('DEL', KEYS[1], KEYS[2])
+                return 1
+            end
+            return 0
+            """;
+
+    private final RedissonClient redissonClient;
+    private final PassageBlobProperties properties;
+    private final boolean active;
+    private final Map<String, String> cache;
+    private final Counter storedCounter;
+    private final Counter deduplicatedCounter;
+    private final Counter missingCounter;
+
+    public PassageBlobStore(RedissonClient redissonClient, PassageBlobProperties properties,
+                            StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.redissonClient = redissonClient;
+        this.properties = properties;
+        // 嵌入式存储下消息和 Checkpoint 都在本地，改存 Redis 反而多一次网络往返
+        this.active = properties.isEnabled() && storageProperties.getType() == StorageProperties.Type.REDIS;
+        int cacheSize = Math.max(properties.getCacheSize(), 0);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.storedCounter = Counter.builder("app.passage.blob.writes")
+                .description("Long texts written as blobs")
+                .tag("result", "stored")
+                .register(meterRegistry);
+        this.deduplicatedCounter = Counter.builder("app.passage.blob.writes")
+                .description("Long texts written as blobs")
+                .tag("result", "deduplicated")
+                .register(meterRegistry);
+        this.missingCounter = Counter.builder("app.passage.blob.missing")
+                .description("References resolved to a missing blob")
+                .register(meterRegistry);
+    }
+
+    public static String messagesHolder(String threadId) {
+        return "messages:" + threadId;
+    }
+
+    public static String checkpointsHolder(String threadId) {
+        return "checkpoints:" + threadId;
+    }
+
+    public static boolean isReference(String text) {
+        return text != null && text.startsWith(REFERENCE_PREFIX);
+    }
+
+    /**
+     * 是否为缺失 blob 的解析结果，调用方只对引用的解析结果判断
+     */
+    public static boolean isMissing(String text) {
+        return MISSING.equals(text);
+    }
+
+    /**
+     * 长文本存为 blob 并登记引用方，返回引用；短文本或未启用时原样返回
+     */
+    public String externalize(String holder, String text) {
+        if (!active || text == null || text.length() < properties.getMinLength() || isReference(text)) {
+            return text;
+        }
+        return REFERENCE_PREFIX + store(holder, text);
+    }
+
+    /**
+     * 存储 blob 并登记引用方，返回内容哈希
+     */
+    public String store(String holder, String content) {
+        String hash = hash(content);
+        if (acquire(holder, hash, null) == 0) {
+            acquire(holder, hash, content);
+            storedCounter.increment();
+        } else {
+            deduplicatedCounter.increment();
+        }
+        cache.put(hash, content);
+        return hash;
+    }
+
+    /**
+     * 解析引用，非引用原样返回
+     */
+    public String resolve(String text) {
+        return isReference(text) ? resolveAll(List.of(text)).getFirst() : text;
+    }
+
+    /**
+     * 批量解析引用，未缓存的 blob 用一次 pipeline 读取；blob 缺失时解析为 {@link #MISSING}
+     */
+    public List<String> resolveAll(List<String> texts) {
+        Map<String, String> contents = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String text : texts) {
+            if (isReference(text)) {
+                String hash = text.substring(REFERENCE_PREFIX.length());
+                String cached = cache.get(hash);
+                if (cached != null) {
+                    contents.put(hash, cached);
+                } else {
+                    missing.add(hash);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            RBatch batch = redissonClient.createBatch();
+            Map<String, RFuture<String>> futures = new HashMap<>();
+            for (String hash : missing) {
+                futures.put(hash, batch.<String>getBucket(blobKey(hash), StringCodec.INSTANCE).getAsync());
+            }
+            batch.execute();
+            futures.forEach((hash, future) -> {
+                String content = future.toCompletableFuture().join();
+                if (content == null) {
+                    log.error("Blob {} not found, resolving its references as missing", hash);
+                    missingCounter.increment();
+                } else {
+                    contents.put(hash, content);
+                    cache.put(hash, content);
+                }
+            });
+        }
+        return texts.stream()
+                .map(text -> isReference(text)
+                        ? contents.getOrDefault(text.substring(REFERENCE_PREFIX.length()), MISSING)
+                        : text)
+                .toList();
+    }
+
+    /**
+     * 引用方持有的 blob 哈希
+     */
+    public Set<String> referencedBy(String holder) {
+        return redissonClient.<String>getSet(heldKey(holder), StringCodec.INSTANCE).readAll();
+    }
+
+    public String load(String hash) {
+        String cached = cache.get(hash);
+        return cached != null ? cached : redissonClient.<String>getBucket(blobKey(hash), StringCodec.INSTANCE).get();
+    }
+
+    /**
+     * 撤销引用方的所有引用，blob 没有其他引用时删除（同时移出本地缓存）
+     */
+    public void release(String holder) {
+        Set<String> hashes = referencedBy(holder);
+        if (hashes.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        Map<String, RFuture<Long>> deleted = new HashMap<>();
+        for (String hash : hashes) {
+            deleted.put(hash, batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE, RELEASE_SCRIPT,
+                    RScript.ReturnType.INTEGER, List.of(blobKey(hash), refsKey(hash)), holder));
+        }
+        batch.getSet(heldKey(holder), StringCodec.INSTANCE).deleteAsync();
+        batch.execute();
+        deleted.forEach((hash, result) -> {
+            if (result.toCompletableFuture().join() == 1) {
+                cache.remove(hash);
+            }
+        });
+    }
+
+    private long acquire(String holder, String hash, String content) {
+        Object[] args = content == null ? new Object[]{holder} : new Object[]{holder, content};
+        RBatch batch = redissonClient.createBatch();
+        RFuture<Long> result = batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE,
+                ACQUIRE_SCRIPT, RScript.ReturnType.INTEGER, List.of(blobKey(hash), refsKey(hash)), args);
+        batch.getSet(heldKey(holder), StringCodec.INSTANCE).addAsync(hash);
+        batch.execute();
+        return result.toCompletableFuture().join();
+    }
+
+    private static String hash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String blobKey(String hash) {
+        return KEY_PREFIX + "{" + hash + "}";
+    }
+
+    private static String refsKey(String hash) {
+        return blobKey(hash) + ":refs";
+    }
+
+    private static String heldKey(String holder) {
+        return HELD_KEY_PREFIX + holder;
+    }
+}
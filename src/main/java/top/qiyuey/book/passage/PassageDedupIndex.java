@@ -0,0 +1,249 @@
+package top.qiyuey.book.passage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 相似原文索引
+ * 记录解读模式下原文的 SimHash 指纹和对应解读，新请求命中相似原文时直接复用历史解读。
+ * <p>
+ * 指纹按 maxDistance + 1 个分段建立分桶：海明距离不超过 maxDistance 的两个指纹至少有一段完全相同（鸽巢原理），
+ * 因此查询只需比较同桶的少量候选，与记录总数无关。
+ * <p>
+ * 指纹不相似时再按包含度匹配：以记录的 MinHash 样本建立倒排索引，查询按新原文的三元组统计各记录样本的命中数，
+ * 命中比例达到 minContainment 且记录原文不短于新原文 minCoverage 的视为同一原文被前后多引了几句。
+ * 记录持久化在 Redis（带过期时间），启动时加载；新记录通过 Redis Topic 同步到其他节点。
+ */
+@Slf4j
+@Component
+public class PassageDedupIndex {
+
+    private static final String RECORD_MAP_KEY = "book-agent:passages:v1";
+    private static final String TOPIC_KEY = "book-agent:passages:updates";
+
+    private final RedissonClient redissonClient;
+    private final PassageDedupProperties properties;
+
+    private final Map<String, PassageRecord> records = new ConcurrentHashMap<>();
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final List<Map<Long, Set<String>>> bands;
+    private final Map<Long, Set<String>> sketches = new ConcurrentHashMap<>();
+    private final int bandBits;
+
+    public PassageDedupIndex(RedissonClient redissonClient, PassageDedupProperties properties) {
+        this.redissonClient = redissonClient;
+        this.properties = properties;
+        int bandCount = Math.clamp(properties.getMaxDistance() + 1, 1, Long.SIZE);
+        this.bandBits = Long.SIZE / bandCount;
+        this.bands = new ArrayList<>(bandCount);
+        for (int i = 0; i < bandCount; i++) {
+            bands.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * 查找相似原文的历史解读
+     */
+    public Optional<PassageRecord> findSimilar(String passage, String bookName, String modelId) {
+        int length = PassageFingerprint.normalize(passage).length();
+        if (!properties.isEnabled() || length < properties.getMinLength()) {
+            return Optional.empty();
+        }
+        long fingerprint = PassageFingerprint.simHash(passage);
+        PassageRecord best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int band = 0; band < bands.size(); band++) {
+            Set<String> candidates = bands.get(band).get(bandValue(fingerprint, band));
+            if (candidates == null) {
+                continue;
+            }
+            for (String key : candidates) {
+                PassageRecord candidate = records.get(key);
+                if (candidate == null || !matches(candidate, bookName, modelId)) {
+                    continue;
+                }
+                int distance = PassageFingerprint.distance(fingerprint, candidate.getFingerprint());
+                if (distance <= properties.getMaxDistance() && distance < bestDistance) {
+                    best = candidate;
+                    bestDistance = distance;
+                }
+            }
+        }
+        if (best != null) {
+            log.info("Found similar passage: distance={}, model={}, book={}", bestDistance, best.getModelId(), best.getBookName());
+            return Optional.of(best);
+        }
+        return findContained(passage, length, bookName, modelId);
+    }
+
+    /**
+     * 查找被新原文包含的历史原文，取包含度最高的一条
+     */
+    private Optional<PassageRecord> findContained(String passage, int length, String bookName, String modelId) {
+        long[] shingles = PassageFingerprint.shingles(passage);
+        Map<String, Integer> hits = new HashMap<>();
+        for (long shingle : shingles) {
+            Set<String> keys = sketches.get(shingle);
+            if (keys != null) {
+                keys.forEach(key -> hits.merge(key, 1, Integer::sum));
+            }
+        }
+        PassageRecord best = null;
+        double bestContainment = 0;
+        for (Map.Entry<String, Integer> hit : hits.entrySet()) {
+            PassageRecord candidate = records.get(hit.getKey());
+            if (candidate == null || candidate.getSketch() == null || !matches(candidate, bookName, modelId)
+                    || candidate.getLength() < length * properties.getMinCoverage()) {
+                continue;
+            }
+            double containment = (double) hit.getValue() / candidate.getSketch().length;
+            if (containment >= properties.getMinContainment() && containment > bestContainment) {
+                best = candidate;
+                bestContainment = containment;
+            }
+        }
+        if (best != null) {
+            log.info("Found containing passage: containment={}, model={}, book={}",
+                    bestContainment, best.getModelId(), best.getBookName());
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * 记录一次完整的解读，并同步到 Redis 和其他节点
+     */
+    public void record(String passage, String bookName, String modelId, String interpretation) {
+        int length = PassageFingerprint.normalize(passage).length();
+        if (!properties.isEnabled() || length < properties.getMinLength()) {
+            return;
+        }
+        PassageRecord record = new PassageRecord(PassageFingerprint.simHash(passage), bookName, modelId,
+                interpretation, System.currentTimeMillis(),
+                PassageFingerprint.sketch(PassageFingerprint.shingles(passage)), length);
+        String key = keyOf(record);
+        add(key, record);
+
+        Mono.fromRunnable(() -> {
+                    recordMap().fastPut(key, record, properties.getTtl().toMillis(), TimeUnit.MILLISECONDS);
+                    redissonClient.getTopic(TOPIC_KEY, StringCodec.INSTANCE).publish(key);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, error -> log.error("Failed to persist passage record {}", key, error));
+    }
+
+    /**
+     * 启动后在后台加载 Redis 中的记录，并订阅其他节点的新增记录
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        RTopic topic = redissonClient.getTopic(TOPIC_KEY, StringCodec.INSTANCE);
+        topic.addListener(String.class, (_, key) -> {
+            if (!records.containsKey(key)) {
+                PassageRecord record = recordMap().get(key);
+                if (record != null) {
+                    add(key, record);
+                }
+            }
+        });
+        Mono.fromRunnable(() -> {
+                    long start = System.currentTimeMillis();
+                    recordMap().forEach(this::add);
+                    log.info("Loaded {} passage records in {}ms", records.size(), System.currentTimeMillis() - start);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, error -> log.error("Failed to load passage records", error));
+    }
+
+    private void add(String key, PassageRecord record) {
+        if (records.put(key, record) == null) {
+            insertionOrder.add(key);
+            for (int band = 0; band < bands.size(); band++) {
+                bands.get(band)
+                        .computeIfAbsent(bandValue(record.getFingerprint(), band), _ -> ConcurrentHashMap.newKeySet())
+                        .add(key);
+            }
+            if (record.getSketch() != null) {
+                for (long hash : record.getSketch()) {
+                    sketches.computeIfAbsent(hash, _ -> ConcurrentHashMap.newKeySet()).add(key);
+                }
+            }
+        }
+        while (records.size() > properties.getMaxEntries()) {
+            String eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            evict(eldest);
+        }
+    }
+
+    private void evict(String key) {
+        PassageRecord removed = records.remove(key);
+        if (removed == null) {
+            return;
+        }
+        for (int band = 0; band < bands.size(); band++) {
+            bands.get(band).computeIfPresent(bandValue(removed.getFingerprint(), band), (_, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+        if (removed.getSketch() != null) {
+            for (long hash : removed.getSketch()) {
+                sketches.computeIfPresent(hash, (_, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+        }
+    }
+
+    private boolean matches(PassageRecord candidate, String bookName, String modelId) {
+        if (properties.isSameModelOnly() && !candidate.getModelId().equals(modelId)) {
+            return false;
+        }
+        // 双方都指定了书名时必须一致
+        return bookName == null || bookName.isBlank()
+                || candidate.getBookName() == null || candidate.getBookName().isBlank()
+                || bookName.equals(candidate.getBookName());
+    }
+
+    private long bandValue(long fingerprint, int band) {
+        long mask = bandBits == Long.SIZE ? -1L : (1L << bandBits) - 1;
+        return (fingerprint >>> (band * bandBits)) & mask;
+    }
+
+    private RMapCache<String, PassageRecord> recordMap() {
+        return redissonClient.getMapCache(RECORD_MAP_KEY);
+    }
+
+    /**
+     * 同一原文在不同书中的解读各自保留，不会互相覆盖
+     */
+    private static String keyOf(PassageRecord record) {
+        String bookName = record.getBookName() == null ? "" : record.getBookName();
+        return Long.toHexString(record.getFingerprint()) + ":" + record.getModelId() + ":" + bookName;
+    }
+}
@@ -0,0 +1,56 @@
+package top.qiyuey.book.passage;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 相似原文去重配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.passage-dedup")
+public class PassageDedupProperties {
+
+    /**
+     * 是否复用相似原文的历史解读
+     */
+    private boolean enabled = true;
+
+    /**
+     * 判定为相似原文的最大海明距离（64 位 SimHash），越小越严格
+     */
+    private int maxDistance = 3;
+
+    /**
+     * 指纹不相似时，历史原文被新原文包含的程度（MinHash 样本命中比例）达到该值也视为同一原文，用于识别前后多引了几句的情况
+     */
+    private double minContainment = 0.9;
+
+    /**
+     * 按包含度匹配时，历史原文长度占新原文长度的最小比例，避免短句被长篇大段引用时误匹配
+     */
+    private double minCoverage = 0.5;
+
+    /**
+     * 参与去重的最短原文长度（归一化后字符数），过短的文本指纹不可靠
+     */
+    private int minLength = 20;
+
+    /**
+     * 内存中保留的最大记录数，超出后淘汰最早的记录
+     */
+    private int maxEntries = 100_000;
+
+    /**
+     * 是否只复用同一模型生成的解读
+     */
+    private boolean sameModelOnly = true;
+
+    /**
+     * 记录在 Redis 中的保留时间
+     */
+    private Duration ttl = Duration.ofDays(30);
+}
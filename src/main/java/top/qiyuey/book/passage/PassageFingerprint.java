@@ -0,0 +1,126 @@
+package top.qiyuey.book.passage;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 原文 SimHash 指纹和 MinHash 样本
+ * 文本经 NFKC 归一化（全角转半角）、转小写并去掉空白和标点后，按字符三元组计算 64 位 SimHash。
+ * 标点、空白、全半角不同的同一段原文得到相同指纹，个别字词不同的原文指纹的海明距离也很小。
+ * <p>
+ * 前后多引了几句的原文 SimHash 相差较大，改用包含度判断：取原文三元组哈希中最小的 {@link #SKETCH_SIZE} 个作为样本，
+ * 样本落在新文本三元组中的比例即原文被新文本包含程度的估计。
+ */
+public final class PassageFingerprint {
+
+    private static final int SHINGLE_SIZE = 3;
+    /**
+     * MinHash 样本大小（bottom-k）
+     */
+    public static final int SKETCH_SIZE = 16;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private PassageFingerprint() {
+    }
+
+    /**
+     * 归一化文本：只保留字母和数字
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(normalized.length());
+        normalized.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(sb::appendCodePoint);
+        return sb.toString();
+    }
+
+    /**
+     * 计算文本的 64 位 SimHash
+     */
+    public static long simHash(String text) {
+        int[] cps = normalize(text).codePoints().toArray();
+        if (cps.length == 0) {
+            return 0L;
+        }
+        int[] weights = new int[Long.SIZE];
+        int shingles = Math.max(1, cps.length - SHINGLE_SIZE + 1);
+        for (int i = 0; i < shingles; i++) {
+            long hash = hash(cps, i, Math.min(SHINGLE_SIZE, cps.length - i));
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                weights[bit] += ((hash >>> bit) & 1L) == 1L ? 1 : -1;
+            }
+        }
+        long fingerprint = 0L;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 文本的字符三元组哈希，去重后升序排列
+     */
+    public static long[] shingles(String text) {
+        int[] cps = normalize(text).codePoints().toArray();
+        if (cps.length == 0) {
+            return new long[0];
+        }
+        long[] hashes = new long[Math.max(1, cps.length - SHINGLE_SIZE + 1)];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(cps, i, Math.min(SHINGLE_SIZE, cps.length - i));
+        }
+        return Arrays.stream(hashes).sorted().distinct().toArray();
+    }
+
+    /**
+     * 从升序的三元组哈希中取最小的 {@link #SKETCH_SIZE} 个作为 MinHash 样本
+     */
+    public static long[] sketch(long[] shingles) {
+        return Arrays.copyOf(shingles, Math.min(SKETCH_SIZE, shingles.length));
+    }
+
+    /**
+     * 样本中出现在另一文本三元组（升序）里的比例，估计样本所属原文被该文本包含的程度
+     */
+    public static double containment(long[] sketch, long[] shingles) {
+        if (sketch.length == 0) {
+            return 0;
+        }
+        int hits = 0;
+        for (long hash : sketch) {
+            if (Arrays.binarySearch(shingles, hash) >= 0) {
+                hits++;
+            }
+        }
+        return (double) hits / sketch.length;
+    }
+
+    /**
+     * 两个指纹的海明距离
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * FNV-1a 后接 splitmix64 混淆，保证各比特分布均匀
+     */
+    private static long hash(int[] cps, int offset, int length) {
+        long h = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= cps[i];
+            h *= FNV_PRIME;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,29 @@
+package top.qiyuey.book.passage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 已解读原文的记录
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PassageRecord implements Serializable {
+    private long fingerprint;
+    private String bookName;
+    private String modelId;
+    private String interpretation;
+    private long createdAt;
+    /**
+     * 原文的 MinHash 样本，用于识别前后多引了几句的同一原文；旧记录没有样本，只按指纹匹配
+     */
+    private long[] sketch;
+    /**
+     * 原文归一化后的长度
+     */
+    private int length;
+}
@@ -0,0 +1,34 @@
+package top.qiyuey.book.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 一批连续的增量文本，持续时间为批内首个到最后一个 chunk 的间隔
+ */
+@Name("top.qiyuey.book.AskChunkBatch")
+@Label("Ask Chunk Batch")
+@Category({"Book Agent", "Ask"})
+@Description("A batch of consecutive streamed chunks")
+@StackTrace(false)
+class AskChunkBatchEvent extends Event {
+
+    @Label("Thread ID")
+    String threadId;
+
+    @Label("Model")
+    String modelId;
+
+    @Label("Sequence")
+    int sequence;
+
+    @Label("Chunks")
+    int chunks;
+
+    @Label("Characters")
+    long characters;
+}
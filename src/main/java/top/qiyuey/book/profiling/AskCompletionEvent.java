@@ -0,0 +1,43 @@
+package top.qiyuey.book.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 单个模型回答一轮问答的全过程，持续时间从开始调用模型到流结束
+ */
+@Name("top.qiyuey.book.AskCompletion")
+@Label("Ask Completion")
+@Category({"Book Agent", "Ask"})
+@Description("A model answering one ask, from the model call to the end of the stream")
+@StackTrace(false)
+class AskCompletionEvent extends Event {
+
+    @Label("Thread ID")
+    String threadId;
+
+    @Label("Model")
+    String modelId;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Chunks")
+    int chunks;
+
+    @Label("Characters")
+    long characters;
+
+    @Label("Prompt Tokens")
+    long promptTokens;
+
+    @Label("Completion Tokens")
+    long completionTokens;
+}
@@ -0,0 +1,28 @@
+package top.qiyuey.book.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 从开始调用模型到收到首个增量文本，持续时间即 TTFT
+ */
+@Name("top.qiyuey.book.AskFirstToken")
+@Label("Ask First Token")
+@Category({"Book Agent", "Ask"})
+@Description("Time from starting the model call to the first streamed token")
+@StackTrace(false)
+class AskFirstTokenEvent extends Event {
+
+    @Label("Thread ID")
+    String threadId;
+
+    @Label("Model")
+    String modelId;
+
+    @Label("Mode")
+    String mode;
+}
@@ -0,0 +1,34 @@
+package top.qiyuey.book.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 问答流水线中的同步阶段：对话记录读写（bookkeeping）、Agent 创建与流组装（agent-create）、回答持久化（persist）
+ */
+@Name("top.qiyuey.book.AskStage")
+@Label("Ask Stage")
+@Category({"Book Agent", "Ask"})
+@Description("A synchronous stage of the ask pipeline")
+@StackTrace(false)
+public class AskStageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Thread ID")
+    String threadId;
+
+    @Label("Model")
+    String modelId;
+
+    public AskStageEvent(String stage, String threadId, String modelId) {
+        this.stage = stage;
+        this.threadId = threadId;
+        this.modelId = modelId;
+    }
+}
@@ -0,0 +1,105 @@
+package top.qiyuey.book.profiling;
+
+import java.util.function.Supplier;
+
+/**
+ * 单个模型回答一轮问答的 JFR 事件记录
+ * 首个 chunk 提交 {@link AskFirstTokenEvent}，之后每 {@value #CHUNK_BATCH_SIZE} 个 chunk 提交一个
+ * {@link AskChunkBatchEvent}，流结束时提交 {@link AskCompletionEvent}。没有录制时事件不写出，开销可忽略。
+ * <p>
+ * 流中的信号串行到达，非线程安全。
+ */
+public final class AskTrace {
+
+    private static final int CHUNK_BATCH_SIZE = 32;
+
+    private final String threadId;
+    private final String modelId;
+    private final AskFirstTokenEvent firstToken = new AskFirstTokenEvent();
+    private final AskCompletionEvent completion = new AskCompletionEvent();
+    private AskChunkBatchEvent batch;
+    private int batches;
+    private int chunks;
+    private long characters;
+
+    private AskTrace(String threadId, String modelId, String mode) {
+        this.threadId = threadId;
+        this.modelId = modelId;
+        firstToken.threadId = threadId;
+        firstToken.modelId = modelId;
+        firstToken.mode = mode;
+        completion.threadId = threadId;
+        completion.modelId = modelId;
+        completion.mode = mode;
+    }
+
+    /**
+     * 开始调用模型时创建
+     */
+    public static AskTrace start(String threadId, String modelId, String mode) {
+        AskTrace trace = new AskTrace(threadId, modelId, mode);
+        trace.firstToken.begin();
+        trace.completion.begin();
+        return trace;
+    }
+
+    /**
+     * 记录一个同步阶段
+     */
+    public static <T> T stage(String stage, String threadId, String modelId, Supplier<T> action) {
+        AskStageEvent event = new AskStageEvent(stage, threadId, modelId);
+        event.begin();
+        try {
+            return action.get();
+        } finally {
+            event.commit();
+        }
+    }
+
+    public static void runStage(String stage, String threadId, String modelId, Runnable action) {
+        stage(stage, threadId, modelId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public void onChunk(String text) {
+        if (chunks++ == 0) {
+            firstToken.commit();
+        }
+        if (batch == null) {
+            batch = new AskChunkBatchEvent();
+            batch.begin();
+        }
+        int length = text != null ? text.length() : 0;
+        characters += length;
+        batch.chunks++;
+        batch.characters += length;
+        if (batch.chunks == CHUNK_BATCH_SIZE) {
+            commitBatch();
+        }
+    }
+
+    /**
+     * @param outcome 流的结束信号，如 onComplete、onError、cancel
+     */
+    public void complete(String outcome, long promptTokens, long completionTokens) {
+        if (batch != null) {
+            commitBatch();
+        }
+        completion.outcome = outcome;
+        completion.chunks = chunks;
+        completion.characters = characters;
+        completion.promptTokens = promptTokens;
+        completion.completionTokens = completionTokens;
+        completion.commit();
+    }
+
+    private void commitBatch() {
+        batch.threadId = threadId;
+        batch.modelId = modelId;
+        batch.sequence = batches++;
+        batch.commit();
+        batch = null;
+    }
+}
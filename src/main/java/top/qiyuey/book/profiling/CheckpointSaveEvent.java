@@ -0,0 +1,26 @@
+package top.qiyuey.book.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Agent Checkpoint 写入持久层
+ */
+@Name("top.qiyuey.book.CheckpointSave")
+@Label("Checkpoint Save")
+@Category({"Book Agent", "Checkpoint"})
+@Description("An agent checkpoint written to the persistent store")
+@StackTrace(false)
+public class CheckpointSaveEvent extends Event {
+
+    @Label("Thread ID")
+    String threadId;
+
+    public CheckpointSaveEvent(String threadId) {
+        this.threadId = threadId;
+    }
+}
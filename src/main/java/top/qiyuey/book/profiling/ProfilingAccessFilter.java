@@ -0,0 +1,57 @@
+package top.qiyuey.book.profiling;
+
+import org.springframework.boot.actuate.autoconfigure.endpoint.web.WebEndpointProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * /actuator/profiling 的访问控制
+ * 要求 Authorization: Bearer {app.profiling.token}，未配置令牌时返回 404，令牌错误返回 401。
+ * 令牌按常量时间比较。
+ * 路径按 PathPattern 匹配应用内路径（解码并去除 ;参数），与 actuator 的处理器映射保持一致，
+ * 避免 /actuator/profiling;x 或 /actuator/%70rofiling 之类的写法绕过校验。
+ */
+@Component
+public class ProfilingAccessFilter implements WebFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final ProfilingProperties properties;
+    private final PathPattern pattern;
+
+    public ProfilingAccessFilter(ProfilingProperties properties, WebEndpointProperties webEndpointProperties) {
+        this.properties = properties;
+        this.pattern = PathPatternParser.defaultInstance.parse(webEndpointProperties.getBasePath() + "/profiling/**");
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!pattern.matches(exchange.getRequest().getPath().pathWithinApplication())) {
+            return chain.filter(exchange);
+        }
+        if (!StringUtils.hasText(properties.getToken())) {
+            exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
+            return exchange.getResponse().setComplete();
+        }
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX) || !MessageDigest.isEqual(
+                authorization.substring(BEARER_PREFIX.length()).getBytes(StandardCharsets.UTF_8),
+                properties.getToken().getBytes(StandardCharsets.UTF_8))) {
+            exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+            exchange.getResponse().getHeaders().set(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            return exchange.getResponse().setComplete();
+        }
+        return chain.filter(exchange);
+    }
+}
@@ -0,0 +1,141 @@
+package top.qiyuey.book.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.OptionalParameter;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * 按需 JFR 录制（/actuator/profiling），无需重启或挂载 agent 即可分析线上实例
+ * <ul>
+ *     <li>POST —— 开始录制，可选参数 settings（default 或 profile）和 duration（不超过上限）</li>
+ *     <li>GET —— 录制状态</li>
+ *     <li>DELETE —— 停止录制并下载 .jfr 文件（到期自动停止的录制同样可下载）</li>
+ * </ul>
+ * 同一时间只有一个录制；访问由 {@link ProfilingAccessFilter} 校验令牌。
+ */
+@Slf4j
+@Component
+@Endpoint(id = "profiling")
+public class ProfilingEndpoint implements DisposableBean {
+
+    private static final String RECORDING_NAME = "book-agent-profiling";
+
+    private final ProfilingProperties properties;
+    private Recording recording;
+    private Instant startedAt;
+    private Path lastDump;
+
+    public ProfilingEndpoint(ProfilingProperties properties) {
+        this.properties = properties;
+    }
+
+    @ReadOperation
+    public synchronized ProfilingStatus status() {
+        if (recording == null) {
+            return new ProfilingStatus(RecordingState.NEW.name(), null, null, null, 0);
+        }
+        return new ProfilingStatus(recording.getState().name(), recording.getName(), startedAt,
+                recording.getDuration(), recording.getSize());
+    }
+
+    @WriteOperation
+    public synchronized WebEndpointResponse<ProfilingStatus> start(@OptionalParameter String settings,
+                                                                   @OptionalParameter Duration duration) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return new WebEndpointResponse<>(status(), WebEndpointResponse.STATUS_CONFLICT);
+        }
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings != null ? settings : properties.getSettings());
+        } catch (IOException | ParseException e) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+        closeRecording();
+
+        Duration limit = duration == null || duration.compareTo(properties.getMaxDuration()) > 0
+                ? properties.getMaxDuration()
+                : duration;
+        Recording newRecording = new Recording(configuration);
+        newRecording.setName(RECORDING_NAME);
+        newRecording.setToDisk(true);
+        newRecording.setDuration(limit);
+        newRecording.setMaxSize(properties.getMaxSize().toBytes());
+        newRecording.start();
+        recording = newRecording;
+        startedAt = Instant.now();
+        log.info("Started JFR recording: settings={}, duration={}", configuration.getName(), limit);
+        return new WebEndpointResponse<>(status());
+    }
+
+    @DeleteOperation(produces = "application/octet-stream")
+    public synchronized WebEndpointResponse<Resource> stop() throws IOException {
+        if (recording == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+        }
+        deleteLastDump();
+        lastDump = Files.createTempFile(RECORDING_NAME + "-", ".jfr");
+        recording.dump(lastDump);
+        log.info("Stopped JFR recording, {} bytes", Files.size(lastDump));
+        closeRecording();
+        return new WebEndpointResponse<>(new FileSystemResource(lastDump));
+    }
+
+    @Override
+    public synchronized void destroy() {
+        closeRecording();
+        deleteLastDump();
+    }
+
+    private void closeRecording() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+            startedAt = null;
+        }
+    }
+
+    /**
+     * 只保留最近一次导出的文件，下载完成前不会被删除（下一次导出时才删除）
+     */
+    private void deleteLastDump() {
+        if (lastDump != null) {
+            try {
+                Files.deleteIfExists(lastDump);
+            } catch (IOException e) {
+                log.warn("Failed to delete JFR dump {}", lastDump, e);
+            }
+            lastDump = null;
+        }
+    }
+
+    /**
+     * 录制状态
+     *
+     * @param state    NEW（无录制）、RUNNING、STOPPED（到期自动停止，可下载）
+     * @param duration 录制时长上限
+     * @param size     已录制的字节数
+     */
+    public record ProfilingStatus(String state, String name, Instant startedAt, Duration duration, long size) {
+    }
+}
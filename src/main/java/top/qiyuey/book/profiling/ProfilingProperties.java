@@ -0,0 +1,37 @@
+package top.qiyuey.book.profiling;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 按需 JFR 录制配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.profiling")
+public class ProfilingProperties {
+
+    /**
+     * 访问 /actuator/profiling 所需的 Bearer 令牌，为空时拒绝所有访问
+     */
+    private String token;
+
+    /**
+     * 录制时长上限，到期自动停止
+     */
+    private Duration maxDuration = Duration.ofMinutes(5);
+
+    /**
+     * 录制数据大小上限，超出后丢弃最早的数据
+     */
+    private DataSize maxSize = DataSize.ofMegabytes(100);
+
+    /**
+     * 默认的 JFR 预设配置：default（约 1% 开销）或 profile（含方法采样，开销约 2%）
+     */
+    private String settings = "profile";
+}
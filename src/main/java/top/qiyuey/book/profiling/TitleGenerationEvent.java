@@ -0,0 +1,26 @@
+package top.qiyuey.book.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 后台生成对话标题的模型调用
+ */
+@Name("top.qiyuey.book.TitleGeneration")
+@Label("Title Generation")
+@Category({"Book Agent", "Thread"})
+@Description("Background model call generating a thread title")
+@StackTrace(false)
+public class TitleGenerationEvent extends Event {
+
+    @Label("Thread ID")
+    String threadId;
+
+    public TitleGenerationEvent(String threadId) {
+        this.threadId = threadId;
+    }
+}
@@ -0,0 +1,293 @@
+package top.qiyuey.book.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.DoubleCodec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.client.protocol.ScoredEntry;
+import org.redisson.codec.CompositeCodec;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 对话历史倒排索引（存储于 Redis，多节点共享）
+ * <ul>
+ *     <li>postings:{term} —— ZSET，member 为 threadId，score 为该词在对话中的加权词频</li>
+ *     <li>content-terms:{threadId} —— SET，对话消息贡献过的词，删除对话时用于清理倒排表</li>
+ *     <li>meta-terms:{threadId} —— HASH，标题和书名贡献的词及权重，标题变更时用于扣减旧权重</li>
+ * </ul>
+ * 查询时每个词只读取得分最高的 {@link #MAX_POSTINGS_PER_TERM} 条记录，因此延迟只与查询词数有关，与历史总量无关。
+ * 写入均异步执行，不阻塞问答请求。元数据更新是"读旧权重、扣减、写新权重"，涉及的倒排表分布在不同槽位无法用一个脚本完成，
+ * 因此同一对话的元数据更新和删除以分布式锁串行执行，避免并发更新重复扣减或叠加权重。
+ */
+@Slf4j
+@Component
+public class HistorySearchIndex {
+
+    private static final String KEY_PREFIX = "book-agent:search:";
+    private static final String VERSION_KEY = KEY_PREFIX + "version";
+    private static final String REBUILD_LOCK_KEY = KEY_PREFIX + "rebuild";
+    /**
+     * 分词方式变化时递增，启动时按新版本重建索引
+     */
+    private static final String INDEX_VERSION = "2";
+
+    private static final double TITLE_WEIGHT = 3.0;
+    private static final double BOOK_NAME_WEIGHT = 2.0;
+    private static final double CONTENT_WEIGHT = 1.0;
+
+    private static final int MAX_POSTINGS_PER_TERM = 1000;
+    private static final double BM25_K = 1.2;
+
+    private final RedissonClient redissonClient;
+
+    public HistorySearchIndex(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    /**
+     * 索引一条新消息的内容（异步）
+     */
+    public void indexContent(String threadId, String content) {
+        runAsync("index content of " + threadId, () -> doIndexContent(threadId, content));
+    }
+
+    /**
+     * 重新索引对话的标题和书名（异步），扣减旧的权重后写入新的权重
+     */
+    public void indexMetadata(String threadId, String title, String bookName) {
+        runAsync("index metadata of " + threadId, () -> doIndexMetadata(threadId, title, bookName));
+    }
+
+    /**
+     * 从索引中移除对话（异步）
+     */
+    public void remove(String threadId) {
+        runAsync("remove " + threadId, () -> doRemove(threadId));
+    }
+
+    /**
+     * 在后台按顺序重建给定对话的索引，用于首次启用搜索时回填已有历史。
+     * 只有获得锁的节点执行，全部完成后才记录版本；中途失败不记录，下次启动时重试
+     */
+    public void rebuild(Iterable<Document> documents) {
+        runAsync("rebuild", () -> {
+            RLock lock = redissonClient.getLock(REBUILD_LOCK_KEY);
+            if (!lock.tryLock()) {
+                log.info("Search index rebuild is running on another node");
+                return;
+            }
+            try {
+                if (isBuilt()) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                int count = doReindex(documents);
+                redissonClient.<String>getBucket(VERSION_KEY, StringCodec.INSTANCE).set(INDEX_VERSION);
+                log.info("Rebuilt search index for {} threads in {}ms", count, System.currentTimeMillis() - start);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * 按顺序重新索引给定对话（异步），用于导入等批量写入后刷新已建好的索引
+     */
+    public void reindex(Iterable<Document> documents) {
+        runAsync("reindex", () -> doReindex(documents));
+    }
+
+    private int doReindex(Iterable<Document> documents) {
+        int count = 0;
+        for (Document document : documents) {
+            doRemove(document.threadId());
+            doIndexMetadata(document.threadId(), document.title(), document.bookName());
+            for (String content : document.contents().get()) {
+                doIndexContent(document.threadId(), content);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private void doIndexContent(String threadId, String content) {
+        Map<String, Integer> frequencies = SearchTokenizer.termFrequencies(content);
+        if (frequencies.isEmpty()) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        frequencies.forEach((term, count) -> batch.getScoredSortedSet(postingsKey(term), StringCodec.INSTANCE)
+                .addScoreAsync(threadId, CONTENT_WEIGHT * (1 + Math.log(count))));
+        batch.getSet(contentTermsKey(threadId), StringCodec.INSTANCE).addAllAsync(frequencies.keySet());
+        batch.execute();
+    }
+
+    private void doIndexMetadata(String threadId, String title, String bookName) {
+        Map<String, Double> weights = new HashMap<>();
+        SearchTokenizer.termFrequencies(title).forEach((term, _) -> weights.merge(term, TITLE_WEIGHT, Double::sum));
+        SearchTokenizer.termFrequencies(bookName).forEach((term, _) -> weights.merge(term, BOOK_NAME_WEIGHT, Double::sum));
+
+        withThreadLock(threadId, () -> replaceMetadata(threadId, weights));
+    }
+
+    private void replaceMetadata(String threadId, Map<String, Double> weights) {
+        Map<String, Double> previous = metaTermsMap(threadId).readAllMap();
+
+        RBatch batch = redissonClient.createBatch();
+        previous.forEach((term, weight) -> batch.getScoredSortedSet(postingsKey(term), StringCodec.INSTANCE)
+                .addScoreAsync(threadId, -weight));
+        weights.forEach((term, weight) -> batch.getScoredSortedSet(postingsKey(term), StringCodec.INSTANCE)
+                .addScoreAsync(threadId, weight));
+        var metaTerms = batch.getMap(metaTermsKey(threadId), metaCodec());
+        metaTerms.deleteAsync();
+        if (!weights.isEmpty()) {
+            metaTerms.putAllAsync(weights);
+        }
+        batch.execute();
+    }
+
+    private void doRemove(String threadId) {
+        withThreadLock(threadId, () -> removeTerms(threadId));
+    }
+
+    private void removeTerms(String threadId) {
+        Set<String> terms = new HashSet<>(
+                redissonClient.<String>getSet(contentTermsKey(threadId), StringCodec.INSTANCE).readAll());
+        terms.addAll(metaTermsMap(threadId).readAllKeySet());
+        if (terms.isEmpty()) {
+            return;
+        }
+
+        RBatch batch = redissonClient.createBatch();
+        terms.forEach(term -> batch.getScoredSortedSet(postingsKey(term), StringCodec.INSTANCE).removeAsync(threadId));
+        batch.getSet(contentTermsKey(threadId), StringCodec.INSTANCE).deleteAsync();
+        batch.getMap(metaTermsKey(threadId), metaCodec()).deleteAsync();
+        batch.execute();
+    }
+
+    /**
+     * 按相关度检索对话
+     *
+     * @param query      查询文本
+     * @param totalDocs  对话总数，用于计算 IDF
+     * @param maxResults 最多返回的结果数
+     * @return 按得分降序排列的命中结果
+     */
+    public List<Hit> search(String query, long totalDocs, int maxResults) {
+        List<String> terms = SearchTokenizer.queryTerms(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        RBatch batch = redissonClient.createBatch();
+        List<RFuture<Collection<ScoredEntry<String>>>> postings = new ArrayList<>(terms.size());
+        List<RFuture<Integer>> sizes = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            var set = batch.<String>getScoredSortedSet(postingsKey(term), StringCodec.INSTANCE);
+            postings.add(set.entryRangeReversedAsync(0, MAX_POSTINGS_PER_TERM - 1));
+            sizes.add(set.sizeAsync());
+        }
+        batch.execute();
+
+        Map<String, double[]> scores = new HashMap<>();
+        long docs = Math.max(totalDocs, 1);
+        for (int i = 0; i < terms.size(); i++) {
+            int df = sizes.get(i).toCompletableFuture().join();
+            if (df == 0) {
+                continue;
+            }
+            double idf = Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+            for (ScoredEntry<String> entry : postings.get(i).toCompletableFuture().join()) {
+                double tf = entry.getScore();
+                if (tf <= 0) {
+                    continue;
+                }
+                double[] acc = scores.computeIfAbsent(entry.getValue(), _ -> new double[2]);
+                acc[0] += idf * tf * (BM25_K + 1) / (tf + BM25_K);
+                acc[1] += 1;
+            }
+        }
+
+        // 覆盖的查询词越多排名越靠前，近似短语匹配
+        int termCount = terms.size();
+        return scores.entrySet().stream()
+                .map(e -> {
+                    double coverage = e.getValue()[1] / termCount;
+                    return new Hit(e.getKey(), e.getValue()[0] * coverage * coverage);
+                })
+                .sorted(Comparator.comparingDouble(Hit::score).reversed())
+                .limit(maxResults)
+                .toList();
+    }
+
+    /**
+     * 索引是否已按当前版本完整构建
+     */
+    public boolean isBuilt() {
+        return INDEX_VERSION.equals(redissonClient.<String>getBucket(VERSION_KEY, StringCodec.INSTANCE).get());
+    }
+
+    private void runAsync(String action, Runnable task) {
+        Mono.fromRunnable(task)
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, error -> log.error("Search index failed to {}", action, error));
+    }
+
+    private void withThreadLock(String threadId, Runnable task) {
+        RLock lock = redissonClient.getLock(KEY_PREFIX + "lock:" + threadId);
+        lock.lock();
+        try {
+            task.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private RMap<String, Double> metaTermsMap(String threadId) {
+        return redissonClient.getMap(metaTermsKey(threadId), metaCodec());
+    }
+
+    private static CompositeCodec metaCodec() {
+        return new CompositeCodec(StringCodec.INSTANCE, DoubleCodec.INSTANCE);
+    }
+
+    private static String postingsKey(String term) {
+        return KEY_PREFIX + "postings:" + term;
+    }
+
+    private static String contentTermsKey(String threadId) {
+        return KEY_PREFIX + "content-terms:" + threadId;
+    }
+
+    private static String metaTermsKey(String threadId) {
+        return KEY_PREFIX + "meta-terms:" + threadId;
+    }
+
+    /**
+     * 检索命中
+     */
+    public record Hit(String threadId, double score) {
+    }
+
+    /**
+     * 待重建索引的对话，消息内容按需加载
+     */
+    public record Document(String threadId, String title, String bookName, Supplier<List<String>> contents) {
+    }
+}
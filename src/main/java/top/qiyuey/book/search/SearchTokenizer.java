@@ -0,0 +1,81 @@
+package top.qiyuey.book.search;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 搜索分词器
+ * 文本先做 NFKC 归一化（全角转半角）并转小写；
+ * 中日韩文字切分为相邻二元组，其他字母数字按连续片段切分为词。
+ * 建索引时中日韩文字另外逐字索引单字，查询时只有单字成段才用单字，因此单字查询也能命中，多字查询仍按二元组匹配
+ */
+public final class SearchTokenizer {
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 建索引用：分词并统计词频，中日韩文字同时产生单字和二元组
+     */
+    public static Map<String, Integer> termFrequencies(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 查询用：中日韩文字按二元组切分，单字成段时用单字
+     */
+    public static List<String> queryTerms(String text) {
+        return List.copyOf(tokenize(text, false).keySet());
+    }
+
+    private static Map<String, Integer> tokenize(String text, boolean unigrams) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (text == null || text.isBlank()) {
+            return frequencies;
+        }
+        int[] cps = Normalizer.normalize(text, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT)
+                .codePoints()
+                .toArray();
+
+        int i = 0;
+        while (i < cps.length) {
+            if (isCjk(cps[i])) {
+                int end = i;
+                while (end < cps.length && isCjk(cps[end])) {
+                    end++;
+                }
+                if (end - i == 1 || unigrams) {
+                    for (int k = i; k < end; k++) {
+                        frequencies.merge(new String(cps, k, 1), 1, Integer::sum);
+                    }
+                }
+                for (int k = i; k + 1 < end; k++) {
+                    frequencies.merge(new String(cps, k, 2), 1, Integer::sum);
+                }
+                i = end;
+            } else if (Character.isLetterOrDigit(cps[i])) {
+                int end = i;
+                while (end < cps.length && Character.isLetterOrDigit(cps[end]) && !isCjk(cps[end])) {
+                    end++;
+                }
+                frequencies.merge(new String(cps, i, end - i), 1, Integer::sum);
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return frequencies;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,769 @@
+package top.qiyuey.book.store;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 追加写日志：内存映射的分段文件 + 内存索引，用于单节点的嵌入式存储
+ * <p>
+ * 支持两种数据：值（put/get/delete）和只追加的列表（append/list/last/replaceList/trimList）。所有修改都追加到当前分段末尾，
+ * 内存索引记录每个键最新数据的位置，读取直接访问映射内存，不经过系统调用。
+ * <p>
+ * 记录格式：{@code [长度 int][CRC32C int][操作 byte][键长 short][键][数据]}，长度和校验覆盖操作到数据的部分。
+ * 分段文件预分配并以 0 填充，长度为 0 表示分段结束。
+ * <ul>
+ *     <li>崩溃恢复：启动时按顺序重放所有分段重建索引，遇到校验失败的记录视为写入中断，截断最后一个分段的剩余部分</li>
+ *     <li>压缩：已写满的分段中失效数据占比超过阈值时，将其中仍有效的数据重写到当前分段，再删除该分段；
+ *     列表整体重写为 replaceList 记录以保持元素顺序</li>
+ *     <li>超过单条记录上限的列表拆成多个连续的分片记录，重放时全部分片读到才生效，中断的分片序列被丢弃</li>
+ * </ul>
+ * 读操作共享读锁，写入和压缩持有写锁。
+ */
+@Slf4j
+public final class AppendOnlyLog implements Closeable {
+
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+    private static final int BODY_PREFIX_SIZE = 3;
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+    private static final byte[] EMPTY = new byte[0];
+    /**
+     * 分片记录比单个元素多出的开销：分片序号、分片数、元素数、元素长度
+     */
+    private static final int PART_OVERHEAD = 4 * Integer.BYTES;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte APPEND = 3;
+    private static final byte REPLACE_LIST = 4;
+    private static final byte LIST_PART = 5;
+    /**
+     * 旧格式的截断记录，数据为相对的丢弃元素数；只在重放已有日志时识别，新的截断写 {@link #KEEP_LAST}
+     */
+    private static final byte TRIM_LIST = 6;
+    /**
+     * 截断记录，数据为保留的末尾元素数；与之前的元素是否已被压缩回收无关，重放结果不变
+     */
+    private static final byte KEEP_LAST = 7;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+    private final long segmentSize;
+    private final double compactionThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<String, Entry> index = new HashMap<>();
+    private final Disposable syncTask;
+    private final Disposable compactionTask;
+    private Segment active;
+
+    public AppendOnlyLog(Path directory, StorageProperties.Embedded properties) {
+        this.directory = directory;
+        this.segmentSize = Math.clamp(properties.getSegmentSize().toBytes(), 4096, MAX_SEGMENT_SIZE);
+        this.compactionThreshold = properties.getCompactionThreshold();
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open log in " + directory, e);
+        }
+        this.syncTask = Flux.interval(properties.getSyncInterval(), Schedulers.boundedElastic())
+                .subscribe(_ -> sync());
+        this.compactionTask = Flux.interval(properties.getCompactionInterval(), Schedulers.boundedElastic())
+                .subscribe(_ -> {
+                    try {
+                        compact();
+                    } catch (Exception e) {
+                        log.error("Failed to compact log in {}", directory, e);
+                    }
+                });
+    }
+
+    public byte[] get(String key) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(key);
+            return entry == null || entry.list ? null : read(entry.positions[0]).payload();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<byte[]> list(String key) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(key);
+            return entry == null || !entry.list ? List.of() : elements(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 列表的最后一个元素，只读取最后一条记录
+     */
+    public byte[] last(String key) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry == null || !entry.list || entry.size() == 0) {
+                return null;
+            }
+            return decodeElements(read(entry.positions[entry.count - 1])).getLast();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 以指定前缀开头的键
+     */
+    public List<String> keys(String prefix) {
+        lock.readLock().lock();
+        try {
+            return index.keySet().stream().filter(key -> key.startsWith(prefix)).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, byte[] value) {
+        lock.writeLock().lock();
+        try {
+            long position = write(PUT, key, value);
+            release(index.put(key, new Entry(false, position, 1)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean delete(String key) {
+        lock.writeLock().lock();
+        try {
+            if (!index.containsKey(key)) {
+                return false;
+            }
+            write(DELETE, key, EMPTY);
+            release(index.remove(key));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 向列表末尾追加一个元素
+     */
+    public void append(String key, byte[] element) {
+        lock.writeLock().lock();
+        try {
+            long position = write(APPEND, key, element);
+            Entry entry = index.get(key);
+            if (entry == null || !entry.list) {
+                release(index.put(key, new Entry(true, position, 1)));
+            } else {
+                entry.add(position, 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 整体替换列表，超过单条记录上限时拆成多个分片记录
+     */
+    public void replaceList(String key, List<byte[]> elements) {
+        lock.writeLock().lock();
+        try {
+            release(index.put(key, writeList(key, elements)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 只保留列表最后 keep 个元素，丢弃的元素在所在记录全部失效后由压缩回收
+     */
+    public void trimList(String key, int keep) {
+        if (keep < 1) {
+            throw new IllegalArgumentException("keep must be positive: " + keep);
+        }
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry == null || !entry.list || entry.size() <= keep) {
+                return;
+            }
+            write(KEEP_LAST, key, ByteBuffer.allocate(Integer.BYTES).putInt(keep).array());
+            trim(entry, entry.size() - keep);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 将当前分段的修改刷入磁盘
+     */
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            if (active != null) {
+                active.memory.force();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 压缩失效数据占比超过阈值的已写满分段，按从旧到新的顺序处理
+     */
+    public void compact() {
+        List<Segment> candidates;
+        lock.readLock().lock();
+        try {
+            candidates = segments.values().stream()
+                    .filter(segment -> segment != active && segment.garbageRatio() >= compactionThreshold)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Segment segment : candidates) {
+            lock.writeLock().lock();
+            try {
+                if (!segments.containsKey(segment.id)) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                long reclaimed = segment.writePosition - segment.liveBytes;
+                compact(segment);
+                log.info("Compacted segment {} in {}: reclaimed {} bytes in {}ms",
+                        segment.id, directory, reclaimed, System.currentTimeMillis() - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to compact segment " + segment.id, e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        syncTask.dispose();
+        compactionTask.dispose();
+        lock.writeLock().lock();
+        try {
+            active.memory.force();
+            segments.values().forEach(Segment::close);
+            segments.clear();
+            index.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按分段顺序重放记录重建索引
+     */
+    private void recover() throws IOException {
+        List<Integer> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        long start = System.currentTimeMillis();
+        long records = 0;
+        Map<String, Entry> pendingLists = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            boolean last = i == ids.size() - 1;
+            Path path = segmentPath(ids.get(i));
+            long size = last ? Math.max(Files.size(path), segmentSize) : Files.size(path);
+            Segment segment = Segment.open(ids.get(i), path, size);
+            segments.put(segment.id, segment);
+            records += replay(segment, last, pendingLists);
+        }
+        // 写入中断的分片序列不生效，该键保留之前的数据
+        pendingLists.values().forEach(this::release);
+        if (segments.isEmpty()) {
+            active = newSegment(1);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        log.info("Recovered {} records ({} keys) from {} segments in {} in {}ms",
+                records, index.size(), segments.size(), directory, System.currentTimeMillis() - start);
+    }
+
+    private long replay(Segment segment, boolean last, Map<String, Entry> pendingLists) {
+        long offset = 0;
+        long records = 0;
+        while (offset + HEADER_SIZE <= segment.capacity) {
+            int length = segment.memory.get(INT, offset);
+            if (length == 0) {
+                break;
+            }
+            if (!isValid(segment, offset, length)) {
+                log.warn("Corrupted record in segment {} at offset {}, discarding the rest of the segment",
+                        segment.id, offset);
+                if (last) {
+                    segment.memory.asSlice(offset).fill((byte) 0);
+                }
+                break;
+            }
+            Record record = read(segment, offset);
+            long position = position(segment.id, offset);
+            if (!isMarker(record.op())) {
+                segment.liveBytes += record.size();
+            }
+            switch (record.op()) {
+                case PUT -> release(index.put(record.key(), new Entry(false, position, 1)));
+                case DELETE -> release(index.remove(record.key()));
+                case APPEND -> {
+                    Entry entry = index.get(record.key());
+                    if (entry == null || !entry.list) {
+                        release(index.put(record.key(), new Entry(true, position, 1)));
+                    } else {
+                        entry.add(position, 1);
+                    }
+                }
+                case REPLACE_LIST -> release(index.put(record.key(),
+                        new Entry(true, position, ByteBuffer.wrap(record.payload()).getInt(0))));
+                case LIST_PART -> replayPart(record, position, pendingLists);
+                case TRIM_LIST -> {
+                    Entry entry = index.get(record.key());
+                    if (entry != null && entry.list) {
+                        trim(entry, ByteBuffer.wrap(record.payload()).getInt(0));
+                    }
+                }
+                case KEEP_LAST -> {
+                    Entry entry = index.get(record.key());
+                    int keep = ByteBuffer.wrap(record.payload()).getInt(0);
+                    if (entry != null && entry.list && entry.size() > keep) {
+                        trim(entry, entry.size() - keep);
+                    }
+                }
+                default -> { }
+            }
+            offset += record.size();
+            records++;
+        }
+        segment.writePosition = offset;
+        return records;
+    }
+
+    /**
+     * 分片按序号收集，最后一个分片到达时整体替换该键的列表
+     */
+    private void replayPart(Record record, long position, Map<String, Entry> pendingLists) {
+        ByteBuffer header = ByteBuffer.wrap(record.payload());
+        int part = header.getInt(0);
+        int parts = header.getInt(Integer.BYTES);
+        int elements = header.getInt(2 * Integer.BYTES);
+        Entry pending;
+        if (part == 0) {
+            release(pendingLists.remove(record.key()));
+            pending = new Entry(true, position, elements);
+        } else {
+            pending = pendingLists.get(record.key());
+            if (pending == null || pending.count != part) {
+                release(pendingLists.remove(record.key()));
+                releasePosition(position);
+                return;
+            }
+            pending.add(position, elements);
+        }
+        if (part == parts - 1) {
+            pendingLists.remove(record.key());
+            release(index.put(record.key(), pending));
+        } else {
+            pendingLists.put(record.key(), pending);
+        }
+    }
+
+    private static boolean isValid(Segment segment, long offset, int length) {
+        if (length < BODY_PREFIX_SIZE || offset + HEADER_SIZE + length > segment.capacity) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(segment.memory.asSlice(offset + HEADER_SIZE, length).toArray(ValueLayout.JAVA_BYTE));
+        return (int) crc.getValue() == segment.memory.get(INT, offset + 4);
+    }
+
+    /**
+     * 将分段中仍有效的数据重写到当前分段后删除该分段
+     * 列表整体重写，过大时拆成分片；分段中有截断记录的列表也整体重写，之后不再依赖该截断记录
+     */
+    private void compact(Segment segment) throws IOException {
+        Set<String> rewrittenLists = new HashSet<>();
+        long offset = 0;
+        while (offset < segment.writePosition) {
+            Record record = read(segment, offset);
+            long position = position(segment.id, offset);
+            Entry entry = index.get(record.key());
+            switch (record.op()) {
+                case PUT -> {
+                    if (entry != null && !entry.list && entry.positions[0] == position) {
+                        segment.liveBytes -= record.size();
+                        entry.positions[0] = write(PUT, record.key(), record.payload());
+                    }
+                }
+                case APPEND, REPLACE_LIST, LIST_PART, TRIM_LIST, KEEP_LAST -> {
+                    boolean referenced = record.op() == TRIM_LIST || record.op() == KEEP_LAST
+                            || entry != null && entry.contains(position);
+                    if (entry != null && entry.list && referenced && rewrittenLists.add(record.key())) {
+                        List<byte[]> elements = elements(entry);
+                        release(entry);
+                        index.put(record.key(), writeList(record.key(), elements));
+                    }
+                }
+                case DELETE -> {
+                    // 更早的分段中可能还有该键的旧数据，墓碑需保留到它们被压缩掉
+                    if (entry == null && segments.firstKey() < segment.id) {
+                        write(DELETE, record.key(), EMPTY);
+                    }
+                }
+                default -> { }
+            }
+            offset += record.size();
+        }
+        // 重写的数据落盘后才能删除旧分段
+        active.memory.force();
+        segments.remove(segment.id);
+        segment.close();
+        Files.delete(segment.path);
+    }
+
+    /**
+     * 追加一条记录，返回其位置；调用方需持有写锁
+     */
+    private long write(byte op, String key, byte[] payload) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Key too long: " + keyBytes.length + " bytes");
+        }
+        int length = BODY_PREFIX_SIZE + keyBytes.length + payload.length;
+        long size = HEADER_SIZE + (long) length;
+        // 列表元素预留分片开销，保证压缩时任何元素都能单独放进一个分片
+        if (size + (op == APPEND ? PART_OVERHEAD : 0) > segmentSize) {
+            throw new IllegalArgumentException("Record of " + size + " bytes exceeds segment size " + segmentSize);
+        }
+        if (active.writePosition + size > active.capacity) {
+            active.memory.force();
+            active = newSegment(active.id + 1);
+        }
+
+        byte[] body = ByteBuffer.allocate(length)
+                .put(op)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .put(payload)
+                .array();
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+
+        long offset = active.writePosition;
+        MemorySegment.copy(body, 0, active.memory, ValueLayout.JAVA_BYTE, offset + HEADER_SIZE, length);
+        active.memory.set(INT, offset + 4, (int) crc.getValue());
+        // 长度最后写入，非 0 即表示记录存在
+        active.memory.set(INT, offset, length);
+        active.writePosition += size;
+        active.liveBytes += isMarker(op) ? 0 : size;
+        return position(active.id, offset);
+    }
+
+    /**
+     * 删除和截断记录本身不持有数据，不计入有效字节数
+     */
+    private static boolean isMarker(byte op) {
+        return op == DELETE || op == TRIM_LIST || op == KEEP_LAST;
+    }
+
+    private Record read(long position) {
+        return read(segments.get(segmentId(position)), offset(position));
+    }
+
+    private static Record read(Segment segment, long offset) {
+        int length = segment.memory.get(INT, offset);
+        long body = offset + HEADER_SIZE;
+        byte op = segment.memory.get(ValueLayout.JAVA_BYTE, body);
+        int keyLength = Short.toUnsignedInt(segment.memory.get(SHORT, body + 1));
+        String key = new String(segment.memory.asSlice(body + BODY_PREFIX_SIZE, keyLength).toArray(ValueLayout.JAVA_BYTE),
+                StandardCharsets.UTF_8);
+        byte[] payload = segment.memory.asSlice(body + BODY_PREFIX_SIZE + keyLength,
+                length - BODY_PREFIX_SIZE - keyLength).toArray(ValueLayout.JAVA_BYTE);
+        return new Record(op, key, payload, HEADER_SIZE + length);
+    }
+
+    private List<byte[]> elements(Entry entry) {
+        List<byte[]> elements = new ArrayList<>(entry.size());
+        for (int i = 0; i < entry.count; i++) {
+            List<byte[]> decoded = decodeElements(read(entry.positions[i]));
+            elements.addAll(i == 0 ? decoded.subList(entry.skip, decoded.size()) : decoded);
+        }
+        return elements;
+    }
+
+    private static List<byte[]> decodeElements(Record record) {
+        return switch (record.op()) {
+            case REPLACE_LIST -> decodeList(record.payload(), 0);
+            case LIST_PART -> decodeList(record.payload(), 2 * Integer.BYTES);
+            default -> List.of(record.payload());
+        };
+    }
+
+    /**
+     * 写入整个列表：能放进一条记录时写 replaceList，否则按记录上限拆成连续的分片
+     */
+    private Entry writeList(String key, List<byte[]> elements) {
+        long limit = segmentSize - HEADER_SIZE - BODY_PREFIX_SIZE - key.getBytes(StandardCharsets.UTF_8).length;
+        long total = Integer.BYTES;
+        for (byte[] element : elements) {
+            total += Integer.BYTES + element.length;
+        }
+        if (total <= limit) {
+            return new Entry(true, write(REPLACE_LIST, key, encodeList(elements)), elements.size());
+        }
+
+        List<List<byte[]>> chunks = new ArrayList<>();
+        List<byte[]> chunk = new ArrayList<>();
+        long chunkSize = 3L * Integer.BYTES;
+        for (byte[] element : elements) {
+            if (!chunk.isEmpty() && chunkSize + Integer.BYTES + element.length > limit) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                chunkSize = 3L * Integer.BYTES;
+            }
+            chunk.add(element);
+            chunkSize += Integer.BYTES + element.length;
+        }
+        chunks.add(chunk);
+
+        Entry entry = null;
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] list = encodeList(chunks.get(i));
+            byte[] payload = ByteBuffer.allocate(2 * Integer.BYTES + list.length)
+                    .putInt(i)
+                    .putInt(chunks.size())
+                    .put(list)
+                    .array();
+            long position = write(LIST_PART, key, payload);
+            if (entry == null) {
+                entry = new Entry(true, position, chunks.get(i).size());
+            } else {
+                entry.add(position, chunks.get(i).size());
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 丢弃列表开头的 drop 个元素，整条记录都被丢弃时释放该记录
+     */
+    private void trim(Entry entry, int drop) {
+        while (drop > 0 && entry.count > 0) {
+            int available = entry.counts[0] - entry.skip;
+            if (drop < available) {
+                entry.skip += drop;
+                return;
+            }
+            drop -= available;
+            releasePosition(entry.positions[0]);
+            entry.removeFirst();
+        }
+    }
+
+    /**
+     * 键的旧数据失效，从所在分段的有效字节数中扣除
+     */
+    private void release(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        for (int i = 0; i < entry.count; i++) {
+            releasePosition(entry.positions[i]);
+        }
+    }
+
+    private void releasePosition(long position) {
+        Segment segment = segments.get(segmentId(position));
+        long offset = offset(position);
+        segment.liveBytes -= HEADER_SIZE + segment.memory.get(INT, offset);
+    }
+
+    private Segment newSegment(int id) {
+        try {
+            Segment segment = Segment.open(id, segmentPath(id), segmentSize);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create segment " + id, e);
+        }
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve("%010d%s".formatted(id, SUFFIX));
+    }
+
+    private static byte[] encodeList(List<byte[]> elements) {
+        int size = Integer.BYTES;
+        for (byte[] element : elements) {
+            size += Integer.BYTES + element.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(elements.size());
+        elements.forEach(element -> buffer.putInt(element.length).put(element));
+        return buffer.array();
+    }
+
+    private static List<byte[]> decodeList(byte[] payload, int offset) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload, offset, payload.length - offset);
+        int count = buffer.getInt();
+        List<byte[]> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] element = new byte[buffer.getInt()];
+            buffer.get(element);
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    private static long position(int segmentId, long offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int segmentId(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static long offset(long position) {
+        return position & 0xFFFFFFFFL;
+    }
+
+    private record Record(byte op, String key, byte[] payload, int size) {
+    }
+
+    /**
+     * 键的索引项：值只有一个位置；列表按顺序记录每条 append / replaceList / 分片记录的位置和元素数，
+     * skip 为第一条记录中已被截断的元素数
+     */
+    private static final class Entry {
+
+        private final boolean list;
+        private long[] positions;
+        private int[] counts;
+        private int count;
+        private int skip;
+
+        Entry(boolean list, long position, int elements) {
+            this.list = list;
+            this.positions = new long[]{position};
+            this.counts = new int[]{elements};
+            this.count = 1;
+        }
+
+        void add(long position, int elements) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+                counts = Arrays.copyOf(counts, count * 2);
+            }
+            positions[count] = position;
+            counts[count++] = elements;
+        }
+
+        void removeFirst() {
+            System.arraycopy(positions, 1, positions, 0, count - 1);
+            System.arraycopy(counts, 1, counts, 0, count - 1);
+            count--;
+            skip = 0;
+        }
+
+        int size() {
+            int size = -skip;
+            for (int i = 0; i < count; i++) {
+                size += counts[i];
+            }
+            return size;
+        }
+
+        boolean contains(long position) {
+            for (int i = 0; i < count; i++) {
+                if (positions[i] == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Segment {
+
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final Arena arena;
+        private final MemorySegment memory;
+        private final long capacity;
+        private long writePosition;
+        private long liveBytes;
+
+        private Segment(int id, Path path, FileChannel channel, Arena arena, MemorySegment memory) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.arena = arena;
+            this.memory = memory;
+            this.capacity = memory.byteSize();
+        }
+
+        static Segment open(int id, Path path, long size) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Arena arena = Arena.ofShared();
+            MemorySegment memory = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+            return new Segment(id, path, channel, arena, memory);
+        }
+
+        double garbageRatio() {
+            return writePosition == 0 ? 0 : 1 - (double) liveBytes / writePosition;
+        }
+
+        void close() {
+            arena.close();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close segment {}", path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package top.qiyuey.book.store;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.serializer.StateSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 嵌入式 Checkpoint 存储：每个会话一个 {@link AppendOnlyLog} 列表
+ * 与 RedisSaver 一样用图的 {@link StateSerializer} 序列化状态，保留 Spring AI Message 等对象的类型信息，
+ * 重启或热层淘汰后读回的 messages 仍是 Message 实例。
+ * 新 Checkpoint 追加为一条记录，不重写整个会话；按 id 更新时整体替换列表。
+ * 每个会话只保留最近 retention 个 Checkpoint，读取最新 Checkpoint 只解码最后一条记录，按 id 查找时只解码 id。
+ */
+public class EmbeddedCheckpointSaver implements BaseCheckpointSaver {
+
+    private static final String KEY_PREFIX = "checkpoints:";
+
+    private final AppendOnlyLog store;
+    private final StateSerializer stateSerializer;
+    private final int retention;
+
+    public EmbeddedCheckpointSaver(AppendOnlyLog store, StateSerializer stateSerializer, int retention) {
+        this.store = store;
+        this.stateSerializer = stateSerializer;
+        this.retention = retention;
+    }
+
+    /**
+     * 最新的 Checkpoint 在前
+     */
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+        for (byte[] element : store.list(key(config))) {
+            checkpoints.addFirst(decode(element));
+        }
+        return checkpoints;
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        if (config.checkPointId().isEmpty()) {
+            return Optional.ofNullable(store.last(key(config))).map(this::decode);
+        }
+        String id = config.checkPointId().get();
+        List<byte[]> elements = store.list(key(config));
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            if (id.equals(readId(elements.get(i)))) {
+                return Optional.of(decode(elements.get(i)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String key = key(config);
+        if (config.checkPointId().isPresent()) {
+            String id = config.checkPointId().get();
+            List<byte[]> elements = new ArrayList<>(store.list(key));
+            boolean replaced = false;
+            for (int i = 0; i < elements.size() && !replaced; i++) {
+                if (id.equals(readId(elements.get(i)))) {
+                    elements.set(i, encode(checkpoint));
+                    replaced = true;
+                }
+            }
+            if (!replaced) {
+                throw new IllegalArgumentException("Checkpoint with id " + id + " not found");
+            }
+            store.replaceList(key, elements);
+        } else {
+            store.append(key, encode(checkpoint));
+            store.trimList(key, retention);
+        }
+        return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+    }
+
+    @Override
+    public boolean clear(RunnableConfig config) {
+        return store.delete(key(config));
+    }
+
+    @Override
+    public Tag release(RunnableConfig config) throws Exception {
+        return new Tag(config.threadId().orElse(THREAD_ID_DEFAULT), list(config));
+    }
+
+    private static String key(RunnableConfig config) {
+        return KEY_PREFIX + config.threadId().orElse(THREAD_ID_DEFAULT);
+    }
+
+    /**
+     * 格式与 FileSystemSaver 一致：id、nodeId、nextNodeId 后接序列化的状态
+     */
+    private byte[] encode(Checkpoint checkpoint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeUTF(checkpoint.getId());
+            writeNullable(checkpoint.getNodeId(), out);
+            writeNullable(checkpoint.getNextNodeId(), out);
+            stateSerializer.write(stateSerializer.stateOf(checkpoint.getState()), out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Checkpoint decode(byte[] value) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(value))) {
+            return Checkpoint.builder()
+                    .id(in.readUTF())
+                    .nodeId(readNullable(in))
+                    .nextNodeId(readNullable(in))
+                    .state(stateSerializer.read(in).data())
+                    .build();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to deserialize checkpoint", e);
+        }
+    }
+
+    private static String readId(byte[] value) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(value))) {
+            return in.readUTF();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read checkpoint id", e);
+        }
+    }
+
+    private static void writeNullable(String value, ObjectOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(ObjectInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
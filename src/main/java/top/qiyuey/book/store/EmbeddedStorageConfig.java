@@ -0,0 +1,34 @@
+package top.qiyuey.book.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * 嵌入式存储（app.storage.type=embedded）：对话和 Checkpoint 各用一个追加写日志，
+ * 写入频率和数据大小差别很大，分开压缩。Checkpoint 日志由 BookAgentConfig 包装为 {@link EmbeddedCheckpointSaver}。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.storage", name = "type", havingValue = "embedded")
+public class EmbeddedStorageConfig {
+
+    @Bean(destroyMethod = "close")
+    public AppendOnlyLog threadLog(StorageProperties properties) {
+        return new AppendOnlyLog(Path.of(properties.getEmbedded().getDirectory(), "threads"), properties.getEmbedded());
+    }
+
+    @Bean(destroyMethod = "close")
+    public AppendOnlyLog checkpointLog(StorageProperties properties) {
+        return new AppendOnlyLog(Path.of(properties.getEmbedded().getDirectory(), "checkpoints"), properties.getEmbedded());
+    }
+
+    @Bean
+    public EmbeddedThreadStore embeddedThreadStore(@Qualifier("threadLog") AppendOnlyLog threadLog,
+                                                   ObjectMapper objectMapper) {
+        return new EmbeddedThreadStore(threadLog, objectMapper);
+    }
+}
@@ -0,0 +1,117 @@
+package top.qiyuey.book.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import top.qiyuey.book.agent.ThreadInfo;
+import top.qiyuey.book.agent.ThreadService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 嵌入式对话存储：元数据和消息以 JSON 写入 {@link AppendOnlyLog}
+ * 元数据启动时全部加载到内存，列表和检索直接读内存；消息按条追加，读取时从映射文件解码。
+ */
+public class EmbeddedThreadStore implements ThreadStore {
+
+    private static final String THREAD_PREFIX = "thread:";
+    private static final String MESSAGES_PREFIX = "messages:";
+
+    private final AppendOnlyLog store;
+    private final ObjectMapper objectMapper;
+    private final Map<String, ThreadInfo> threads = new ConcurrentHashMap<>();
+
+    public EmbeddedThreadStore(AppendOnlyLog store, ObjectMapper objectMapper) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        for (String key : store.keys(THREAD_PREFIX)) {
+            byte[] value = store.get(key);
+            if (value != null) {
+                ThreadInfo info = decode(value, ThreadInfo.class);
+                threads.put(info.getId(), info);
+            }
+        }
+    }
+
+    @Override
+    public ThreadInfo get(String threadId) {
+        return copy(threads.get(threadId));
+    }
+
+    @Override
+    public Map<String, ThreadInfo> getAll(Set<String> threadIds) {
+        Map<String, ThreadInfo> result = new HashMap<>();
+        for (String threadId : threadIds) {
+            ThreadInfo info = threads.get(threadId);
+            if (info != null) {
+                result.put(threadId, copy(info));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<ThreadInfo> all() {
+        return new ArrayList<>(threads.values().stream().map(EmbeddedThreadStore::copy).toList());
+    }
+
+    @Override
+    public long size() {
+        return threads.size();
+    }
+
+    @Override
+    public void put(ThreadInfo info) {
+        store.put(THREAD_PREFIX + info.getId(), encode(info));
+        threads.put(info.getId(), copy(info));
+    }
+
+    @Override
+    public void remove(String threadId) {
+        store.delete(THREAD_PREFIX + threadId);
+        store.delete(MESSAGES_PREFIX + threadId);
+        threads.remove(threadId);
+    }
+
+    @Override
+    public void addMessage(String threadId, ThreadService.ChatMessage message) {
+        store.append(MESSAGES_PREFIX + threadId, encode(message));
+    }
+
+    @Override
+    public List<ThreadService.ChatMessage> getMessages(String threadId) {
+        List<ThreadService.ChatMessage> messages = new ArrayList<>();
+        for (byte[] element : store.list(MESSAGES_PREFIX + threadId)) {
+            messages.add(decode(element, ThreadService.ChatMessage.class));
+        }
+        return messages;
+    }
+
+    /**
+     * 调用方会修改返回的对象后再写回，与 Redis 实现一样返回副本
+     */
+    private static ThreadInfo copy(ThreadInfo info) {
+        return info == null ? null : new ThreadInfo(info.getId(), info.getTitle(), info.getUpdatedAt(),
+                info.getModelId(), info.getBookName());
+    }
+
+    private byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private <T> T decode(byte[] value, Class<T> type) {
+        try {
+            return objectMapper.readValue(value, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to deserialize " + type.getSimpleName(), e);
+        }
+    }
+}
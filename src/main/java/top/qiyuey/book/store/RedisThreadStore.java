@@ -0,0 +1,77 @@
+package top.qiyuey.book.store;
+
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import top.qiyuey.book.agent.ThreadIndex;
+import top.qiyuey.book.agent.ThreadInfo;
+import top.qiyuey.book.agent.ThreadService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Redis 对话存储：元数据存于分片的 {@link ThreadIndex}，消息存于 book-agent:messages:{threadId} 列表
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.storage", name = "type", havingValue = "redis", matchIfMissing = true)
+public class RedisThreadStore implements ThreadStore {
+
+    private final RedissonClient redissonClient;
+    private final ThreadIndex threadIndex;
+
+    public RedisThreadStore(RedissonClient redissonClient, ThreadIndex threadIndex) {
+        this.redissonClient = redissonClient;
+        this.threadIndex = threadIndex;
+    }
+
+    @Override
+    public ThreadInfo get(String threadId) {
+        return threadIndex.get(threadId);
+    }
+
+    @Override
+    public Map<String, ThreadInfo> getAll(Set<String> threadIds) {
+        return threadIndex.getAll(threadIds);
+    }
+
+    @Override
+    public List<ThreadInfo> all() {
+        return threadIndex.all();
+    }
+
+    @Override
+    public long size() {
+        return threadIndex.size();
+    }
+
+    @Override
+    public void put(ThreadInfo info) {
+        threadIndex.put(info);
+    }
+
+    @Override
+    public void remove(String threadId) {
+        threadIndex.remove(threadId);
+        redissonClient.getList(messagesKey(threadId)).delete();
+    }
+
+    @Override
+    public void addMessage(String threadId, ThreadService.ChatMessage message) {
+        redissonClient.<ThreadService.ChatMessage>getList(messagesKey(threadId)).add(message);
+    }
+
+    @Override
+    public List<ThreadService.ChatMessage> getMessages(String threadId) {
+        return new ArrayList<>(redissonClient.<ThreadService.ChatMessage>getList(messagesKey(threadId)).readAll());
+    }
+
+    /**
+     * 对话消息列表的键
+     */
+    public static String messagesKey(String threadId) {
+        return "book-agent:messages:" + threadId;
+    }
+}
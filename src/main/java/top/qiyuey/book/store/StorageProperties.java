@@ -0,0 +1,69 @@
+package top.qiyuey.book.store;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 对话和 Checkpoint 的存储后端配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.storage")
+public class StorageProperties {
+
+    /**
+     * 存储后端
+     */
+    private Type type = Type.REDIS;
+
+    private Embedded embedded = new Embedded();
+
+    public enum Type {
+        /**
+         * Redis，多节点共享
+         */
+        REDIS,
+        /**
+         * 本地追加写日志，仅适用于单节点部署
+         */
+        EMBEDDED
+    }
+
+    @Data
+    public static class Embedded {
+
+        /**
+         * 数据目录，对话和 Checkpoint 分别存于其下的 threads、checkpoints 子目录
+         */
+        private String directory = "./data";
+
+        /**
+         * 单个日志分段文件的大小，写满后切换到新分段
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 将内存映射的修改刷入磁盘的间隔；进程崩溃不丢数据，操作系统崩溃最多丢失这段时间内的写入
+         */
+        private Duration syncInterval = Duration.ofSeconds(1);
+
+        /**
+         * 检查是否需要压缩的间隔
+         */
+        private Duration compactionInterval = Duration.ofMinutes(5);
+
+        /**
+         * 已写满的分段中失效数据占比达到该值时压缩（重写有效数据后删除该分段）
+         */
+        private double compactionThreshold = 0.5;
+
+        /**
+         * 每个会话保留的 Checkpoint 数，每个 Checkpoint 都含完整的会话状态，更早的只在恢复历史步骤时有用
+         */
+        private int checkpointRetention = 10;
+    }
+}
@@ -0,0 +1,34 @@
+package top.qiyuey.book.store;
+
+import top.qiyuey.book.agent.ThreadInfo;
+import top.qiyuey.book.agent.ThreadService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 对话存储：对话元数据和消息列表
+ * 由 app.storage.type 选择实现：{@link RedisThreadStore}（默认，多节点共享）或 {@link EmbeddedThreadStore}（单节点本地存储）
+ */
+public interface ThreadStore {
+
+    ThreadInfo get(String threadId);
+
+    Map<String, ThreadInfo> getAll(Set<String> threadIds);
+
+    List<ThreadInfo> all();
+
+    long size();
+
+    void put(ThreadInfo info);
+
+    /**
+     * 删除对话元数据和消息
+     */
+    void remove(String threadId);
+
+    void addMessage(String threadId, ThreadService.ChatMessage message);
+
+    List<ThreadService.ChatMessage> getMessages(String threadId);
+}
@@ -0,0 +1,401 @@
+package top.qiyuey.book.transfer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RBinaryStream;
+import org.redisson.api.RList;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import top.qiyuey.book.agent.ThreadIndex;
+import top.qiyuey.book.agent.ThreadInfo;
+import top.qiyuey.book.agent.ThreadService;
+import top.qiyuey.book.agent.TieredCheckpointSaver;
+import top.qiyuey.book.passage.PassageBlobStore;
+import top.qiyuey.book.search.HistorySearchIndex;
+import top.qiyuey.book.store.RedisThreadStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 对话批量导出/导入（NDJSON）
+ * <p>
+ * 导出：以 HSCAN 分批遍历对话元数据，每个对话用一次 pipeline 读取消息数和 Checkpoint 长度，消息按块分页读取，
+ * Checkpoint 按段以 GETRANGE 读取，消息和 Checkpoint 中引用的长原文 blob 紧跟在 thread 行之后导出；消息行和 Checkpoint
+ * 按 {@link TransferProperties#getMaxLineSize()} 拆分，导入时不会超出 NDJSON 解码器的单条上限；
+ * 整条流按下游需求逐行拉取，写出慢时暂停读取 Redis，内存占用与数据总量无关。
+ * <p>
+ * 导入：按 {@link TransferProperties#getBatchSize()} 条记录一批，每批一次 pipeline 写入，写完再向请求体要下一批。
+ * 已存在的对话默认跳过，overwrite 时整体替换（元数据、消息、Checkpoint）。Checkpoint 的各段读到即以 SETRANGE
+ * 依次写入，不在内存中拼接。导入的对话在写完后重建搜索索引。
+ * <p>
+ * 直接读写 Redis 中的数据结构，仅在 Redis 存储后端下启用。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "app.storage", name = "type", havingValue = "redis", matchIfMissing = true)
+public class ThreadTransferService {
+
+    /**
+     * 每行除消息或 Checkpoint 数据外的字段（type、threadId 等）预留的字节数
+     */
+    private static final int LINE_OVERHEAD = 1024;
+
+    private final RedissonClient redissonClient;
+    private final ThreadIndex threadIndex;
+    private final ThreadService threadService;
+    private final TieredCheckpointSaver checkpointSaver;
+    private final HistorySearchIndex searchIndex;
+    private final PassageBlobStore blobStore;
+    private final TransferProperties properties;
+    private final ObjectMapper objectMapper;
+
+    public ThreadTransferService(RedissonClient redissonClient, ThreadIndex threadIndex, ThreadService threadService,
+                                 TieredCheckpointSaver checkpointSaver, HistorySearchIndex searchIndex,
+                                 PassageBlobStore blobStore, TransferProperties properties,
+                                 ObjectMapper objectMapper) {
+        this.redissonClient = redissonClient;
+        this.threadIndex = threadIndex;
+        this.threadService = threadService;
+        this.checkpointSaver = checkpointSaver;
+        this.searchIndex = searchIndex;
+        this.blobStore = blobStore;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 导出更新时间在 [from, to) 内、书名匹配的对话，参数为空表示不限
+     */
+    public Flux<TransferRecord> export(Instant from, Instant to, String bookName) {
+        return threadIndex.scan(properties.getBatchSize())
+                .filter(info -> matches(info, from, to, bookName))
+                .concatMap(this::exportThread)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 导入 NDJSON 记录，记录须按导出时的顺序（同一对话连续）排列
+     */
+    public Mono<ImportResult> importRecords(Flux<TransferRecord> records, boolean overwrite) {
+        Importer importer = new Importer(overwrite);
+        return records.buffer(properties.getBatchSize())
+                .concatMap(batch -> Mono.fromRunnable(() -> importer.write(batch))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .then(Mono.fromSupplier(importer::finish))
+                .doOnNext(result -> log.info("Imported threads: {}", result));
+    }
+
+    private Flux<TransferRecord> exportThread(ThreadInfo info) {
+        return Flux.defer(() -> {
+            String threadId = info.getId();
+            // 本节点热层中尚未落盘的 Checkpoint 先写入 Redis
+            checkpointSaver.flushThreadNow(threadId);
+
+            RBatch batch = redissonClient.createBatch();
+            RFuture<Integer> size = batch.getList(RedisThreadStore.messagesKey(threadId)).sizeAsync();
+            RFuture<Long> checkpointSize = batch.getBucket(checkpointKey(threadId), ByteArrayCodec.INSTANCE).sizeAsync();
+            batch.execute();
+
+            int count = size.toCompletableFuture().join();
+            long checkpointLength = checkpointSize.toCompletableFuture().join();
+            int chunkSize = Math.max(properties.getMessageChunkSize(), 1);
+            long maxLineSize = properties.getMaxLineSize().toBytes();
+            RList<ThreadService.ChatMessage> messages = redissonClient.getList(RedisThreadStore.messagesKey(threadId));
+
+            Flux<TransferRecord> blobs = Flux.just(PassageBlobStore.messagesHolder(threadId),
+                            PassageBlobStore.checkpointsHolder(threadId))
+                    .concatMap(holder -> Flux.fromIterable(blobStore.referencedBy(holder))
+                            .mapNotNull(blobStore::load)
+                            .map(content -> TransferRecord.blob(threadId, holder, content)));
+            Flux<TransferRecord> chunks = Flux.range(0, (count + chunkSize - 1) / chunkSize)
+                    .map(i -> messages.range(i * chunkSize, Math.min(count, (i + 1) * chunkSize) - 1))
+                    .concatMapIterable(page -> splitMessages(page, objectMapper, maxLineSize))
+                    .map(chunk -> TransferRecord.messages(threadId, chunk));
+            int partSize = checkpointPartSize(maxLineSize);
+            RBinaryStream checkpoint = redissonClient.getBinaryStream(checkpointKey(threadId));
+            Flux<TransferRecord> tail = checkpointLength == 0 ? Flux.empty()
+                    : Flux.range(0, (int) ((checkpointLength + partSize - 1) / partSize))
+                            .map(i -> readCheckpoint(checkpoint, (long) i * partSize,
+                                    (int) Math.min(partSize, checkpointLength - (long) i * partSize)))
+                            .map(part -> TransferRecord.checkpoint(threadId, Base64.getEncoder().encodeToString(part)));
+            return Flux.just(TransferRecord.thread(info)).concatWith(blobs).concatWith(chunks).concatWith(tail);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 将一页消息按序拆成若干行，每行序列化后不超过 maxLineSize（留出记录其余字段的余量）；超过上限的单条消息独占一行
+     */
+    static List<List<ThreadService.ChatMessage>> splitMessages(List<ThreadService.ChatMessage> messages,
+                                                               ObjectMapper objectMapper, long maxLineSize) {
+        long budget = maxLineSize - LINE_OVERHEAD;
+        List<List<ThreadService.ChatMessage>> chunks = new ArrayList<>();
+        List<ThreadService.ChatMessage> chunk = new ArrayList<>();
+        long size = 0;
+        for (ThreadService.ChatMessage message : messages) {
+            long messageSize;
+            try {
+                messageSize = objectMapper.writeValueAsBytes(message).length + 1;
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to serialize message", e);
+            }
+            if (!chunk.isEmpty() && size + messageSize > budget) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                size = 0;
+            }
+            chunk.add(message);
+            size += messageSize;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * 将 Checkpoint 原始字节按 3 字节对齐切段后分别 Base64 编码，每段编码后不超过 maxLineSize
+     */
+    static List<String> splitCheckpoint(byte[] checkpoint, long maxLineSize) {
+        int partSize = checkpointPartSize(maxLineSize);
+        List<String> parts = new ArrayList<>();
+        for (int offset = 0; offset < checkpoint.length || parts.isEmpty(); offset += partSize) {
+            byte[] part = Arrays.copyOfRange(checkpoint, offset, Math.min(checkpoint.length, offset + partSize));
+            parts.add(Base64.getEncoder().encodeToString(part));
+        }
+        return parts;
+    }
+
+    /**
+     * Checkpoint 每段的字节数：3 字节对齐，Base64 编码后不超过 maxLineSize
+     */
+    static int checkpointPartSize(long maxLineSize) {
+        return (int) Math.max((maxLineSize - LINE_OVERHEAD) / 4 * 3, 3);
+    }
+
+    /**
+     * 以 GETRANGE 读取 Checkpoint 中的一段；导出期间 Checkpoint 被截短时返回实际读到的部分
+     */
+    private static byte[] readCheckpoint(RBinaryStream checkpoint, long offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            SeekableByteChannel channel = checkpoint.getChannel();
+            channel.position(offset);
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // 继续读取剩余部分
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read checkpoint " + checkpoint.getName(), e);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static boolean matches(ThreadInfo info, Instant from, Instant to, String bookName) {
+        if (from != null && info.getUpdatedAt() < from.toEpochMilli()) {
+            return false;
+        }
+        if (to != null && info.getUpdatedAt() >= to.toEpochMilli()) {
+            return false;
+        }
+        return !StringUtils.hasText(bookName) || bookName.equals(info.getBookName());
+    }
+
+    private static boolean isValid(ThreadInfo info) {
+        return info != null && StringUtils.hasText(info.getId());
+    }
+
+    private String checkpointKey(String threadId) {
+        return properties.getCheckpointKeyPrefix() + threadId;
+    }
+
+    /**
+     * 导入统计
+     *
+     * @param threads     写入的对话数
+     * @param skipped     因已存在而跳过的对话数
+     * @param blobs       写入的长原文 blob 数
+     * @param messages    写入的消息数
+     * @param checkpoints 写入的 Checkpoint 数
+     * @param ignored     无法归属到对话的记录数
+     */
+    public record ImportResult(long threads, long skipped, long blobs, long messages, long checkpoints,
+                               long ignored) {
+    }
+
+    /**
+     * 单次导入的状态，只记住当前对话和其 Checkpoint 已写入的长度，批次之间串行执行
+     * 元数据和消息攒入 pipeline；Checkpoint 的段直接写入 Redis，写之前先执行 pipeline 中已有的命令，保证写入顺序
+     */
+    private final class Importer {
+
+        private final boolean overwrite;
+        private ThreadInfo current;
+        private SeekableByteChannel checkpoint;
+        private RBatch batch;
+        private boolean batched;
+        private long threads;
+        private long skipped;
+        private long blobs;
+        private long messages;
+        private long checkpoints;
+        private long ignored;
+
+        Importer(boolean overwrite) {
+            this.overwrite = overwrite;
+        }
+
+        void write(List<TransferRecord> records) {
+            Set<String> threadIds = records.stream()
+                    .filter(record -> TransferRecord.THREAD.equals(record.type()) && isValid(record.thread()))
+                    .map(record -> record.thread().getId())
+                    .collect(Collectors.toSet());
+            Set<String> existing = overwrite || threadIds.isEmpty()
+                    ? Set.of() : threadIndex.getAll(threadIds).keySet();
+
+            List<ThreadInfo> finished = new ArrayList<>();
+            for (TransferRecord record : records) {
+                switch (String.valueOf(record.type())) {
+                    case TransferRecord.THREAD -> {
+                        if (current != null) {
+                            finished.add(current);
+                        }
+                        current = null;
+                        checkpoint = null;
+                        if (!isValid(record.thread())) {
+                            ignored++;
+                        } else if (existing.contains(record.thread().getId())) {
+                            skipped++;
+                        } else {
+                            current = record.thread();
+                            String threadId = current.getId();
+                            if (overwrite) {
+                                // 撤销被替换的对话对 blob 的引用，新的引用由随后的 blob 记录登记
+                                blobStore.release(PassageBlobStore.messagesHolder(threadId));
+                                blobStore.release(PassageBlobStore.checkpointsHolder(threadId));
+                            }
+                            threadIndex.put(batch(), current);
+                            batch().getList(RedisThreadStore.messagesKey(threadId)).deleteAsync();
+                            batch().getBucket(checkpointKey(threadId)).deleteAsync();
+                            threads++;
+                        }
+                    }
+                    case TransferRecord.BLOB -> {
+                        if (belongsToCurrent(record) && record.content() != null && isOwnHolder(record.holder())) {
+                            blobStore.store(record.holder(), record.content());
+                            blobs++;
+                        } else {
+                            ignored++;
+                        }
+                    }
+                    case TransferRecord.MESSAGES -> {
+                        if (belongsToCurrent(record) && record.messages() != null) {
+                            batch().<ThreadService.ChatMessage>getList(RedisThreadStore.messagesKey(current.getId()))
+                                    .addAllAsync(record.messages());
+                            messages += record.messages().size();
+                        } else {
+                            ignored++;
+                        }
+                    }
+                    case TransferRecord.CHECKPOINT -> {
+                        if (belongsToCurrent(record) && record.checkpoint() != null) {
+                            writeCheckpoint(Base64.getDecoder().decode(record.checkpoint()));
+                        } else {
+                            ignored++;
+                        }
+                    }
+                    default -> ignored++;
+                }
+            }
+            executeBatch();
+            afterWrite(finished);
+        }
+
+        ImportResult finish() {
+            if (current != null) {
+                executeBatch();
+                afterWrite(List.of(current));
+                current = null;
+                checkpoint = null;
+            }
+            return new ImportResult(threads, skipped, blobs, messages, checkpoints, ignored);
+        }
+
+        private RBatch batch() {
+            if (batch == null) {
+                batch = redissonClient.createBatch();
+            }
+            batched = true;
+            return batch;
+        }
+
+        private void executeBatch() {
+            if (batched) {
+                batch.execute();
+                batch = null;
+                batched = false;
+            }
+        }
+
+        /**
+         * 以 SETRANGE 将 Checkpoint 的一段写到已写入部分之后；第一段写入前先执行 pipeline，旧 Checkpoint 已被删除
+         */
+        private void writeCheckpoint(byte[] part) {
+            executeBatch();
+            try {
+                if (checkpoint == null) {
+                    checkpoint = redissonClient.getBinaryStream(checkpointKey(current.getId())).getChannel();
+                    checkpoints++;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(part);
+                while (buffer.hasRemaining()) {
+                    checkpoint.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write checkpoint of thread " + current.getId(), e);
+            }
+        }
+
+        /**
+         * 对话的所有记录写完后：淘汰各节点热层中的旧 Checkpoint，按顺序重新索引搜索
+         */
+        private void afterWrite(List<ThreadInfo> finished) {
+            if (finished.isEmpty()) {
+                return;
+            }
+            finished.forEach(info -> checkpointSaver.evict(info.getId()));
+            searchIndex.reindex(finished.stream()
+                    .map(info -> new HistorySearchIndex.Document(info.getId(), info.getTitle(), info.getBookName(),
+                            () -> threadService.getMessages(info.getId()).stream()
+                                    .map(ThreadService.ChatMessage::getContent)
+                                    .toList()))
+                    .toList());
+        }
+
+        private boolean belongsToCurrent(TransferRecord record) {
+            return current != null && current.getId().equals(record.threadId());
+        }
+
+        private boolean isOwnHolder(String holder) {
+            return PassageBlobStore.messagesHolder(current.getId()).equals(holder)
+                    || PassageBlobStore.checkpointsHolder(current.getId()).equals(holder);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package top.qiyuey.book.transfer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * /api/transfer 的访问控制
+ * 导出包含所有对话，导入写入的 Checkpoint 原始字节会被反序列化，两者都要求 Authorization: Bearer {app.transfer.token}。
+ * 未配置令牌时返回 404，令牌错误返回 401，令牌按常量时间比较。
+ * 路径按 PathPattern 匹配应用内路径（解码并去除 ;参数），与处理器映射保持一致。
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.storage", name = "type", havingValue = "redis", matchIfMissing = true)
+public class TransferAccessFilter implements WebFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final PathPattern PATTERN = PathPatternParser.defaultInstance.parse("/api/transfer/**");
+
+    private final TransferProperties properties;
+
+    public TransferAccessFilter(TransferProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!PATTERN.matches(exchange.getRequest().getPath().pathWithinApplication())) {
+            return chain.filter(exchange);
+        }
+        if (!StringUtils.hasText(properties.getToken())) {
+            exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
+            return exchange.getResponse().setComplete();
+        }
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX) || !MessageDigest.isEqual(
+                authorization.substring(BEARER_PREFIX.length()).getBytes(StandardCharsets.UTF_8),
+                properties.getToken().getBytes(StandardCharsets.UTF_8))) {
+            exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+            exchange.getResponse().getHeaders().set(HttpHeaders.WWW_AUTHENTICATE, "Bearer");
+            return exchange.getResponse().setComplete();
+        }
+        return chain.filter(exchange);
+    }
+}
@@ -0,0 +1,75 @@
+package top.qiyuey.book.transfer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ResolvableType;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * 对话导出/导入 API，访问控制见 {@link TransferAccessFilter}
+ */
+@Tag(name = "数据迁移", description = "以 NDJSON 流式导出/导入对话、消息和 Agent Checkpoint")
+@RestController
+@RequestMapping("/api/transfer/threads")
+@ConditionalOnProperty(prefix = "app.storage", name = "type", havingValue = "redis", matchIfMissing = true)
+public class TransferController {
+
+    private final ThreadTransferService transferService;
+
+    /**
+     * 导入专用的 NDJSON 解码器，单条记录上限为 app.transfer.max-record-size，不受全局 spring.codec 限制
+     */
+    private final Jackson2JsonDecoder importDecoder;
+
+    public TransferController(ThreadTransferService transferService, TransferProperties properties,
+                              ObjectMapper objectMapper) {
+        this.transferService = transferService;
+        this.importDecoder = new Jackson2JsonDecoder(objectMapper);
+        this.importDecoder.setMaxInMemorySize((int) Math.min(properties.getMaxRecordSize().toBytes(), Integer.MAX_VALUE));
+    }
+
+    @Operation(summary = "导出对话", description = "按更新时间和书名筛选，每行一条记录")
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<TransferRecord> export(
+            @Parameter(description = "更新时间下限（含），ISO-8601") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @Parameter(description = "更新时间上限（不含），ISO-8601") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @Parameter(description = "书名") @RequestParam(required = false) String bookName) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        return transferService.export(from, to, bookName);
+    }
+
+    @Operation(summary = "导入对话", description = "请求体为导出接口生成的 NDJSON；已存在的对话默认跳过")
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ThreadTransferService.ImportResult> importThreads(
+            ServerHttpRequest request,
+            @Parameter(description = "是否覆盖已存在的对话") @RequestParam(defaultValue = "false") boolean overwrite) {
+        Flux<TransferRecord> records = importDecoder.decode(request.getBody(),
+                        ResolvableType.forClass(TransferRecord.class), MediaType.APPLICATION_NDJSON, Map.of())
+                .cast(TransferRecord.class);
+        return transferService.importRecords(records, overwrite)
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e));
+    }
+}
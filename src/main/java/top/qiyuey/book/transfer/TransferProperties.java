@@ -0,0 +1,46 @@
+package top.qiyuey.book.transfer;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 对话导出/导入配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.transfer")
+public class TransferProperties {
+
+    /**
+     * 访问导出/导入接口所需的 Bearer 令牌，为空时拒绝所有访问
+     */
+    private String token;
+
+    /**
+     * 导出时每次 HSCAN 读取的对话数，导入时每个 pipeline 写入的记录数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 导出时每次从 Redis 读取的消息数
+     */
+    private int messageChunkSize = 100;
+
+    /**
+     * 导出时每行的字节上限：消息按序拆成多行，Checkpoint 拆成多段；单条消息或 blob 超过上限时独占一行
+     * 默认低于 WebFlux 解码器 256KB 的单条上限，导出文件也能导入到未调整配置的旧版本
+     */
+    private DataSize maxLineSize = DataSize.ofKilobytes(128);
+
+    /**
+     * 导入时单行记录的上限（仅对导入接口生效），需容纳最长的单条消息或 blob
+     */
+    private DataSize maxRecordSize = DataSize.ofMegabytes(16);
+
+    /**
+     * Agent Checkpoint 在 Redis 中的键前缀（与 RedisSaver 的存储键一致），后接 threadId
+     */
+    private String checkpointKeyPrefix = "graph:checkpoint:content:";
+}
@@ -0,0 +1,44 @@
+package top.qiyuey.book.transfer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import top.qiyuey.book.agent.ThreadInfo;
+import top.qiyuey.book.agent.ThreadService;
+
+import java.util.List;
+
+/**
+ * NDJSON 导出文件中的一行
+ * 同一对话的记录连续出现：先是一行 thread，然后是其消息和 Checkpoint 引用的 blob，
+ * 再是若干行 messages（按顺序分块），最后是若干行 checkpoint（按顺序拼接）。每行按字节数限制大小。
+ *
+ * @param type       thread、blob、messages 或 checkpoint
+ * @param checkpoint Redis 中 Checkpoint 原始字节（的一段）的 Base64，与序列化方式无关
+ * @param holder     blob 的引用方（messages:{threadId} 或 checkpoints:{threadId}）
+ * @param content    blob 内容
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TransferRecord(String type, String threadId, ThreadInfo thread,
+                             List<ThreadService.ChatMessage> messages, String checkpoint,
+                             String holder, String content) {
+
+    public static final String THREAD = "thread";
+    public static final String BLOB = "blob";
+    public static final String MESSAGES = "messages";
+    public static final String CHECKPOINT = "checkpoint";
+
+    static TransferRecord thread(ThreadInfo thread) {
+        return new TransferRecord(THREAD, thread.getId(), thread, null, null, null, null);
+    }
+
+    static TransferRecord messages(String threadId, List<ThreadService.ChatMessage> messages) {
+        return new TransferRecord(MESSAGES, threadId, null, messages, null, null, null);
+    }
+
+    static TransferRecord checkpoint(String threadId, String checkpoint) {
+        return new TransferRecord(CHECKPOINT, threadId, null, null, checkpoint, null, null);
+    }
+
+    static TransferRecord blob(String threadId, String holder, String content) {
+        return new TransferRecord(BLOB, threadId, null, null, null, holder, content);
+    }
+}
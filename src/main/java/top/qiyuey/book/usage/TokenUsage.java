@@ -0,0 +1,17 @@
+package top.qiyuey.book.usage;
+
+/**
+ * Token 用量汇总
+ *
+ * @param key              统计维度的取值（threadId、modelId、mode 或 bookName）
+ * @param day              日期（yyyy-MM-dd），按会话汇总时为 null
+ * @param promptTokens     输入 token 数
+ * @param completionTokens 输出 token 数
+ * @param requests         请求次数
+ */
+public record TokenUsage(String key, String day, long promptTokens, long completionTokens, long requests) {
+
+    public long totalTokens() {
+        return promptTokens + completionTokens;
+    }
+}
@@ -0,0 +1,256 @@
+package top.qiyuey.book.usage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.CompositeCodec;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token 用量台账
+ * 请求结束时按会话、模型、模式、书籍四个维度累加到内存中的 LongAdder（分段计数，写入无锁竞争），
+ * 定时批量刷入 Redis（HINCRBY），而不是每个 chunk 写一次 Redis。
+ * <p>
+ * 计数表采用双缓冲：每次刷新先换上新表，再写出上一轮换下的表，保证写出时已没有并发写入，不丢计数。
+ * 因此 Redis 中的数据最多滞后两个刷新间隔。
+ * <p>
+ * Redis 结构：
+ * <ul>
+ *     <li>book-agent:usage:thread:{threadId} —— 按会话累计，field 为 prompt|completion|requests；
+ *     每个会话一个键，写入分散到各槽位，带过期时间（有新用量时续期），删除会话时一并删除</li>
+ *     <li>book-agent:usage:{model|mode|book}:{yyyy-MM-dd} —— 按天统计，field 为 {取值}:{prompt|completion|requests}</li>
+ * </ul>
+ * 旧版本把所有会话写在一个 Hash（book-agent:usage:thread，field 为 {threadId}:{指标}）中，查询时新键不存在则回查该 Hash。
+ */
+@Slf4j
+@Component
+public class TokenUsageLedger implements DisposableBean {
+
+    private static final String KEY_PREFIX = "book-agent:usage:";
+    private static final String PROMPT = "prompt";
+    private static final String COMPLETION = "completion";
+    private static final String REQUESTS = "requests";
+    private static final String LEGACY_THREAD_KEY = KEY_PREFIX + "thread";
+
+    private final RedissonClient redissonClient;
+    private final TokenUsageProperties properties;
+
+    private final AtomicReference<Map<UsageKey, Counter>> current = new AtomicReference<>(new ConcurrentHashMap<>());
+    private Map<UsageKey, Counter> retired = new ConcurrentHashMap<>();
+    private Disposable flushTask;
+
+    public TokenUsageLedger(RedissonClient redissonClient, TokenUsageProperties properties) {
+        this.redissonClient = redissonClient;
+        this.properties = properties;
+    }
+
+    /**
+     * 记录一次模型调用的用量
+     */
+    public void record(String threadId, String modelId, String mode, String bookName,
+                       long promptTokens, long completionTokens) {
+        LocalDate today = LocalDate.now();
+        Map<UsageKey, Counter> counters = current.get();
+        add(counters, new UsageKey(Dimension.THREAD, threadId, null), promptTokens, completionTokens);
+        add(counters, new UsageKey(Dimension.MODEL, modelId, today), promptTokens, completionTokens);
+        add(counters, new UsageKey(Dimension.MODE, mode, today), promptTokens, completionTokens);
+        add(counters, new UsageKey(Dimension.BOOK, bookName, today), promptTokens, completionTokens);
+    }
+
+    /**
+     * 查询会话累计用量
+     */
+    public TokenUsage getThreadUsage(String threadId) {
+        Map<String, Long> values = new HashMap<>(counterMap(threadKey(threadId)).readAllMap());
+        if (values.isEmpty()) {
+            Map<String, Long> legacy = counterMap(LEGACY_THREAD_KEY)
+                    .getAll(Set.of(field(threadId, PROMPT), field(threadId, COMPLETION), field(threadId, REQUESTS)));
+            legacy.forEach((field, value) -> values.put(field.substring(field.lastIndexOf(':') + 1), value));
+        }
+        return new TokenUsage(threadId, null,
+                values.getOrDefault(PROMPT, 0L),
+                values.getOrDefault(COMPLETION, 0L),
+                values.getOrDefault(REQUESTS, 0L));
+    }
+
+    /**
+     * 删除会话的累计用量（按天统计的数据保留）
+     */
+    public void deleteThread(String threadId) {
+        UsageKey key = new UsageKey(Dimension.THREAD, threadId, null);
+        synchronized (this) {
+            current.get().remove(key);
+            retired.remove(key);
+        }
+        RBatch batch = redissonClient.createBatch();
+        batch.getMap(threadKey(threadId), codec()).deleteAsync();
+        batch.<String, Long>getMap(LEGACY_THREAD_KEY, codec())
+                .fastRemoveAsync(field(threadId, PROMPT), field(threadId, COMPLETION), field(threadId, REQUESTS));
+        batch.execute();
+    }
+
+    /**
+     * 查询按天统计的用量，同一天内按总 token 数降序
+     */
+    public List<TokenUsage> getDailyUsage(Dimension dimension, LocalDate from, LocalDate to) {
+        if (dimension == Dimension.THREAD) {
+            throw new IllegalArgumentException("Thread usage is not tracked per day");
+        }
+        RBatch batch = redissonClient.createBatch();
+        Map<LocalDate, RFuture<Map<String, Long>>> days = new HashMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            days.put(day, batch.<String, Long>getMap(dailyKey(dimension, day), codec()).readAllMapAsync());
+        }
+        batch.execute();
+
+        List<TokenUsage> result = new ArrayList<>();
+        days.forEach((day, future) -> {
+            Map<String, long[]> totals = new HashMap<>();
+            future.toCompletableFuture().join().forEach((field, value) -> {
+                int separator = field.lastIndexOf(':');
+                long[] counts = totals.computeIfAbsent(field.substring(0, separator), _ -> new long[3]);
+                switch (field.substring(separator + 1)) {
+                    case PROMPT -> counts[0] = value;
+                    case COMPLETION -> counts[1] = value;
+                    case REQUESTS -> counts[2] = value;
+                    default -> { }
+                }
+            });
+            totals.forEach((key, counts) -> result.add(
+                    new TokenUsage(key, day.toString(), counts[0], counts[1], counts[2])));
+        });
+        result.sort(Comparator.comparing(TokenUsage::day)
+                .thenComparing(Comparator.comparingLong(TokenUsage::totalTokens).reversed()));
+        return result;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startFlushing() {
+        flushTask = Flux.interval(properties.getFlushInterval(), Schedulers.boundedElastic())
+                .subscribe(_ -> {
+                    try {
+                        flush();
+                    } catch (Exception e) {
+                        log.error("Failed to flush token usage", e);
+                    }
+                });
+    }
+
+    @Override
+    public void destroy() {
+        if (flushTask != null) {
+            flushTask.dispose();
+        }
+        // 停机时写出两张表
+        flush();
+        flush();
+    }
+
+    private synchronized void flush() {
+        Map<UsageKey, Counter> toFlush = retired;
+        retired = current.getAndSet(new ConcurrentHashMap<>());
+        if (toFlush.isEmpty()) {
+            return;
+        }
+
+        RBatch batch = redissonClient.createBatch();
+        Set<String> dailyKeys = new HashSet<>();
+        toFlush.forEach((key, counter) -> {
+            if (key.day() == null) {
+                String threadKey = threadKey(key.id());
+                var map = batch.<String, Long>getMap(threadKey, codec());
+                map.addAndGetAsync(PROMPT, counter.promptTokens.sum());
+                map.addAndGetAsync(COMPLETION, counter.completionTokens.sum());
+                map.addAndGetAsync(REQUESTS, counter.requests.sum());
+                map.expireAsync(properties.getThreadRetention());
+                return;
+            }
+            String mapKey = dailyKey(key.dimension(), key.day());
+            var map = batch.<String, Long>getMap(mapKey, codec());
+            map.addAndGetAsync(field(key.id(), PROMPT), counter.promptTokens.sum());
+            map.addAndGetAsync(field(key.id(), COMPLETION), counter.completionTokens.sum());
+            map.addAndGetAsync(field(key.id(), REQUESTS), counter.requests.sum());
+            dailyKeys.add(mapKey);
+        });
+        dailyKeys.forEach(key -> batch.getMap(key, codec()).expireAsync(properties.getRetention()));
+        batch.execute();
+        log.debug("Flushed {} token usage counters", toFlush.size());
+    }
+
+    private static void add(Map<UsageKey, Counter> counters, UsageKey key, long promptTokens, long completionTokens) {
+        if (key.id() == null || key.id().isBlank()) {
+            return;
+        }
+        Counter counter = counters.computeIfAbsent(key, _ -> new Counter());
+        counter.promptTokens.add(promptTokens);
+        counter.completionTokens.add(completionTokens);
+        counter.requests.increment();
+    }
+
+    private RMap<String, Long> counterMap(String key) {
+        return redissonClient.getMap(key, codec());
+    }
+
+    private static CompositeCodec codec() {
+        return new CompositeCodec(StringCodec.INSTANCE, LongCodec.INSTANCE);
+    }
+
+    private static String threadKey(String threadId) {
+        return KEY_PREFIX + Dimension.THREAD.key + ":" + threadId;
+    }
+
+    private static String dailyKey(Dimension dimension, LocalDate day) {
+        return KEY_PREFIX + dimension.key + ":" + day;
+    }
+
+    private static String field(String id, String metric) {
+        return id + ":" + metric;
+    }
+
+    /**
+     * 统计维度
+     */
+    public enum Dimension {
+        THREAD("thread"),
+        MODEL("model"),
+        MODE("mode"),
+        BOOK("book");
+
+        private final String key;
+
+        Dimension(String key) {
+            this.key = key;
+        }
+    }
+
+    private record UsageKey(Dimension dimension, String id, LocalDate day) {
+    }
+
+    private static final class Counter {
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder requests = new LongAdder();
+    }
+}
@@ -0,0 +1,31 @@
+package top.qiyuey.book.usage;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Token 用量统计配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.usage")
+public class TokenUsageProperties {
+
+    /**
+     * 内存计数刷入 Redis 的间隔
+     */
+    private Duration flushInterval = Duration.ofSeconds(5);
+
+    /**
+     * 按天统计数据在 Redis 中的保留时间
+     */
+    private Duration retention = Duration.ofDays(400);
+
+    /**
+     * 会话累计用量在 Redis 中的保留时间，每次有新用量时续期
+     */
+    private Duration threadRetention = Duration.ofDays(90);
+}
@@ -0,0 +1,66 @@
+package top.qiyuey.book.usage;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Token 用量查询 API
+ */
+@Tag(name = "Token 用量", description = "按会话、模型、模式、书籍统计的 token 用量")
+@RestController
+@RequestMapping("/api/usage")
+public class UsageController {
+
+    private static final int MAX_DAYS = 366;
+
+    private final TokenUsageLedger ledger;
+
+    public UsageController(TokenUsageLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    @Operation(summary = "查询会话累计用量")
+    @GetMapping("/threads/{threadId}")
+    public TokenUsage getThreadUsage(@PathVariable String threadId) {
+        return ledger.getThreadUsage(threadId);
+    }
+
+    @Operation(summary = "按天查询用量", description = "dimension 取值 model、mode、book；默认查询当天")
+    @GetMapping("/daily/{dimension}")
+    public List<TokenUsage> getDailyUsage(
+            @Parameter(description = "统计维度：model、mode、book") @PathVariable String dimension,
+            @Parameter(description = "开始日期（含），yyyy-MM-dd") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "结束日期（含），yyyy-MM-dd") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        TokenUsageLedger.Dimension parsed;
+        try {
+            parsed = TokenUsageLedger.Dimension.valueOf(dimension.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown dimension: " + dimension);
+        }
+        if (parsed == TokenUsageLedger.Dimension.THREAD) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use /api/usage/threads/{threadId} for thread usage");
+        }
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end;
+        if (start.isAfter(end) || ChronoUnit.DAYS.between(start, end) >= MAX_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Date range must be within " + MAX_DAYS + " days");
+        }
+        return ledger.getDailyUsage(parsed, start, end);
+    }
+}
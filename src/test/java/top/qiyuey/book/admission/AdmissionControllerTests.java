@@ -0,0 +1,91 @@
+package top.qiyuey.book.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControllerTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AdmissionProperties properties;
+    private AdmissionController controller;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AdmissionProperties();
+        properties.setInitialLimit(4);
+        properties.setMinLimit(1);
+        properties.setBackoffInterval(Duration.ZERO);
+        controller = new AdmissionController(properties, new EventLoopLagMonitor(properties), meterRegistry);
+    }
+
+    @Test
+    void rejectsRequestsBeyondLimit() {
+        List<AdmissionController.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(controller.tryAcquire());
+        }
+        assertThat(permits).doesNotContainNull();
+        assertThat(controller.tryAcquire()).isNull();
+
+        permits.getFirst().release();
+        assertThat(controller.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void releaseWithoutFirstTokenIsNotASample() {
+        for (int i = 0; i < 20; i++) {
+            List<AdmissionController.Permit> permits = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+                permits.add(controller.tryAcquire());
+            }
+            permits.forEach(AdmissionController.Permit::release);
+        }
+        assertThat(limit()).isEqualTo(4);
+    }
+
+    @Test
+    void fastFirstTokensUnderLoadRaiseLimit() {
+        List<AdmissionController.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(controller.tryAcquire());
+        }
+        for (int i = 0; i < 20; i++) {
+            permits.forEach(AdmissionController.Permit::onFirstToken);
+            permits.forEach(AdmissionController.Permit::release);
+            permits.clear();
+            for (int j = 0; j < 4; j++) {
+                permits.add(controller.tryAcquire());
+            }
+        }
+        assertThat(limit()).isGreaterThan(4);
+    }
+
+    @Test
+    void slowFirstTokenLowersLimit() {
+        properties.setTargetTtft(Duration.ZERO);
+        AdmissionController.Permit permit = controller.tryAcquire();
+        permit.onFirstToken();
+        permit.release();
+        assertThat(limit()).isLessThan(4);
+    }
+
+    @Test
+    void failureLowersLimit() {
+        AdmissionController.Permit permit = controller.tryAcquire();
+        permit.onFailure(new TimeoutException());
+        permit.release();
+        assertThat(limit()).isLessThan(4);
+    }
+
+    private double limit() {
+        return meterRegistry.get("app.admission.limit").gauge().value();
+    }
+}
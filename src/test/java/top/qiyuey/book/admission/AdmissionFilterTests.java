@@ -0,0 +1,82 @@
+package top.qiyuey.book.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionFilterTests {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/api/book/ask", "/api/book/ask;x", "/api/book/%61sk", "/api/book/as%6b;jsessionid=1"})
+    void admitsEncodedAndParameterizedAskPaths(String path) {
+        AdmissionFilter filter = filter(1);
+        assertThat(passesWithPermit(filter, exchange(HttpMethod.POST, path))).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/api/book/ask", "/api/book/ask;x", "/api/book/%61sk"})
+    void rejectsEncodedAndParameterizedAskPathsBeyondLimit(String path) {
+        AdmissionController controller = controller(1);
+        AdmissionController.Permit held = controller.tryAcquire();
+        MockServerWebExchange exchange = exchange(HttpMethod.POST, path);
+
+        assertThat(passesWithPermit(new AdmissionFilter(controller), exchange)).isFalse();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        held.release();
+    }
+
+    @Test
+    void ignoresOtherRequests() {
+        AdmissionController controller = controller(1);
+        AdmissionController.Permit held = controller.tryAcquire();
+        AdmissionFilter filter = new AdmissionFilter(controller);
+        AtomicBoolean passed = new AtomicBoolean();
+
+        filter.filter(exchange(HttpMethod.GET, "/api/book/ask"), _ -> Mono.fromRunnable(() -> passed.set(true)))
+                .block();
+        assertThat(passed).isTrue();
+        passed.set(false);
+        filter.filter(exchange(HttpMethod.POST, "/api/book/asks"), _ -> Mono.fromRunnable(() -> passed.set(true)))
+                .block();
+        assertThat(passed).isTrue();
+        held.release();
+    }
+
+    private static AdmissionController controller(int limit) {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setInitialLimit(limit);
+        properties.setMinLimit(1);
+        return new AdmissionController(properties, new EventLoopLagMonitor(properties), new SimpleMeterRegistry());
+    }
+
+    private static AdmissionFilter filter(int limit) {
+        return new AdmissionFilter(controller(limit));
+    }
+
+    private static MockServerWebExchange exchange(HttpMethod method, String path) {
+        return MockServerWebExchange.from(MockServerHttpRequest.method(method, URI.create(path)));
+    }
+
+    /**
+     * @return 请求是否带着准入凭证被放行到后续过滤链
+     */
+    private static boolean passesWithPermit(AdmissionFilter filter, MockServerWebExchange exchange) {
+        AtomicBoolean passed = new AtomicBoolean();
+        filter.filter(exchange, _ -> Mono.deferContextual(context -> {
+            passed.set(context.hasKey(AdmissionController.Permit.class));
+            return Mono.empty();
+        })).block();
+        return passed.get();
+    }
+}
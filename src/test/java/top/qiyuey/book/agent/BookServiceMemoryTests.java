@@ -0,0 +1,110 @@
+package top.qiyuey.book.agent;
+
+import com.alibaba.cloud.ai.graph.checkpoint.savers.MemorySaver;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import top.qiyuey.book.admission.AdmissionController;
+import top.qiyuey.book.config.ModelConfig;
+import top.qiyuey.book.config.ModelRegistryProperties;
+import top.qiyuey.book.config.provider.ChatModelRegistry;
+import top.qiyuey.book.passage.HotPassageTracker;
+import top.qiyuey.book.passage.PassageDedupIndex;
+import top.qiyuey.book.usage.TokenUsageLedger;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 直连和 Agent 两条路径共用同一份 Agent 会话记忆
+ */
+class BookServiceMemoryTests {
+
+    private static final String MODEL = "qwen-max";
+    private static final String THREAD = "thread-1";
+
+    private final RecordingChatModel chatModel = new RecordingChatModel();
+    private TieredCheckpointSaver checkpointSaver;
+    private BookService bookService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(mock(RTopic.class));
+        checkpointSaver = new TieredCheckpointSaver(new MemorySaver(), new CheckpointCacheProperties(), redissonClient);
+
+        ChatModelRegistry chatModelRegistry = mock(ChatModelRegistry.class);
+        when(chatModelRegistry.getChatModel(anyString())).thenReturn(chatModel);
+        NodeObservationListener nodeObservationListener = new NodeObservationListener(ObservationRegistry.NOOP);
+        BookAgentFactory agentFactory = new BookAgentFactory(chatModelRegistry, checkpointSaver,
+                nodeObservationListener, new ModelRegistryProperties(), new PromptProperties());
+
+        // 问答模式走直连，解读模式走 Agent
+        DirectStreamingProperties directStreaming = new DirectStreamingProperties();
+        directStreaming.setModes(Set.of("chat"));
+
+        bookService = new BookService(agentFactory, mock(ThreadService.class), mock(PassageDedupIndex.class),
+                mock(ModelConfig.class), mock(TokenUsageLedger.class), ObservationRegistry.NOOP, directStreaming,
+                checkpointSaver, mock(HotPassageTracker.class), mock(AdmissionController.class),
+                nodeObservationListener);
+    }
+
+    @AfterEach
+    void tearDown() {
+        checkpointSaver.destroy();
+    }
+
+    @Test
+    void agentTurnSeesEarlierDirectTurn() {
+        bookService.executeBookQuery("学而时习之是什么意思", null, THREAD, MODEL, "chat").blockLast();
+        assertThat(chatModel.prompts).hasSize(1);
+
+        bookService.executeBookQuery("温故而知新，可以为师矣。", null, THREAD, MODEL, "interpret").blockLast();
+
+        List<Message> agentPrompt = chatModel.prompts.getLast().getInstructions();
+        assertThat(agentPrompt).extracting(Message::getText)
+                .contains("学而时习之是什么意思", RecordingChatModel.ANSWER);
+    }
+
+    /**
+     * 记录每次收到的提示词，固定返回同一个回答
+     */
+    private static final class RecordingChatModel implements ChatModel {
+
+        static final String ANSWER = "学过的内容按时温习。";
+
+        private final List<Prompt> prompts = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            prompts.add(prompt);
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(ANSWER))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.defer(() -> {
+                prompts.add(prompt);
+                return Flux.just(new ChatResponse(List.of(new Generation(new AssistantMessage(ANSWER)))));
+            });
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package top.qiyuey.book.agent;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.ReactAgent;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.checkpoint.savers.MemorySaver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 直连流式基准：对比经过 ReactAgent 与直接调用 ChatModel.stream 的单次请求开销
+ * 使用零延迟的桩模型，差值即为图执行、日志和 Checkpoint 保存的开销；Checkpoint 写入次数对应生产环境的 Redis 写入
+ * 运行：./mvnw test -Dtest=DirectStreamingBenchmark -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class DirectStreamingBenchmark {
+
+    private static final int CHUNKS_PER_REPLY = 200;
+    private static final int WARMUP_REQUESTS = 200;
+    private static final int MEASURED_REQUESTS = 1000;
+
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void compareAgentAndDirectPaths() throws Exception {
+        ChatModel chatModel = new ZeroDelayChatModel();
+        CountingSaver saver = new CountingSaver(new MemorySaver());
+        ReactAgent agent = ReactAgent.builder()
+                .name("BenchmarkAgent")
+                .model(chatModel)
+                .systemPrompt("system")
+                .enableLogging(true)
+                .saver(saver)
+                .build();
+
+        run("agent", saver, i -> agent.stream("请解读以下原文：\n\n学而时习之",
+                RunnableConfig.builder().threadId("bench-" + i).build()).then());
+        run("direct", saver, _ -> chatModel.stream(new Prompt(List.of(
+                new SystemMessage("system"), new UserMessage("请解读以下原文：\n\n学而时习之")))).then());
+    }
+
+    private void run(String name, CountingSaver saver, Request request) throws Exception {
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            request.execute(i).block();
+        }
+        saver.writes.set(0);
+        long allocatedStart = threadMXBean.getTotalThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_REQUESTS; i++) {
+            request.execute(WARMUP_REQUESTS + i).block();
+        }
+        long nanosPerRequest = (System.nanoTime() - start) / MEASURED_REQUESTS;
+        long bytesPerRequest = (threadMXBean.getTotalThreadAllocatedBytes() - allocatedStart) / MEASURED_REQUESTS;
+        System.out.printf("%-7s time/request=%,d µs  allocated/request=%,d KB  checkpoint writes/request=%.1f%n",
+                name, nanosPerRequest / 1000, bytesPerRequest / 1024, (double) saver.writes.get() / MEASURED_REQUESTS);
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        Mono<Void> execute(int i) throws Exception;
+    }
+
+    /**
+     * 立即返回固定分片的桩模型
+     */
+    private static final class ZeroDelayChatModel implements ChatModel {
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("原文".repeat(CHUNKS_PER_REPLY)))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.range(0, CHUNKS_PER_REPLY)
+                    .map(_ -> new ChatResponse(List.of(new Generation(new AssistantMessage("原文")))));
+        }
+    }
+
+    /**
+     * 统计 Checkpoint 写入次数
+     */
+    private static final class CountingSaver implements BaseCheckpointSaver {
+
+        private final BaseCheckpointSaver delegate;
+        private final AtomicLong writes = new AtomicLong();
+
+        CountingSaver(BaseCheckpointSaver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Collection<Checkpoint> list(RunnableConfig config) {
+            return delegate.list(config);
+        }
+
+        @Override
+        public Optional<Checkpoint> get(RunnableConfig config) {
+            return delegate.get(config);
+        }
+
+        @Override
+        public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+            writes.incrementAndGet();
+            return delegate.put(config, checkpoint);
+        }
+
+        @Override
+        public boolean clear(RunnableConfig config) {
+            return delegate.clear(config);
+        }
+    }
+}
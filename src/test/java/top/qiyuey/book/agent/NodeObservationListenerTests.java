@@ -0,0 +1,82 @@
+package top.qiyuey.book.agent;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NodeObservationListenerTests {
+
+    private final List<String> started = new ArrayList<>();
+    private final List<String> stopped = new ArrayList<>();
+    private NodeObservationListener listener;
+
+    @BeforeEach
+    void setUp() {
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public void onStart(Observation.Context context) {
+                started.add(context.getContextualName());
+            }
+
+            @Override
+            public void onStop(Observation.Context context) {
+                stopped.add(context.getContextualName());
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+        });
+        listener = new NodeObservationListener(registry);
+    }
+
+    @Test
+    void stopsNodeWhenItEnds() {
+        RunnableConfig config = config("e1");
+
+        listener.before("agent", Map.of(), config, 0L);
+        listener.after("agent", Map.of(), config, 0L);
+        listener.finish(config);
+
+        assertThat(stopped).containsExactly("agent node agent");
+        assertThat(listener.runningExecutions()).isZero();
+    }
+
+    @Test
+    void finishStopsNodesOfCancelledExecution() {
+        RunnableConfig cancelled = config("e1");
+        RunnableConfig other = config("e2");
+
+        listener.before("agent", Map.of(), cancelled, 0L);
+        listener.before("tools", Map.of(), cancelled, 0L);
+        listener.before("agent", Map.of(), other, 0L);
+        // 执行被取消，节点的结束回调不会触发
+        listener.finish(cancelled);
+
+        assertThat(stopped).containsExactlyInAnyOrder("agent node agent", "agent node tools");
+        assertThat(listener.runningExecutions()).isEqualTo(1);
+
+        listener.after("agent", Map.of(), other, 0L);
+        listener.finish(other);
+        assertThat(stopped).hasSize(started.size());
+        assertThat(listener.runningExecutions()).isZero();
+    }
+
+    private static RunnableConfig config(String executionId) {
+        return RunnableConfig.builder()
+                .threadId("thread-1")
+                .addMetadata(NodeObservationListener.EXECUTION_ID, executionId)
+                .build();
+    }
+}
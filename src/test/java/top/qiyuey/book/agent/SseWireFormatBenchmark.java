@@ -0,0 +1,81 @@
+package top.qiyuey.book.agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.codec.ServerSentEventHttpMessageWriter;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * SSE 传输格式基准：对比 Jackson 编码的 BookResponseEvent 与紧凑格式的传输字节数和编码 CPU 时间
+ * 运行：./mvnw test -Dtest=SseWireFormatBenchmark -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SseWireFormatBenchmark {
+
+    private static final int TOKENS_PER_STREAM = 2000;
+    private static final int WARMUP_STREAMS = 200;
+    private static final int MEASURED_STREAMS = 500;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    @Test
+    void compareWireFormats() {
+        ServerSentEventHttpMessageWriter jsonWriter = new ServerSentEventHttpMessageWriter(new Jackson2JsonEncoder());
+
+        LongSupplier json = () -> {
+            MockServerHttpResponse response = new MockServerHttpResponse();
+            Flux<ServerSentEvent<BookResponseEvent>> body = events().map(e -> ServerSentEvent.<BookResponseEvent>builder()
+                    .event(e.getStatus().name())
+                    .data(e)
+                    .build());
+            jsonWriter.write(body, ResolvableType.forClassWithGenerics(ServerSentEvent.class, BookResponseEvent.class),
+                    MediaType.TEXT_EVENT_STREAM, response, Map.of()).block();
+            return response.getBodyAsString().block().getBytes().length;
+        };
+        LongSupplier compact = () -> CompactSseEncoder.encode(events(), DefaultDataBufferFactory.sharedInstance)
+                .map(buffer -> {
+                    long size = buffer.readableByteCount();
+                    DataBufferUtils.release(buffer);
+                    return size;
+                })
+                .reduce(0L, Long::sum)
+                .block();
+
+        report("jackson", json);
+        report("compact", compact);
+    }
+
+    private void report(String name, LongSupplier stream) {
+        for (int i = 0; i < WARMUP_STREAMS; i++) {
+            stream.getAsLong();
+        }
+        long bytes = 0;
+        long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURED_STREAMS; i++) {
+            bytes = stream.getAsLong();
+        }
+        long cpuPerStream = (threadMXBean.getCurrentThreadCpuTime() - cpuStart) / MEASURED_STREAMS;
+        System.out.printf("%-8s bytes/stream=%,d  encoder CPU/stream=%,d µs%n", name, bytes, cpuPerStream / 1000);
+    }
+
+    /**
+     * 模拟一次 2000 token 的回答：START + 2000 个 PROGRESS 增量
+     */
+    private static Flux<BookResponseEvent> events() {
+        return Flux.range(0, TOKENS_PER_STREAM)
+                .map(i -> new BookResponseEvent(BookResponseEvent.Status.PROGRESS, i % 40 == 39 ? "。\n" : "原文"))
+                .startWith(new BookResponseEvent(BookResponseEvent.Status.START, "正在解读... (模型: qwen-max)"));
+    }
+}
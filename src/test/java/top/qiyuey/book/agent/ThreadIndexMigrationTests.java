@@ -0,0 +1,124 @@
+package top.qiyuey.book.agent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.redisson.Redisson;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 分片迁移的行为，需要本地 Redis，会清空所用的库（默认 15）
+ * 运行：./mvnw test -Dtest=ThreadIndexMigrationTests -Dredis.address=redis://127.0.0.1:6379
+ */
+@EnabledIfSystemProperty(named = "redis.address", matches = ".+")
+class ThreadIndexMigrationTests {
+
+    private static final Duration CHECK_INTERVAL = Duration.ofMillis(100);
+
+    private RedissonClient redissonClient;
+
+    @BeforeEach
+    void setUp() {
+        Config config = new Config();
+        config.useSingleServer()
+                .setAddress(System.getProperty("redis.address"))
+                .setDatabase(Integer.getInteger("redis.database", 15));
+        redissonClient = Redisson.create(config);
+        redissonClient.getKeys().flushdb();
+    }
+
+    @AfterEach
+    void tearDown() {
+        redissonClient.getKeys().flushdb();
+        redissonClient.shutdown();
+    }
+
+    @Test
+    void migratesAllThreadsAndDeletesOldLayout() {
+        ThreadIndex before = index(4);
+        for (int i = 0; i < 50; i++) {
+            before.put(thread("t" + i, "标题" + i));
+        }
+
+        ThreadIndex after = index(8);
+        after.migrate();
+
+        assertThat(after.size()).isEqualTo(50);
+        assertThat(after.get("t7").getTitle()).isEqualTo("标题7");
+        assertThat(redissonClient.getBucket("book-agent:threads:layout", StringCodec.INSTANCE).get()).isEqualTo("8");
+        assertThat(redissonClient.getKeys().countExists(shardKey("t7", 4))).isZero();
+    }
+
+    @Test
+    void nodeWithOldConfigFollowsMigratedLayout() throws InterruptedException {
+        ThreadIndex oldNode = index(4);
+        oldNode.put(thread("t1", "迁移前"));
+
+        index(8).migrate();
+        Thread.sleep(CHECK_INTERVAL.toMillis() * 2);
+
+        oldNode.put(thread("t2", "迁移后"));
+        ThreadIndex newNode = index(8);
+        assertThat(newNode.get("t2").getTitle()).isEqualTo("迁移后");
+        assertThat(oldNode.get("t1").getTitle()).isEqualTo("迁移前");
+        assertThat(redissonClient.getKeys().countExists(shardKey("t2", 4))).isZero();
+    }
+
+    @Test
+    void threadRemovedDuringMigrationIsNotCopiedBack() {
+        ThreadIndex oldNode = index(4);
+        oldNode.put(thread("t1", "待删除"));
+        ThreadIndex newNode = index(8);
+        String source = shardKey("t1", 4);
+        Map<String, ThreadInfo> entries = this.<ThreadInfo>map(source).getAll(Set.of("t1"));
+
+        oldNode.remove("t1");
+
+        assertThat(newNode.move(source, entries, 8)).isZero();
+        assertThat(this.<ThreadInfo>map(shardKey("t1", 8)).containsKey("t1")).isFalse();
+    }
+
+    @Test
+    void threadModifiedDuringMigrationKeepsLatestValue() {
+        ThreadIndex oldNode = index(4);
+        oldNode.put(thread("t1", "旧标题"));
+        ThreadIndex newNode = index(8);
+        String source = shardKey("t1", 4);
+        Map<String, ThreadInfo> entries = this.<ThreadInfo>map(source).getAll(Set.of("t1"));
+
+        oldNode.put(thread("t1", "新标题"));
+
+        assertThat(newNode.move(source, entries, 8)).isZero();
+        newNode.migrate();
+        assertThat(newNode.get("t1").getTitle()).isEqualTo("新标题");
+    }
+
+    private ThreadIndex index(int shards) {
+        ThreadIndexProperties properties = new ThreadIndexProperties();
+        properties.setShards(shards);
+        properties.setLayoutCheckInterval(CHECK_INTERVAL);
+        return new ThreadIndex(redissonClient, properties);
+    }
+
+    private static ThreadInfo thread(String id, String title) {
+        return new ThreadInfo(id, title, System.currentTimeMillis(), "model", "论语");
+    }
+
+    private static String shardKey(String threadId, int shards) {
+        return "book-agent:threads:v3:{" + Math.floorMod(threadId.hashCode(), shards) + "/" + shards + "}";
+    }
+
+    private <V> RMap<String, V> map(String key) {
+        return redissonClient.getMap(key);
+    }
+}
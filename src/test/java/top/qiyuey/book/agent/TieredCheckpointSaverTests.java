@@ -0,0 +1,204 @@
+package top.qiyuey.book.agent;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TieredCheckpointSaverTests {
+
+    private final MemorySaver redis = new MemorySaver();
+    private TieredCheckpointSaver saver;
+
+    @AfterEach
+    void tearDown() {
+        saver.destroy();
+    }
+
+    @Test
+    void syncModeWritesEveryCheckpoint() throws Exception {
+        saver = saver(new CheckpointCacheProperties());
+
+        saver.put(config("a"), checkpoint("c1"));
+
+        assertThat(ids(redis.list(config("a")))).containsExactly("c1");
+    }
+
+    @Test
+    void turnModeWritesAllNewCheckpointsInOrderOnFlush() throws Exception {
+        saver = saver(turnMode());
+
+        saver.put(config("a"), checkpoint("c1"));
+        saver.put(config("a"), checkpoint("c2"));
+        saver.put(config("a"), checkpoint("c3"));
+        assertThat(redis.list(config("a"))).isEmpty();
+
+        saver.flushThreadNow("a");
+        assertThat(ids(redis.list(config("a")))).containsExactly("c3", "c2", "c1");
+
+        saver.put(config("a"), checkpoint("c4"));
+        saver.flushThreadNow("a");
+        assertThat(ids(redis.list(config("a")))).containsExactly("c4", "c3", "c2", "c1");
+    }
+
+    @Test
+    void replacementIsWrittenAfterEarlierCheckpoints() throws Exception {
+        saver = saver(turnMode());
+
+        saver.put(config("a"), checkpoint("c1"));
+        saver.put(config("a"), checkpoint("c2"));
+        saver.put(RunnableConfig.builder(config("a")).checkPointId("c1").build(), checkpoint("c1b"));
+
+        assertThat(ids(redis.list(config("a")))).containsExactly("c2", "c1b");
+        assertThat(ids(saver.list(config("a")))).containsExactly("c2", "c1b");
+    }
+
+    @Test
+    void evictsOnlyFlushedThreads() throws Exception {
+        CheckpointCacheProperties properties = turnMode();
+        properties.setMaxSize(DataSize.ofBytes(1));
+        saver = saver(properties);
+
+        saver.put(config("a"), checkpoint("a1"));
+        saver.put(config("b"), checkpoint("b1"));
+        assertThat(redis.listCalls).isEqualTo(2);
+        // 未落盘的会话留在热层，不会从 Redis 重新加载
+        assertThat(ids(saver.list(config("a")))).containsExactly("a1");
+        assertThat(redis.listCalls).isEqualTo(2);
+
+        saver.flushThreadNow("a");
+        saver.put(config("c"), checkpoint("c1"));
+        // a 已落盘，被淘汰后从 Redis 加载
+        assertThat(ids(saver.list(config("a")))).containsExactly("a1");
+        assertThat(redis.listCalls).isEqualTo(4);
+    }
+
+    @Test
+    void concurrentInvalidationDoesNotLoseCheckpoints() throws Exception {
+        saver = saver(turnMode());
+        AtomicBoolean running = new AtomicBoolean(true);
+        // 每次写出后会话已落盘，可以被失效；失效发生在 put 取到会话之后时，写入不能落在已移出热层的对象上
+        List<Thread> invalidators = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            invalidators.add(Thread.ofPlatform().start(() -> {
+                while (running.get()) {
+                    saver.evict("a");
+                    Thread.onSpinWait();
+                }
+            }));
+        }
+        List<String> expected = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20000; i++) {
+                saver.put(config("a"), checkpoint("c" + i));
+                saver.flushThreadNow("a");
+                expected.addFirst("c" + i);
+            }
+        } finally {
+            running.set(false);
+            for (Thread invalidator : invalidators) {
+                invalidator.join();
+            }
+        }
+
+        assertThat(ids(redis.list(config("a")))).containsExactlyElementsOf(expected);
+    }
+
+    private TieredCheckpointSaver saver(CheckpointCacheProperties properties) {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(mock(RTopic.class));
+        return new TieredCheckpointSaver(redis, properties, redissonClient);
+    }
+
+    private static CheckpointCacheProperties turnMode() {
+        CheckpointCacheProperties properties = new CheckpointCacheProperties();
+        properties.setDurability(CheckpointCacheProperties.Durability.TURN);
+        properties.setMaxFlushDelay(Duration.ofHours(1));
+        return properties;
+    }
+
+    private static RunnableConfig config(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).build();
+    }
+
+    private static Checkpoint checkpoint(String id) {
+        return Checkpoint.builder()
+                .id(id)
+                .state(Map.of("input", id))
+                .nodeId("agent")
+                .nextNodeId("__END__")
+                .build();
+    }
+
+    private static List<String> ids(Collection<Checkpoint> checkpoints) {
+        return checkpoints.stream().map(Checkpoint::getId).toList();
+    }
+
+    /**
+     * 代替 Redis 的持久层，记录整表读取次数
+     */
+    private static final class MemorySaver implements BaseCheckpointSaver {
+
+        private final Map<String, LinkedList<Checkpoint>> threads = new HashMap<>();
+        private int listCalls;
+
+        @Override
+        public synchronized Collection<Checkpoint> list(RunnableConfig config) {
+            listCalls++;
+            return List.copyOf(threads.getOrDefault(threadId(config), new LinkedList<>()));
+        }
+
+        @Override
+        public synchronized Optional<Checkpoint> get(RunnableConfig config) {
+            return Optional.ofNullable(threads.getOrDefault(threadId(config), new LinkedList<>()).peekFirst());
+        }
+
+        @Override
+        public synchronized RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) {
+            LinkedList<Checkpoint> checkpoints = threads.computeIfAbsent(threadId(config), _ -> new LinkedList<>());
+            if (config.checkPointId().isPresent()) {
+                String id = config.checkPointId().get();
+                checkpoints.replaceAll(existing -> existing.getId().equals(id) ? checkpoint : existing);
+            } else {
+                checkpoints.addFirst(checkpoint);
+            }
+            return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+        }
+
+        @Override
+        public synchronized boolean clear(RunnableConfig config) {
+            return threads.remove(threadId(config)) != null;
+        }
+
+        @Override
+        public synchronized Tag release(RunnableConfig config) {
+            LinkedList<Checkpoint> removed = threads.remove(threadId(config));
+            return new Tag(threadId(config), removed != null ? removed : List.of());
+        }
+
+        private static String threadId(RunnableConfig config) {
+            return config.threadId().orElse(THREAD_ID_DEFAULT);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package top.qiyuey.book.passage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CountMinSketchTests {
+
+    @Test
+    void neverUnderestimates() {
+        CountMinSketch sketch = new CountMinSketch(64, 4);
+        for (long key = 0; key < 1000; key++) {
+            for (int i = 0; i <= key % 7; i++) {
+                sketch.add(key);
+            }
+        }
+        for (long key = 0; key < 1000; key++) {
+            assertThat(sketch.estimate(key)).isGreaterThanOrEqualTo((int) (key % 7) + 1);
+        }
+    }
+
+    @Test
+    void hotKeysStandOutFromBackground() {
+        CountMinSketch sketch = new CountMinSketch(4096, 4);
+        for (long key = 0; key < 10_000; key++) {
+            sketch.add(key);
+        }
+        for (int i = 0; i < 500; i++) {
+            sketch.add(-1L);
+        }
+        assertThat(sketch.estimate(-1L)).isBetween(500, 510);
+        assertThat(sketch.estimate(42L)).isLessThan(10);
+    }
+
+    @Test
+    void halvingDecaysCounts() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        for (int i = 0; i < 100; i++) {
+            sketch.add(7L);
+        }
+        sketch.halve();
+        assertThat(sketch.estimate(7L)).isEqualTo(50);
+        assertThat(sketch.add(7L)).isEqualTo(51);
+    }
+}
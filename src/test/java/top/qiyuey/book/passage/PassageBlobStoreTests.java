@@ -0,0 +1,97 @@
+package top.qiyuey.book.passage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import top.qiyuey.book.store.StorageProperties;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 引用计数和解析的行为，需要本地 Redis
+ * 运行：./mvnw test -Dtest=PassageBlobStoreTests -Dredis.address=redis://127.0.0.1:6379
+ */
+@EnabledIfSystemProperty(named = "redis.address", matches = ".+")
+class PassageBlobStoreTests {
+
+    private RedissonClient redissonClient;
+    private PassageBlobStore store;
+    private String passage;
+    private String holderA;
+    private String holderB;
+
+    @BeforeEach
+    void setUp() {
+        Config config = new Config();
+        config.useSingleServer().setAddress(System.getProperty("redis.address"));
+        redissonClient = Redisson.create(config);
+        store = newStore();
+        String id = UUID.randomUUID().toString();
+        passage = id + "道可道，非常道。".repeat(400);
+        holderA = PassageBlobStore.messagesHolder("a-" + id);
+        holderB = PassageBlobStore.checkpointsHolder("b-" + id);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.release(holderA);
+        store.release(holderB);
+        redissonClient.shutdown();
+    }
+
+    @Test
+    void shortTextsStayInline() {
+        assertThat(store.externalize(holderA, "学而时习之")).isEqualTo("学而时习之");
+        assertThat(store.referencedBy(holderA)).isEmpty();
+    }
+
+    @Test
+    void sameContentIsStoredOnce() {
+        String first = store.externalize(holderA, passage);
+        String second = store.externalize(holderB, passage);
+
+        assertThat(PassageBlobStore.isReference(first)).isTrue();
+        assertThat(second).isEqualTo(first);
+        assertThat(store.referencedBy(holderA)).isEqualTo(store.referencedBy(holderB)).hasSize(1);
+        assertThat(store.resolveAll(List.of("短文本", first, second))).containsExactly("短文本", passage, passage);
+        // 另一个节点（没有本地缓存）也能解析
+        assertThat(newStore().resolve(first)).isEqualTo(passage);
+    }
+
+    @Test
+    void blobIsDeletedWhenLastHolderReleases() {
+        String reference = store.externalize(holderA, passage);
+        store.externalize(holderB, passage);
+
+        store.release(holderA);
+        assertThat(store.referencedBy(holderA)).isEmpty();
+        assertThat(newStore().resolve(reference)).isEqualTo(passage);
+
+        store.release(holderB);
+        assertThat(PassageBlobStore.isMissing(store.resolve(reference))).isTrue();
+        assertThat(PassageBlobStore.isMissing(newStore().resolve(reference))).isTrue();
+    }
+
+    @Test
+    void missingBlobIsDetectable() {
+        String reference = store.externalize(holderA, passage);
+        store.release(holderA);
+
+        List<String> resolved = store.resolveAll(List.of("前文", reference));
+        assertThat(resolved.getFirst()).isEqualTo("前文");
+        assertThat(resolved.getLast()).isEqualTo(PassageBlobStore.MISSING);
+    }
+
+    private PassageBlobStore newStore() {
+        return new PassageBlobStore(redissonClient, new PassageBlobProperties(), new StorageProperties(),
+                new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,65 @@
+package top.qiyuey.book.passage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PassageDedupIndexTests {
+
+    private static final String PASSAGE = "实践、认识、再实践、再认识，这种形式，循环往复以至无穷，"
+            + "而实践和认识之每一循环的内容，都比较地进到了高一级的程度。";
+    private static final String MODEL = "qwen-max";
+    private static final String BOOK = "实践论";
+
+    private PassageDedupIndex index;
+
+    @BeforeEach
+    void setUp() {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getMapCache(anyString())).thenReturn(mock(RMapCache.class));
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(mock(RTopic.class));
+        index = new PassageDedupIndex(redissonClient, new PassageDedupProperties());
+        index.record(PASSAGE, BOOK, MODEL, "解读");
+    }
+
+    @Test
+    void findsPassageQuotedWithSurroundingSentences() {
+        String extended = "通过实践而发现真理，又通过实践而证实真理和发展真理。" + PASSAGE + "这就是辩证唯物论的全部认识论。";
+
+        assertThat(index.findSimilar(extended, BOOK, MODEL))
+                .hasValueSatisfying(record -> assertThat(record.getInterpretation()).isEqualTo("解读"));
+    }
+
+    @Test
+    void findsVariantReading() {
+        assertThat(index.findSimilar(PASSAGE.replace("无穷", "无尽"), BOOK, MODEL)).isPresent();
+    }
+
+    @Test
+    void ignoresPassageBuriedInMuchLongerText() {
+        String essay = PASSAGE + "知彼知己，百战不殆；不知彼而知己，一胜一负；不知彼不知己，每战必殆。".repeat(3);
+
+        assertThat(index.findSimilar(essay, BOOK, MODEL)).isEmpty();
+    }
+
+    @Test
+    void ignoresPartialQuotes() {
+        assertThat(index.findSimilar(PASSAGE.substring(0, 30), BOOK, MODEL)).isEmpty();
+    }
+
+    @Test
+    void ignoresOtherModels() {
+        String extended = PASSAGE + "这就是辩证唯物论的全部认识论。";
+
+        assertThat(index.findSimilar(extended, BOOK, "qwen-plus")).isEmpty();
+    }
+}
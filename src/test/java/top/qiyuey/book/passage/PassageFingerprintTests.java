@@ -0,0 +1,48 @@
+package top.qiyuey.book.passage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PassageFingerprintTests {
+
+    private static final int MAX_DISTANCE = new PassageDedupProperties().getMaxDistance();
+    private static final double MIN_CONTAINMENT = new PassageDedupProperties().getMinContainment();
+
+    private static final String PASSAGE = "实践、认识、再实践、再认识，这种形式，循环往复以至无穷，"
+            + "而实践和认识之每一循环的内容，都比较地进到了高一级的程度。";
+
+    @Test
+    void ignoresPunctuationWhitespaceAndWidth() {
+        String variant = "实践 认识 再实践 再认识. 这种形式, 循环往复以至无穷 "
+                + "而实践和认识之每一循环的内容 都比较地进到了高一级的程度";
+        assertThat(PassageFingerprint.simHash(variant)).isEqualTo(PassageFingerprint.simHash(PASSAGE));
+    }
+
+    @Test
+    void variantReadingsAreWithinDefaultDistance() {
+        String variant = PASSAGE.replace("无穷", "无尽");
+        int distance = PassageFingerprint.distance(
+                PassageFingerprint.simHash(PASSAGE), PassageFingerprint.simHash(variant));
+        assertThat(distance).isLessThanOrEqualTo(MAX_DISTANCE);
+    }
+
+    @Test
+    void extendedPassagesContainTheOriginal() {
+        String extended = "通过实践而发现真理，又通过实践而证实真理和发展真理。" + PASSAGE + "这就是辩证唯物论的全部认识论。";
+        long[] sketch = PassageFingerprint.sketch(PassageFingerprint.shingles(PASSAGE));
+        assertThat(PassageFingerprint.containment(sketch, PassageFingerprint.shingles(extended)))
+                .isGreaterThanOrEqualTo(MIN_CONTAINMENT);
+    }
+
+    @Test
+    void unrelatedPassagesAreFar() {
+        String other = "知彼知己，百战不殆；不知彼而知己，一胜一负；不知彼不知己，每战必殆。";
+        int distance = PassageFingerprint.distance(
+                PassageFingerprint.simHash(PASSAGE), PassageFingerprint.simHash(other));
+        assertThat(distance).isGreaterThan(MAX_DISTANCE);
+        long[] sketch = PassageFingerprint.sketch(PassageFingerprint.shingles(PASSAGE));
+        assertThat(PassageFingerprint.containment(sketch, PassageFingerprint.shingles(other)))
+                .isLessThan(MIN_CONTAINMENT);
+    }
+}
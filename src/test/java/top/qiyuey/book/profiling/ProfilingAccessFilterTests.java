@@ -0,0 +1,78 @@
+package top.qiyuey.book.profiling;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.actuate.autoconfigure.endpoint.web.WebEndpointProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProfilingAccessFilterTests {
+
+    private static final String TOKEN = "secret";
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "/actuator/profiling",
+            "/actuator/profiling/",
+            "/actuator/profiling;x",
+            "/actuator/profiling;jsessionid=1/",
+            "/actuator/%70rofiling",
+            "/actuator/prof%69ling;x"
+    })
+    void rejectsEncodedAndParameterizedPathsWithoutToken(String path) {
+        MockServerWebExchange exchange = exchange(path, null);
+        assertThat(filter(TOKEN, exchange)).isFalse();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    void hidesEndpointWhenTokenNotConfigured() {
+        MockServerWebExchange exchange = exchange("/actuator/%70rofiling;x", "Bearer " + TOKEN);
+        assertThat(filter(null, exchange)).isFalse();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void passesWithValidToken() {
+        assertThat(filter(TOKEN, exchange("/actuator/%70rofiling", "Bearer " + TOKEN))).isTrue();
+    }
+
+    @Test
+    void ignoresOtherPaths() {
+        assertThat(filter(TOKEN, exchange("/actuator/health", null))).isTrue();
+        assertThat(filter(TOKEN, exchange("/actuator/profilingx", null))).isTrue();
+    }
+
+    private static MockServerWebExchange exchange(String path, String authorization) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.method(HttpMethod.GET, URI.create(path));
+        if (authorization != null) {
+            request.header(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        return MockServerWebExchange.from(request);
+    }
+
+    /**
+     * @return 请求是否被放行到后续过滤链
+     */
+    private static boolean filter(String token, MockServerWebExchange exchange) {
+        ProfilingProperties properties = new ProfilingProperties();
+        properties.setToken(token);
+        ProfilingAccessFilter filter = new ProfilingAccessFilter(properties, new WebEndpointProperties());
+        AtomicBoolean passed = new AtomicBoolean();
+        filter.filter(exchange, ignored -> {
+            passed.set(true);
+            return Mono.empty();
+        }).block();
+        return passed.get();
+    }
+}
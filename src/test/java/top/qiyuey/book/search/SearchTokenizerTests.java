@@ -0,0 +1,40 @@
+package top.qiyuey.book.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchTokenizerTests {
+
+    @Test
+    void splitsCjkQueriesIntoBigrams() {
+        assertThat(SearchTokenizer.queryTerms("论持久战")).containsExactlyInAnyOrder("论持", "持久", "久战");
+    }
+
+    @Test
+    void indexesCjkUnigramsAndBigrams() {
+        Map<String, Integer> terms = SearchTokenizer.termFrequencies("论持久战");
+        assertThat(terms).containsOnlyKeys("论", "持", "久", "战", "论持", "持久", "久战");
+    }
+
+    @Test
+    void singleCharacterQueryMatchesIndexedContent() {
+        Map<String, Integer> indexed = SearchTokenizer.termFrequencies("克己复礼为仁。");
+        assertThat(SearchTokenizer.queryTerms("仁")).containsExactly("仁");
+        assertThat(indexed).containsKey("仁");
+    }
+
+    @Test
+    void normalizesFullWidthAndCase() {
+        Map<String, Integer> terms = SearchTokenizer.termFrequencies("ＧＰＴ 与 gpt");
+        assertThat(terms).containsEntry("gpt", 2).containsKey("与");
+    }
+
+    @Test
+    void ignoresPunctuationBetweenRuns() {
+        Map<String, Integer> terms = SearchTokenizer.termFrequencies("知彼知己，百战不殆。");
+        assertThat(terms).containsKeys("知彼", "知己", "百战", "不殆").doesNotContainKey("己，");
+    }
+}
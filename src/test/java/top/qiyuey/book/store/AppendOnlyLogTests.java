@@ -0,0 +1,207 @@
+package top.qiyuey.book.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AppendOnlyLogTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackValuesAndLists() {
+        try (AppendOnlyLog log = open()) {
+            log.put("a", bytes("1"));
+            log.put("a", bytes("2"));
+            log.append("list", bytes("x"));
+            log.append("list", bytes("y"));
+            log.put("b", bytes("3"));
+            assertThat(log.delete("b")).isTrue();
+
+            assertThat(text(log.get("a"))).isEqualTo("2");
+            assertThat(log.get("b")).isNull();
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("x", "y");
+            assertThat(log.keys("li")).containsExactly("list");
+        }
+    }
+
+    @Test
+    void recoversAfterReopen() {
+        try (AppendOnlyLog log = open()) {
+            log.put("a", bytes("1"));
+            log.append("list", bytes("x"));
+            log.replaceList("list", List.of(bytes("y"), bytes("z")));
+            log.append("list", bytes("w"));
+            log.put("b", bytes("2"));
+            log.delete("b");
+        }
+        try (AppendOnlyLog log = open()) {
+            assertThat(text(log.get("a"))).isEqualTo("1");
+            assertThat(log.get("b")).isNull();
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("y", "z", "w");
+        }
+    }
+
+    @Test
+    void discardsTornRecordOnRecovery() throws IOException {
+        try (AppendOnlyLog log = open()) {
+            log.put("a", bytes("1"));
+            log.put("b", bytes("2"));
+        }
+        // 破坏最后一条记录的数据部分，模拟写入中断
+        Path segment = segments().getLast();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long lastRecord = 8 + 3 + 1 + 1;
+            file.seek(lastRecord + 8 + 3);
+            file.write('X');
+        }
+        try (AppendOnlyLog log = open()) {
+            assertThat(text(log.get("a"))).isEqualTo("1");
+            assertThat(log.get("b")).isNull();
+            log.put("c", bytes("3"));
+        }
+        try (AppendOnlyLog log = open()) {
+            assertThat(text(log.get("c"))).isEqualTo("3");
+        }
+    }
+
+    @Test
+    void compactionKeepsLiveDataInOrder() throws IOException {
+        try (AppendOnlyLog log = open()) {
+            log.append("list", bytes("first"));
+            log.put("deleted", bytes("old"));
+            for (int i = 0; i < 200; i++) {
+                log.put("hot", bytes("value-" + i));
+            }
+            log.append("list", bytes("second"));
+            log.delete("deleted");
+            for (int i = 200; i < 400; i++) {
+                log.put("hot", bytes("value-" + i));
+            }
+            long before = segments().size();
+
+            log.compact();
+
+            assertThat(segments().size()).isLessThan(before);
+            assertThat(text(log.get("hot"))).isEqualTo("value-399");
+            assertThat(log.get("deleted")).isNull();
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("first", "second");
+        }
+        try (AppendOnlyLog log = open()) {
+            assertThat(text(log.get("hot"))).isEqualTo("value-399");
+            assertThat(log.get("deleted")).isNull();
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("first", "second");
+        }
+    }
+
+    @Test
+    void trimmedListsSurviveReopenAndCompaction() throws IOException {
+        try (AppendOnlyLog log = open()) {
+            log.replaceList("list", List.of(bytes("a"), bytes("b"), bytes("c")));
+            log.trimList("list", 2);
+            for (int i = 0; i < 5; i++) {
+                log.append("list", bytes("e" + i));
+                log.trimList("list", 3);
+            }
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("e2", "e3", "e4");
+            assertThat(text(log.last("list"))).isEqualTo("e4");
+        }
+        try (AppendOnlyLog log = open()) {
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("e2", "e3", "e4");
+            for (int i = 0; i < 400; i++) {
+                log.put("hot", bytes("value-" + i));
+            }
+            log.compact();
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("e2", "e3", "e4");
+        }
+        try (AppendOnlyLog log = open()) {
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("e2", "e3", "e4");
+        }
+    }
+
+    @Test
+    void trimsSurviveCompactionOfSegmentsHoldingDroppedElements() throws IOException {
+        try (AppendOnlyLog log = open()) {
+            for (int i = 0; i < 3; i++) {
+                log.append("list", bytes("cp" + i));
+            }
+            for (int i = 0; i < 200; i++) {
+                log.put("hot", bytes("value-" + i));
+            }
+            // 之后的截断把第一个分段里的元素全部丢弃，该分段被压缩时不会重写列表
+            for (int i = 3; i < 6; i++) {
+                log.append("list", bytes("cp" + i));
+                log.trimList("list", 3);
+            }
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("cp3", "cp4", "cp5");
+            long before = segments().size();
+
+            log.compact();
+
+            assertThat(segments().size()).isLessThan(before);
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("cp3", "cp4", "cp5");
+        }
+        try (AppendOnlyLog log = open()) {
+            assertThat(log.list("list")).map(AppendOnlyLogTests::text).containsExactly("cp3", "cp4", "cp5");
+            assertThat(text(log.get("hot"))).isEqualTo("value-199");
+        }
+    }
+
+    @Test
+    void compactsListsLargerThanSegment() throws IOException {
+        try (AppendOnlyLog log = open()) {
+            // 列表总大小远超 4KB 分段，压缩时需要拆成多个分片
+            for (int i = 0; i < 12; i++) {
+                log.append("list", bytes(("e" + i).repeat(400)));
+                for (int j = 0; j < 40; j++) {
+                    log.put("hot", bytes("value-" + j));
+                }
+            }
+            long before = segments().size();
+
+            log.compact();
+
+            assertThat(segments().size()).isLessThan(before);
+            assertThat(log.list("list")).hasSize(12);
+            assertThat(text(log.last("list"))).startsWith("e11");
+        }
+        try (AppendOnlyLog log = open()) {
+            assertThat(log.list("list")).hasSize(12);
+            assertThat(text(log.list("list").get(5))).startsWith("e5e5");
+        }
+    }
+
+    private AppendOnlyLog open() {
+        StorageProperties.Embedded properties = new StorageProperties.Embedded();
+        properties.setSegmentSize(DataSize.ofKilobytes(4));
+        properties.setSyncInterval(Duration.ofHours(1));
+        properties.setCompactionInterval(Duration.ofHours(1));
+        return new AppendOnlyLog(directory, properties);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
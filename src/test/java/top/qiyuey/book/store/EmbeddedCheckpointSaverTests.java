@@ -0,0 +1,82 @@
+package top.qiyuey.book.store;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.serializer.plain_text.jackson.SpringAIJacksonStateSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddedCheckpointSaverTests {
+
+    private static final RunnableConfig THREAD = RunnableConfig.builder().threadId("thread-1").build();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresMessagesAfterReopen() throws Exception {
+        Checkpoint checkpoint = Checkpoint.builder()
+                .nodeId("model")
+                .nextNodeId("__END__")
+                .state(Map.of("messages", List.of(new UserMessage("何为知行合一？"), new AssistantMessage("知是行之始。"))))
+                .build();
+        try (AppendOnlyLog log = open()) {
+            saver(log).put(THREAD, checkpoint);
+        }
+        try (AppendOnlyLog log = open()) {
+            Checkpoint restored = saver(log).get(THREAD).orElseThrow();
+
+            assertThat(restored.getId()).isEqualTo(checkpoint.getId());
+            assertThat(restored.getNodeId()).isEqualTo("model");
+            assertThat(restored.getNextNodeId()).isEqualTo("__END__");
+            assertThat((List<?>) restored.getState().get("messages")).satisfiesExactly(
+                    first -> assertThat(first).isInstanceOfSatisfying(UserMessage.class,
+                            m -> assertThat(m.getText()).isEqualTo("何为知行合一？")),
+                    second -> assertThat(second).isInstanceOfSatisfying(AssistantMessage.class,
+                            m -> assertThat(m.getText()).isEqualTo("知是行之始。")));
+        }
+    }
+
+    @Test
+    void keepsOnlyLatestCheckpoints() throws Exception {
+        try (AppendOnlyLog log = open()) {
+            EmbeddedCheckpointSaver saver = saver(log);
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Checkpoint checkpoint = Checkpoint.builder().nodeId("node-" + i).state(Map.of("step", i)).build();
+                saver.put(THREAD, checkpoint);
+                ids.add(checkpoint.getId());
+            }
+
+            assertThat(saver.list(THREAD)).map(Checkpoint::getId).containsExactly(ids.get(4), ids.get(3), ids.get(2));
+            assertThat(saver.get(THREAD)).map(Checkpoint::getNodeId).contains("node-4");
+            assertThat(saver.get(RunnableConfig.builder(THREAD).checkPointId(ids.get(3)).build()))
+                    .map(Checkpoint::getNodeId).contains("node-3");
+            assertThat(saver.get(RunnableConfig.builder(THREAD).checkPointId(ids.get(0)).build())).isEmpty();
+        }
+    }
+
+    private static EmbeddedCheckpointSaver saver(AppendOnlyLog log) {
+        return new EmbeddedCheckpointSaver(log, new SpringAIJacksonStateSerializer(OverAllState::new), 3);
+    }
+
+    private AppendOnlyLog open() {
+        StorageProperties.Embedded properties = new StorageProperties.Embedded();
+        properties.setSegmentSize(DataSize.ofKilobytes(64));
+        properties.setSyncInterval(Duration.ofHours(1));
+        properties.setCompactionInterval(Duration.ofHours(1));
+        return new AppendOnlyLog(directory, properties);
+    }
+}
@@ -0,0 +1,156 @@
+package top.qiyuey.book.store;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.checkpoint.savers.redis.RedisSaver;
+import com.alibaba.cloud.ai.graph.serializer.plain_text.jackson.SpringAIJacksonStateSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import top.qiyuey.book.agent.ThreadIndex;
+import top.qiyuey.book.agent.ThreadIndexProperties;
+import top.qiyuey.book.agent.ThreadInfo;
+import top.qiyuey.book.agent.ThreadService;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 对话存储延迟基准：对比 Redis 与嵌入式追加写日志在典型操作上的 p50 / p99 延迟，
+ * 包括对话历史读写和 Checkpoint 保存 / 读取（RedisSaver 与 EmbeddedCheckpointSaver）
+ * 需要本地 Redis（默认 redis://127.0.0.1:6379，可用 -Dredis.address 指定）
+ * 运行：./mvnw test -Dtest=ThreadStoreBenchmark -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ThreadStoreBenchmark {
+
+    private static final int THREADS = 2000;
+    private static final int MESSAGES_PER_THREAD = 20;
+    private static final int CHECKPOINT_THREADS = 200;
+    private static final int TURNS_PER_THREAD = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compareStores() {
+        Config config = new Config();
+        config.useSingleServer().setAddress(System.getProperty("redis.address", "redis://127.0.0.1:6379"));
+        RedissonClient redissonClient = Redisson.create(config);
+        StorageProperties.Embedded embedded = new StorageProperties.Embedded();
+        try (AppendOnlyLog log = new AppendOnlyLog(directory, embedded)) {
+            run("redis", new RedisThreadStore(redissonClient,
+                    new ThreadIndex(redissonClient, new ThreadIndexProperties())));
+            run("embedded", new EmbeddedThreadStore(log, new ObjectMapper()));
+        } finally {
+            redissonClient.shutdown();
+        }
+    }
+
+    @Test
+    void compareCheckpointSavers() {
+        Config config = new Config();
+        config.useSingleServer().setAddress(System.getProperty("redis.address", "redis://127.0.0.1:6379"));
+        RedissonClient redissonClient = Redisson.create(config);
+        StorageProperties.Embedded embedded = new StorageProperties.Embedded();
+        try (AppendOnlyLog log = new AppendOnlyLog(directory, embedded)) {
+            run("redis", RedisSaver.builder().redisson(redissonClient).build());
+            run("embedded", new EmbeddedCheckpointSaver(log, new SpringAIJacksonStateSerializer(OverAllState::new),
+                    embedded.getCheckpointRetention()));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            redissonClient.shutdown();
+        }
+    }
+
+    /**
+     * 每个会话模拟多轮问答，每轮保存一个含完整历史的 Checkpoint 后读取最新 Checkpoint
+     */
+    private void run(String name, BaseCheckpointSaver saver) throws Exception {
+        String prefix = "bench-" + UUID.randomUUID() + "-";
+        long[] put = new long[CHECKPOINT_THREADS * TURNS_PER_THREAD];
+        long[] get = new long[CHECKPOINT_THREADS * TURNS_PER_THREAD];
+
+        for (int i = 0; i < CHECKPOINT_THREADS; i++) {
+            RunnableConfig thread = RunnableConfig.builder().threadId(prefix + i).build();
+            List<Message> messages = new ArrayList<>();
+            for (int turn = 0; turn < TURNS_PER_THREAD; turn++) {
+                messages.add(new UserMessage("学而时习之，不亦说乎？".repeat(20)));
+                messages.add(new AssistantMessage("温故而知新，可以为师矣。".repeat(40)));
+                Checkpoint checkpoint = Checkpoint.builder()
+                        .nodeId("model")
+                        .state(Map.of("messages", List.copyOf(messages)))
+                        .build();
+                long start = System.nanoTime();
+                saver.put(thread, checkpoint);
+                put[i * TURNS_PER_THREAD + turn] = System.nanoTime() - start;
+                start = System.nanoTime();
+                saver.get(thread);
+                get[i * TURNS_PER_THREAD + turn] = System.nanoTime() - start;
+            }
+        }
+        for (int i = 0; i < CHECKPOINT_THREADS; i++) {
+            saver.clear(RunnableConfig.builder().threadId(prefix + i).build());
+        }
+
+        report(name, "cpPut", put);
+        report(name, "cpGet", get);
+    }
+
+    private void run(String name, ThreadStore store) {
+        String prefix = "bench-" + UUID.randomUUID() + "-";
+        long[] put = new long[THREADS];
+        long[] get = new long[THREADS];
+        long[] addMessage = new long[THREADS * MESSAGES_PER_THREAD];
+        long[] getMessages = new long[THREADS];
+
+        for (int i = 0; i < THREADS; i++) {
+            String threadId = prefix + i;
+            long start = System.nanoTime();
+            store.put(new ThreadInfo(threadId, "标题", System.currentTimeMillis(), "qwen-max", "论语"));
+            put[i] = System.nanoTime() - start;
+            for (int j = 0; j < MESSAGES_PER_THREAD; j++) {
+                start = System.nanoTime();
+                store.addMessage(threadId, new ThreadService.ChatMessage(j % 2 == 0 ? "user" : "assistant",
+                        "学而时习之，不亦说乎？".repeat(20), System.currentTimeMillis()));
+                addMessage[i * MESSAGES_PER_THREAD + j] = System.nanoTime() - start;
+            }
+        }
+        for (int i = 0; i < THREADS; i++) {
+            long start = System.nanoTime();
+            store.get(prefix + i);
+            get[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            store.getMessages(prefix + i);
+            getMessages[i] = System.nanoTime() - start;
+        }
+        for (int i = 0; i < THREADS; i++) {
+            store.remove(prefix + i);
+        }
+
+        report(name, "put", put);
+        report(name, "get", get);
+        report(name, "addMessage", addMessage);
+        report(name, "getMessages", getMessages);
+    }
+
+    private static void report(String store, String operation, long[] nanos) {
+        Arrays.sort(nanos);
+        System.out.printf("%-9s %-12s p50=%,8.1f µs  p99=%,8.1f µs%n", store, operation,
+                nanos[nanos.length / 2] / 1000.0, nanos[nanos.length * 99 / 100] / 1000.0);
+    }
+}
@@ -0,0 +1,81 @@
+package top.qiyuey.book.transfer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferAccessFilterTests {
+
+    private static final String TOKEN = "secret";
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "/api/transfer/threads/export",
+            "/api/transfer/threads/import",
+            "/api/transfer/threads/export;x",
+            "/api/transfer/threads/%69mport",
+            "/api/%74ransfer/threads/export"
+    })
+    void rejectsRequestsWithoutToken(String path) {
+        MockServerWebExchange exchange = exchange(path, null);
+        assertThat(filter(TOKEN, exchange)).isFalse();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    void rejectsWrongToken() {
+        MockServerWebExchange exchange = exchange("/api/transfer/threads/export", "Bearer other");
+        assertThat(filter(TOKEN, exchange)).isFalse();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    void hidesEndpointsWhenTokenNotConfigured() {
+        MockServerWebExchange exchange = exchange("/api/transfer/threads/import", "Bearer " + TOKEN);
+        assertThat(filter(null, exchange)).isFalse();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void passesWithValidToken() {
+        assertThat(filter(TOKEN, exchange("/api/transfer/threads/export", "Bearer " + TOKEN))).isTrue();
+    }
+
+    @Test
+    void ignoresOtherPaths() {
+        assertThat(filter(TOKEN, exchange("/api/threads", null))).isTrue();
+    }
+
+    private static MockServerWebExchange exchange(String path, String authorization) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.method(HttpMethod.GET, URI.create(path));
+        if (authorization != null) {
+            request.header(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        return MockServerWebExchange.from(request);
+    }
+
+    /**
+     * @return 请求是否被放行到后续过滤链
+     */
+    private static boolean filter(String token, MockServerWebExchange exchange) {
+        TransferProperties properties = new TransferProperties();
+        properties.setToken(token);
+        AtomicBoolean passed = new AtomicBoolean();
+        new TransferAccessFilter(properties).filter(exchange, ignored -> {
+            passed.set(true);
+            return Mono.empty();
+        }).block();
+        return passed.get();
+    }
+}
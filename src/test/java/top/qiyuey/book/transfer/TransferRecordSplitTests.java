@@ -0,0 +1,117 @@
+package top.qiyuey.book.transfer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import reactor.core.publisher.Flux;
+import top.qiyuey.book.agent.ThreadInfo;
+import top.qiyuey.book.agent.ThreadService;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 导出行按字节数拆分后，能被 NDJSON 解码器完整读回
+ */
+class TransferRecordSplitTests {
+
+    private static final long MAX_LINE_SIZE = new TransferProperties().getMaxLineSize().toBytes();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void longPassagesRoundTripWithinDefaultCodecLimit() throws Exception {
+        List<ThreadService.ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String content = i % 2 == 0 ? ("第" + i + "段：" + "天下难事，必作于易；天下大事，必作于细。".repeat(1500))
+                    : "回答" + i + "：" + "\"引号\"与\\反斜杠\\\n".repeat(200);
+            messages.add(new ThreadService.ChatMessage(i % 2 == 0 ? "user" : "assistant", content, i));
+        }
+        byte[] checkpoint = new byte[1_000_000];
+        new Random(42).nextBytes(checkpoint);
+
+        List<String> lines = export(messages, checkpoint);
+        assertThat(lines).hasSizeGreaterThan(10)
+                .allSatisfy(line -> assertThat((long) line.getBytes(StandardCharsets.UTF_8).length)
+                        .isLessThanOrEqualTo(MAX_LINE_SIZE));
+
+        // WebFlux 默认的 256KB 单条上限即可读回
+        Imported imported = importLines(lines, 256 * 1024);
+        assertThat(imported.messages()).isEqualTo(messages);
+        assertThat(imported.checkpoint()).isEqualTo(checkpoint);
+    }
+
+    @Test
+    void oversizedMessageTakesItsOwnLine() throws Exception {
+        List<ThreadService.ChatMessage> messages = List.of(
+                new ThreadService.ChatMessage("user", "短问题", 1),
+                new ThreadService.ChatMessage("user", "长".repeat(200_000), 2),
+                new ThreadService.ChatMessage("assistant", "短回答", 3));
+
+        List<List<ThreadService.ChatMessage>> chunks =
+                ThreadTransferService.splitMessages(messages, objectMapper, MAX_LINE_SIZE);
+
+        assertThat(chunks).hasSize(3);
+        Imported imported = importLines(export(messages, new byte[0]),
+                (int) new TransferProperties().getMaxRecordSize().toBytes());
+        assertThat(imported.messages()).isEqualTo(messages);
+        assertThat(imported.checkpoint()).isEmpty();
+    }
+
+    private List<String> export(List<ThreadService.ChatMessage> messages, byte[] checkpoint) throws Exception {
+        String threadId = "thread-1";
+        List<TransferRecord> records = new ArrayList<>();
+        records.add(TransferRecord.thread(new ThreadInfo(threadId, "标题", 1L, "qwen-max", "老子")));
+        ThreadTransferService.splitMessages(messages, objectMapper, MAX_LINE_SIZE)
+                .forEach(chunk -> records.add(TransferRecord.messages(threadId, chunk)));
+        ThreadTransferService.splitCheckpoint(checkpoint, MAX_LINE_SIZE)
+                .forEach(part -> records.add(TransferRecord.checkpoint(threadId, part)));
+        List<String> lines = new ArrayList<>();
+        for (TransferRecord record : records) {
+            lines.add(objectMapper.writeValueAsString(record));
+        }
+        return lines;
+    }
+
+    private Imported importLines(List<String> lines, int maxInMemorySize) {
+        byte[] body = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < body.length; offset += 8192) {
+            byte[] slice = Arrays.copyOfRange(body, offset, Math.min(body.length, offset + 8192));
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(slice));
+        }
+        Jackson2JsonDecoder decoder = new Jackson2JsonDecoder(objectMapper);
+        decoder.setMaxInMemorySize(maxInMemorySize);
+        List<TransferRecord> records = decoder.decode(Flux.fromIterable(buffers),
+                        ResolvableType.forClass(TransferRecord.class), MediaType.APPLICATION_NDJSON, Map.of())
+                .cast(TransferRecord.class)
+                .collectList()
+                .block();
+
+        List<ThreadService.ChatMessage> messages = new ArrayList<>();
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        for (TransferRecord record : records) {
+            switch (record.type()) {
+                case TransferRecord.MESSAGES -> messages.addAll(record.messages());
+                case TransferRecord.CHECKPOINT -> checkpoint.writeBytes(Base64.getDecoder().decode(record.checkpoint()));
+                default -> { }
+            }
+        }
+        return new Imported(messages, checkpoint.toByteArray());
+    }
+
+    private record Imported(List<ThreadService.ChatMessage> messages, byte[] checkpoint) {
+    }
+}